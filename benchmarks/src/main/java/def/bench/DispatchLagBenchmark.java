@@ -0,0 +1,161 @@
+package def.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import def.server.TaskDispatcher;
+import def.taskmodel.Task;
+import def.taskmodel.TasksModel;
+
+/**
+ * Dispatch lag measurement: deadline-driven dispatcher against the legacy polling loop.
+ * Tasks are scheduled at random millisecond offsets within the measurement window,
+ * the lag between the scheduled and the actual fire time is collected for every task,
+ * together with the CPU time, burned by the dispatching thread.
+ * <br>Usage: DispatchLagBenchmark [tasks amount] [window seconds] [legacy lookup frequency seconds]
+ * @author ovoievodin
+ */
+public class DispatchLagBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		final int tasksAmount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		final int windowSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		final long legacyFrequency = args.length > 2 ? Long.parseLong(args[2]) : 2L;
+
+		report("deadline dispatcher", runDeadlineDispatcher(tasksAmount, windowSeconds));
+		report("legacy polling loop (" + legacyFrequency + "s lookup)", runLegacyLoop(tasksAmount, windowSeconds, legacyFrequency));
+	}
+
+	private static Result runDeadlineDispatcher(int tasksAmount, int windowSeconds) throws InterruptedException {
+		final TasksModel model = new TasksModel();
+		final Result result = new Result(tasksAmount);
+		final TaskDispatcher dispatcher = new TaskDispatcher(model, dueTasks -> result.fired(dueTasks));
+		dispatcher.start();
+		final Thread dispatcherThread = findThread("task-dispatcher");
+		for(Task task : randomTasks(tasksAmount, windowSeconds)) {
+			model.add(task);
+			dispatcher.onTaskScheduled(task.getExecutionDate());
+		}
+		result.await(windowSeconds);
+		result.cpuNanos = cpuTime(dispatcherThread);
+		dispatcher.stop();
+		dispatcherThread.join();
+		return result;
+	}
+
+	/**
+	 * The scheduling loop, the server used before the deadline-driven dispatcher.
+	 */
+	private static Result runLegacyLoop(int tasksAmount, int windowSeconds, long frequency) throws InterruptedException {
+		final TasksModel model = new TasksModel();
+		final Result result = new Result(tasksAmount);
+		final AtomicBoolean isEnabled = new AtomicBoolean(true);
+		final Thread loop = new Thread(() -> {
+			while(isEnabled.get()) {
+				if(!model.isEmpty() && (System.currentTimeMillis() / 1000L) % frequency == 0) {
+					final List<Task> dueTasks = model.pollDue(new Date());
+					if(dueTasks != null) {
+						result.fired(dueTasks);
+					}
+				}
+			}
+		}, "legacy-scheduler");
+		loop.start();
+		for(Task task : randomTasks(tasksAmount, windowSeconds)) {
+			model.add(task);
+		}
+		result.await(windowSeconds + frequency);
+		result.cpuNanos = cpuTime(loop);
+		isEnabled.set(false);
+		loop.join();
+		return result;
+	}
+
+	private static List<Task> randomTasks(int amount, int windowSeconds) {
+		final Random random = new Random(42);
+		final long now = System.currentTimeMillis();
+		final Task[] generated = new Task[amount];
+		for(int i = 0; i < amount; i++) {
+			final long offset = 100 + (long) (random.nextDouble() * (windowSeconds * 1000L - 100));
+			generated[i] = new Task(new Date(now + offset), "target-" + i);
+		}
+		return Arrays.asList(generated);
+	}
+
+	private static long cpuTime(Thread thread) {
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		return threads.isThreadCpuTimeSupported() ? threads.getThreadCpuTime(thread.getId()) : -1;
+	}
+
+	private static Thread findThread(String name) {
+		for(int attempt = 0; attempt < 100; attempt++) {
+			for(Thread thread : Thread.getAllStackTraces().keySet()) {
+				if(name.equals(thread.getName()) && thread.isAlive()) {
+					return thread;
+				}
+			}
+			Thread.yield();
+		}
+		throw new IllegalStateException("Thread not found: " + name);
+	}
+
+	private static void report(String name, Result result) {
+		final long[] lags = result.sortedLags();
+		System.out.printf("%-40s fired: %d/%d, lag ms p50: %d, p99: %d, max: %d, dispatcher cpu: %d ms%n",
+				name,
+				lags.length,
+				result.expected,
+				percentile(lags, 0.50),
+				percentile(lags, 0.99),
+				lags.length == 0 ? -1 : lags[lags.length - 1],
+				TimeUnit.NANOSECONDS.toMillis(result.cpuNanos));
+	}
+
+	private static long percentile(long[] sorted, double rank) {
+		return sorted.length == 0 ? -1 : sorted[(int) Math.min(sorted.length - 1, Math.floor(rank * sorted.length))];
+	}
+
+	private static final class Result {
+		private final int expected;
+		private final long[] lags;
+		private final AtomicInteger fired;
+		private final CountDownLatch done;
+		private volatile long cpuNanos;
+
+		private Result(int expected) {
+			this.expected = expected;
+			this.lags = new long[expected];
+			this.fired = new AtomicInteger();
+			this.done = new CountDownLatch(expected);
+		}
+
+		private void fired(List<Task> dueTasks) {
+			final long now = System.currentTimeMillis();
+			for(Task task : dueTasks) {
+				final int index = fired.getAndIncrement();
+				if(index < lags.length) {
+					lags[index] = now - task.getExecutionDate().getTime();
+					done.countDown();
+				}
+			}
+		}
+
+		private void await(long seconds) throws InterruptedException {
+			done.await(seconds + 1, TimeUnit.SECONDS);
+		}
+
+		private long[] sortedLags() {
+			final long[] copy = Arrays.copyOf(lags, Math.min(fired.get(), lags.length));
+			Arrays.sort(copy);
+			return copy;
+		}
+	}
+}
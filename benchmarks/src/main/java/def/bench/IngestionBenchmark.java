@@ -0,0 +1,153 @@
+package def.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+import def.client.BinaryIngestionClient;
+import def.remote.RemoteTaskSchedulerServer;
+import def.server.TaskSchedulerServer;
+import def.taskmodel.Task;
+import def.taskmodel.TasksPage;
+import def.taskmodel.TasksQuery;
+import def.taskmodel.source.InMemoryModelProvider;
+
+/**
+ * Loopback throughput of the task ingestion: RMI calls against the binary endpoint, waiting for every response
+ * and pipelining the requests. The same in-process server (in-memory model, admission disabled) serves both,
+ * so the difference is the per-call overhead of the transport.
+ * Every run adds the tasks by batches, reads the schedule by pages and removes the tasks by the same batches.
+ * <br>Usage: IngestionBenchmark [tasks amount] [pipelined requests in flight]
+ * @author ovoievodin
+ */
+public class IngestionBenchmark {
+
+	private static final long EPOCH = 4_102_444_800_000L; // 2100-01-01, never due.
+	private static final int[] BATCH_SIZES = {1, 100};
+	private static final int PAGE_SIZE = 1000;
+
+	public static void main(String[] args) throws Exception {
+		final int tasksAmount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+		final int inFlight = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+
+		final PrintStream report = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream())); // the server logs every call.
+		final TaskSchedulerServer server = new TaskSchedulerServer(new InMemoryModelProvider());
+		server.getAdmissionController().setEnabled(false);
+		final RemoteTaskSchedulerServer stub = (RemoteTaskSchedulerServer) UnicastRemoteObject.exportObject(server, 0);
+		final InetSocketAddress address = server.startBinaryIngestion(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)).getAddress();
+
+		try (BinaryIngestionClient client = new BinaryIngestionClient(address)) {
+			report.printf("%d tasks, %d pipelined requests in flight%n", tasksAmount, inFlight);
+			report.printf("%-20s %6s %14s %14s %14s%n", "transport", "batch", "add tasks/s", "remove tasks/s", "query tasks/s");
+			for(int warmup = 0; warmup < 2; warmup++) { // the first runs are only warming up.
+				run(stub, client, Math.min(tasksAmount, 20_000), inFlight, null);
+			}
+			run(stub, client, tasksAmount, inFlight, report);
+		} finally {
+			server.stopScheduling();
+			UnicastRemoteObject.unexportObject(server, true);
+			System.setOut(report);
+		}
+	}
+
+	private static void run(RemoteTaskSchedulerServer stub, BinaryIngestionClient client, int tasksAmount, int inFlight, PrintStream report) throws Exception {
+		for(int batchSize : BATCH_SIZES) {
+			final List<List<Task>> batches = batches(tasksAmount, batchSize);
+			print(report, "rmi", batchSize, tasksAmount, runRmi(stub, batches));
+			print(report, "binary", batchSize, tasksAmount, runBinary(client, batches, 1));
+			print(report, "binary pipelined", batchSize, tasksAmount, runBinary(client, batches, inFlight));
+		}
+	}
+
+	/**
+	 * @return nanos of adding, removing and querying the tasks.
+	 */
+	private static long[] runRmi(RemoteTaskSchedulerServer stub, List<List<Task>> batches) throws Exception {
+		final long[] nanos = new long[3];
+		long start = System.nanoTime();
+		for(List<Task> batch : batches) {
+			stub.addTasks(batch);
+		}
+		nanos[0] = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for(TasksQuery query = new TasksQuery(null, null, null, PAGE_SIZE); query != null; ) {
+			final TasksPage page = stub.queryTasks(query);
+			query = query.next(page);
+		}
+		nanos[2] = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for(List<Task> batch : batches) {
+			stub.removeTasks(batch);
+		}
+		nanos[1] = System.nanoTime() - start;
+		return nanos;
+	}
+
+	private static long[] runBinary(BinaryIngestionClient client, List<List<Task>> batches, int inFlight) throws Exception {
+		final long[] nanos = new long[3];
+		final Semaphore window = new Semaphore(inFlight);
+		final List<CompletableFuture<long[]>> added = new ArrayList<>(batches.size());
+		long start = System.nanoTime();
+		for(List<Task> batch : batches) {
+			window.acquire();
+			added.add(client.addTasksAsync(batch).whenComplete((ids, error) -> window.release()));
+		}
+		final List<long[]> ids = new ArrayList<>(added.size());
+		for(CompletableFuture<long[]> batchIds : added) {
+			ids.add(batchIds.get());
+		}
+		nanos[0] = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for(TasksQuery query = new TasksQuery(null, null, null, PAGE_SIZE); query != null; ) {
+			final TasksPage page = client.queryTasks(query);
+			query = query.next(page);
+		}
+		nanos[2] = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		final List<CompletableFuture<boolean[]>> removed = new ArrayList<>(ids.size());
+		for(long[] batchIds : ids) {
+			window.acquire();
+			removed.add(client.removeTasksAsync(batchIds).whenComplete((results, error) -> window.release()));
+		}
+		for(CompletableFuture<boolean[]> results : removed) {
+			results.get();
+		}
+		nanos[1] = System.nanoTime() - start;
+		return nanos;
+	}
+
+	private static List<List<Task>> batches(int tasksAmount, int batchSize) {
+		final Random random = new Random(tasksAmount);
+		final List<List<Task>> batches = new ArrayList<>();
+		for(int i = 0; i < tasksAmount; i += batchSize) {
+			final List<Task> batch = new ArrayList<>(batchSize);
+			for(int j = i; j < Math.min(tasksAmount, i + batchSize); j++) {
+				final Task task = new Task(new Date(EPOCH + random.nextInt(86_400) * 1000L), "/opt/jobs/job-" + random.nextInt(5000) + ".sh");
+				task.setOwnerId(random.nextInt(100));
+				batch.add(task);
+			}
+			batches.add(batch);
+		}
+		return batches;
+	}
+
+	private static void print(PrintStream report, String transport, int batchSize, int tasksAmount, long[] nanos) {
+		if(report != null) {
+			report.printf("%-20s %6d %14.0f %14.0f %14.0f%n", transport, batchSize,
+					tasksAmount * 1e9 / nanos[0], tasksAmount * 1e9 / nanos[1], tasksAmount * 1e9 / nanos[2]);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package def.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Random;
+
+import def.taskmodel.Task;
+import def.taskmodel.TasksModel;
+
+/**
+ * Retained heap per scheduled task.
+ * Tasks are added one by one, as the server receives them, so every task brings it's own target string
+ * (5000 distinct targets) and the id, so the id index is measured as well. Two layouts are measured:
+ * <li>distinct - every task has it's own execution time (millisecond times over a month).</li>
+ * <li>shared - tasks share the execution times (second times over a day).</li>
+ * Run with the heap big enough for the largest amount, e.g. -Xmx4g.
+ * <br>Usage: MemoryFootprintBenchmark [tasks amount...]
+ * @author ovoievodin
+ */
+public class MemoryFootprintBenchmark {
+
+	private static final long MONTH_MILLIS = 30L * 86_400_000L;
+
+	public static void main(String[] args) {
+		final int[] amounts = args.length > 0 ? new int[args.length] : new int[] { 1_000_000, 10_000_000 };
+		for(int i = 0; i < args.length; i++) {
+			amounts[i] = Integer.parseInt(args[i]);
+		}
+		System.out.printf("%-10s %12s %14s %14s%n", "layout", "tasks", "heap MB", "bytes/task");
+		for(int amount : amounts) {
+			measure("distinct", amount, true);
+			measure("shared", amount, false);
+		}
+	}
+
+	private static void measure(String layout, int amount, boolean isDistinct) {
+		final long before = usedHeap();
+		TasksModel model = generate(amount, isDistinct);
+		final long after = usedHeap();
+		if(model.getTasksAmount() != amount) {
+			throw new IllegalStateException("Model has " + model.getTasksAmount() + " tasks instead of " + amount);
+		}
+		model = null;
+		System.out.printf("%-10s %12d %14d %14.1f%n", layout, amount, (after - before) >> 20, (after - before) / (double) amount);
+	}
+
+	private static TasksModel generate(int amount, boolean isDistinct) {
+		final Random random = new Random(amount);
+		final TasksModel model = new TasksModel();
+		final long start = System.currentTimeMillis();
+		for(int i = 0; i < amount; i++) {
+			final long time = isDistinct ? start + (long) i * (MONTH_MILLIS / amount) : start + random.nextInt(86_400) * 1000L;
+			final Task task = new Task(time, "/opt/jobs/job-" + random.nextInt(5000) + ".sh");
+			task.setOwnerId(random.nextInt(100));
+			task.setId(i + 1);
+			model.add(task);
+		}
+		return model;
+	}
+
+	private static long usedHeap() {
+		final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		for(int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+}
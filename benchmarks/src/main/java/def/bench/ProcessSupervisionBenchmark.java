@@ -0,0 +1,69 @@
+package def.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import def.server.TaskExecutionEngine;
+import def.taskmodel.Task;
+import def.taskmodel.TaskExecution;
+
+/**
+ * Supervision cost of the concurrently running task processes.
+ * All of the processes are submitted at once and sleep for the same time, so they are supervised simultaneously.
+ * Reported while all of them are running: retained heap and live threads of the JVM per process.
+ * The threads include the process reapers of the JDK itself, which are there for any launched process.
+ * Timeout shorter than the sleep makes every process time out, so the kill escalation is measured as well.
+ * The amount is bound by the user processes limit of the OS (ulimit -u).
+ * <br>Usage: ProcessSupervisionBenchmark [processes amount] [sleep seconds] [timeout seconds]
+ * @author ovoievodin
+ */
+public class ProcessSupervisionBenchmark {
+
+	public static void main(String[] args) throws InterruptedException {
+		final int amount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+		final int sleepSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+		final long timeoutSeconds = args.length > 2 ? Long.parseLong(args[2]) : 3600L;
+
+		final TaskExecutionEngine engine = new TaskExecutionEngine(4, amount, amount,
+				TimeUnit.SECONDS.toMillis(timeoutSeconds), 1000L, amount, 1000L);
+		final List<Task> tasks = new ArrayList<>(amount);
+		for(int i = 0; i < amount; i++) {
+			tasks.add(new Task(System.currentTimeMillis(), "sleep " + sleepSeconds));
+		}
+		final int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+		final long heapBefore = usedHeap();
+		final long start = System.nanoTime();
+		engine.submit(tasks);
+		while(engine.getLaunchLatency().snapshot().getCount() + engine.getFinishedAmount(TaskExecution.Outcome.LAUNCH_FAILED) < amount) {
+			Thread.sleep(10);
+		}
+		final long launchedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		final int threads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+		final long heap = usedHeap() - heapBefore;
+		final int running = engine.getRunningAmount();
+		System.out.printf("%d processes launched in %dms, %d running%n", amount, launchedMillis, running);
+		System.out.printf("supervising: %.1f KB heap and %.2f threads per process%n", heap / 1024.0 / amount, threads / (double) amount);
+
+		while(engine.getRunningAmount() > 0) {
+			Thread.sleep(100);
+		}
+		System.out.printf("all finished in %dms%n", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		for(TaskExecution.Outcome outcome : TaskExecution.Outcome.values()) {
+			System.out.printf("%-14s %d%n", outcome, engine.getFinishedAmount(outcome));
+		}
+		System.out.println("launch    " + engine.getLaunchLatency().snapshot());
+		System.out.println("execution " + engine.getExecutionDuration().snapshot());
+		engine.shutdown();
+	}
+
+	private static long usedHeap() {
+		final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		for(int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,86 @@
+package def.bench;
+
+import java.util.Date;
+import java.util.Random;
+
+import def.taskmodel.PriorityQueueSet;
+import def.taskmodel.Task;
+import def.taskmodel.TasksModel;
+
+/**
+ * Scaling of the schedule operations with the amount of scheduled tasks.
+ * For each size from 10^3 up to 10^[max exponent] the model is pre-filled with tasks at distinct times,
+ * and then the average cost of insert, peek-min and cancel is measured around that size.
+ * The deprecated PriorityQueueSet offer is measured as well, until it becomes too slow to wait for.
+ * <br>Usage: ScheduleScalingBenchmark [max exponent, 7 needs a few GB of heap] [operations per size]
+ * @author ovoievodin
+ */
+@SuppressWarnings("deprecation")
+public class ScheduleScalingBenchmark {
+
+	private static final int LEGACY_MAX_SIZE = 100_000;
+	private static final long EPOCH = 1_500_000_000_000L;
+
+	/** Keeps JIT from throwing the measured peeks away. */
+	private static volatile long sink;
+
+	public static void main(String[] args) {
+		final int maxExponent = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+		final int operations = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+
+		System.out.printf("%12s %14s %14s %14s %20s%n", "size", "add ns/op", "peek ns/op", "remove ns/op", "legacy offer ns/op");
+		for(int exponent = 3; exponent <= maxExponent; exponent++) {
+			final int size = (int) Math.pow(10, exponent);
+			measure(size, operations);
+		}
+	}
+
+	private static void measure(int size, int operations) {
+		final Random random = new Random(size);
+		final TasksModel model = new TasksModel();
+		for(int i = 0; i < size; i++) {
+			model.add(new Task(new Date(EPOCH + i * 1000L), "target"));
+		}
+
+		final Task[] probes = new Task[operations];
+		for(int i = 0; i < operations; i++) {
+			probes[i] = new Task(new Date(EPOCH + random.nextInt(size) * 1000L + 500L), "probe");
+		}
+
+		long start = System.nanoTime();
+		for(Task probe : probes) {
+			model.add(probe);
+		}
+		final double addCost = (double) (System.nanoTime() - start) / operations;
+
+		long checksum = 0;
+		start = System.nanoTime();
+		for(int i = 0; i < operations; i++) {
+			checksum += model.getNextExecutionDate().getTime();
+		}
+		final double peekCost = (double) (System.nanoTime() - start) / operations;
+		sink = checksum;
+
+		start = System.nanoTime();
+		for(Task probe : probes) {
+			model.remove(probe);
+		}
+		final double removeCost = (double) (System.nanoTime() - start) / operations;
+
+		final String legacyCost = size <= LEGACY_MAX_SIZE ? String.format("%.1f", measureLegacy(size, operations)) : "skipped";
+		System.out.printf("%12d %14.1f %14.1f %14.1f %20s%n", size, addCost, peekCost, removeCost, legacyCost);
+	}
+
+	private static double measureLegacy(int size, int operations) {
+		final PriorityQueueSet<Date> queue = new PriorityQueueSet<>();
+		for(int i = 0; i < size; i++) {
+			queue.offer(new Date(EPOCH + i * 1000L));
+		}
+		final Random random = new Random(size);
+		final long start = System.nanoTime();
+		for(int i = 0; i < operations; i++) {
+			queue.offer(new Date(EPOCH + random.nextInt(size) * 1000L + 500L));
+		}
+		return (double) (System.nanoTime() - start) / operations;
+	}
+}
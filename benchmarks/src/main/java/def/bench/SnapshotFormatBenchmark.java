@@ -0,0 +1,86 @@
+package def.bench;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+import java.util.Random;
+
+import def.taskmodel.Task;
+import def.taskmodel.TasksModel;
+import def.taskmodel.source.BinarySnapshotFormat;
+
+/**
+ * Save/load time and file size of the binary snapshot format against the java serialized model.
+ * Tasks are spread over a day with a few thousand distinct targets, each format is measured a few times
+ * and the best run is reported.
+ * <br>Usage: SnapshotFormatBenchmark [tasks amount] [runs]
+ * @author ovoievodin
+ */
+public class SnapshotFormatBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		final int tasksAmount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		final int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+		final TasksModel model = generate(tasksAmount);
+		final File serializedFile = File.createTempFile("tasksmodel", ".ser");
+		final File binaryFile = File.createTempFile("tasksmodel", ".tmdl");
+		serializedFile.deleteOnExit();
+		binaryFile.deleteOnExit();
+
+		long serializedSave = Long.MAX_VALUE, serializedLoad = Long.MAX_VALUE;
+		long binarySave = Long.MAX_VALUE, binaryLoad = Long.MAX_VALUE;
+		for(int run = 0; run < runs; run++) {
+			long start = System.nanoTime();
+			try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(serializedFile)))) {
+				out.writeObject(model);
+			}
+			serializedSave = Math.min(serializedSave, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(serializedFile)))) {
+				check(model, (TasksModel) in.readObject());
+			}
+			serializedLoad = Math.min(serializedLoad, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			try (FileOutputStream out = new FileOutputStream(binaryFile)) {
+				BinarySnapshotFormat.write(model, out);
+			}
+			binarySave = Math.min(binarySave, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			check(model, BinarySnapshotFormat.read(binaryFile.toPath()));
+			binaryLoad = Math.min(binaryLoad, System.nanoTime() - start);
+		}
+
+		System.out.printf("%d tasks, best of %d runs%n", tasksAmount, runs);
+		System.out.printf("%-20s %12s %12s %14s%n", "format", "save ms", "load ms", "size bytes");
+		System.out.printf("%-20s %12d %12d %14d%n", "java serialization", serializedSave / 1_000_000, serializedLoad / 1_000_000, serializedFile.length());
+		System.out.printf("%-20s %12d %12d %14d%n", "binary snapshot", binarySave / 1_000_000, binaryLoad / 1_000_000, binaryFile.length());
+	}
+
+	private static TasksModel generate(int tasksAmount) {
+		final Random random = new Random(tasksAmount);
+		final TasksModel model = new TasksModel();
+		final long start = System.currentTimeMillis();
+		for(int i = 0; i < tasksAmount; i++) {
+			final Task task = new Task(new Date(start + random.nextInt(86_400) * 1000L), "/opt/jobs/job-" + random.nextInt(5000) + ".sh");
+			task.setOwnerId(random.nextInt(100));
+			model.add(task);
+		}
+		return model;
+	}
+
+	private static void check(TasksModel expected, TasksModel loaded) throws IOException {
+		if(expected.getTasksAmount() != loaded.getTasksAmount() || expected.getVersion() != loaded.getVersion()) {
+			throw new IOException("Loaded model does not match the saved one");
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package def.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import def.taskmodel.Recurrence;
+import def.taskmodel.Task;
+import def.taskmodel.TasksModel;
+import def.taskmodel.TasksModelChange;
+
+/**
+ * Payload size and encode/decode time of the wire forms of the tasks model, of the single task
+ * and of the change of a hundred tasks, as they go over RMI, against the default java serialization,
+ * the previous versions have used. The previous form is reproduced by the classes with the same serialized fields:
+ * the task with the execution date and the model as the hash map of the task lists by date.
+ * Every payload is encoded and decoded a few times and the best run is reported,
+ * the small ones are timed as the average of {@link #SMALL_PAYLOAD_ITERATIONS} encodings/decodings per run.
+ * <br>Usage: WireFormatBenchmark [tasks amount] [runs]
+ * @author ovoievodin
+ */
+public class WireFormatBenchmark {
+
+	private static final int CHANGE_SIZE = 100;
+	private static final int SMALL_PAYLOAD_ITERATIONS = 20_000;
+
+	public static void main(String[] args) throws Exception {
+		final int tasksAmount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		final int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		final TasksModel model = generate(tasksAmount);
+		final List<Task[]> cut = new ArrayList<>();
+		final long version = model.cut(cut);
+		final List<Task> changed = new ArrayList<>();
+		for(int i = 0; changed.size() < CHANGE_SIZE && i < cut.size(); i++) {
+			changed.add(cut.get(i)[0]);
+		}
+
+		System.out.printf("%d tasks, best of %d runs%n", tasksAmount, runs);
+		System.out.printf("%-26s %14s %12s %12s%n", "payload", "size bytes", "encode us", "decode us");
+		measure("model, java serialization", new PreviousTasksModel(cut, version), runs, 1);
+		measure("model, wire form", model, runs, 1);
+		measure("task, java serialization", new PreviousTask(changed.get(0)), runs, SMALL_PAYLOAD_ITERATIONS);
+		measure("task, wire form", changed.get(0), runs, SMALL_PAYLOAD_ITERATIONS);
+		final List<PreviousTask> previousChanged = new ArrayList<>();
+		for(Task task : changed) {
+			previousChanged.add(new PreviousTask(task));
+		}
+		measure("change, java serialization", new PreviousTasksModelChange(previousChanged, version), runs, SMALL_PAYLOAD_ITERATIONS / CHANGE_SIZE);
+		measure("change, wire form", new TasksModelChange(TasksModelChange.Type.ADDED, changed, version), runs, SMALL_PAYLOAD_ITERATIONS / CHANGE_SIZE);
+	}
+
+	/**
+	 * Every payload is written to the stream of it's own, as every RMI call does.
+	 */
+	private static void measure(String name, Object payload, int runs, int iterations) throws IOException, ClassNotFoundException {
+		double encode = Double.MAX_VALUE, decode = Double.MAX_VALUE;
+		byte[] bytes = null;
+		for(int run = 0; run < runs; run++) {
+			long start = System.nanoTime();
+			for(int i = 0; i < iterations; i++) {
+				final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+				try (ObjectOutputStream out = new ObjectOutputStream(encoded)) {
+					out.writeObject(payload);
+				}
+				bytes = encoded.toByteArray();
+			}
+			encode = Math.min(encode, (System.nanoTime() - start) / (double) iterations);
+
+			start = System.nanoTime();
+			for(int i = 0; i < iterations; i++) {
+				try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+					in.readObject();
+				}
+			}
+			decode = Math.min(decode, (System.nanoTime() - start) / (double) iterations);
+		}
+		System.out.printf("%-26s %14d %12.1f %12.1f%n", name, bytes.length, encode / 1_000, decode / 1_000);
+	}
+
+	private static TasksModel generate(int tasksAmount) {
+		final Random random = new Random(tasksAmount);
+		final TasksModel model = new TasksModel();
+		final Recurrence recurrence = Recurrence.parse("every 1h");
+		final long start = System.currentTimeMillis();
+		for(int i = 0; i < tasksAmount; i++) {
+			final Task task = new Task(new Date(start + random.nextInt(86_400) * 1000L), "/opt/jobs/job-" + random.nextInt(5000) + ".sh");
+			task.setOwnerId(random.nextInt(100));
+			task.setId(i + 1);
+			if(random.nextInt(10) == 0) {
+				task.setRecurrence(recurrence);
+			}
+			model.add(task);
+		}
+		return model;
+	}
+
+	/**
+	 * Task, serialized the way the previous versions did.
+	 */
+	private static final class PreviousTask implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final Date executionDate;
+		private final String target;
+		private final long ownerId;
+		private final Recurrence recurrence;
+		private final long id;
+
+		private PreviousTask(Task task) {
+			this.executionDate = task.getExecutionDate();
+			this.target = task.getTarget();
+			this.ownerId = task.getOwnerId();
+			this.recurrence = task.getRecurrence();
+			this.id = task.getId();
+		}
+	}
+
+	/**
+	 * Tasks model, serialized the way the previous versions did.
+	 */
+	private static final class PreviousTasksModel implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final Map<Date, List<PreviousTask>> data;
+		private final long version;
+
+		private PreviousTasksModel(List<Task[]> cut, long version) {
+			this.data = new HashMap<>();
+			for(Task[] tasks : cut) {
+				final List<PreviousTask> bucket = new ArrayList<>(tasks.length);
+				for(Task task : tasks) {
+					bucket.add(new PreviousTask(task));
+				}
+				data.put(tasks[0].getExecutionDate(), bucket);
+			}
+			this.version = version;
+		}
+	}
+
+	/**
+	 * Model change, serialized the way the previous versions did.
+	 */
+	private static final class PreviousTasksModelChange implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final TasksModelChange.Type type;
+		private final List<PreviousTask> tasks;
+		private final long version;
+
+		private PreviousTasksModelChange(List<PreviousTask> tasks, long version) {
+			this.type = TasksModelChange.Type.ADDED;
+			this.tasks = tasks;
+			this.version = version;
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package def.bench.jmh;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Date;
+import java.util.Random;
+
+import def.taskmodel.Task;
+import def.taskmodel.TasksModel;
+
+/**
+ * Shared fixtures of the JMH benchmarks.
+ * @author ovoievodin
+ */
+final class BenchmarkSupport {
+
+	static final long EPOCH = 1_500_000_000_000L;
+
+	private BenchmarkSupport() { }
+
+	/**
+	 * Server and model log every operation to the standard output,
+	 * which would be measured instead of the operations themselves.
+	 */
+	static void silenceStdout() {
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) { /* dropped */ }
+
+			@Override
+			public void write(byte[] b, int off, int len) { /* dropped */ }
+		}));
+	}
+
+	/**
+	 * Model of the specified size with tasks spread over a day, a few tasks per second.
+	 */
+	static TasksModel generateModel(int tasksAmount) {
+		final Random random = new Random(tasksAmount);
+		final TasksModel model = new TasksModel();
+		for(int i = 0; i < tasksAmount; i++) {
+			model.add(randomTask(random));
+		}
+		return model;
+	}
+
+	static Task randomTask(Random random) {
+		final Task task = new Task(new Date(EPOCH + random.nextInt(86_400) * 1000L), "/opt/jobs/job-" + random.nextInt(5000) + ".sh");
+		task.setOwnerId(random.nextInt(100));
+		return task;
+	}
+}
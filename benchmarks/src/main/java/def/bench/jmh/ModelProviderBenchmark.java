@@ -0,0 +1,69 @@
+package def.bench.jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import def.taskmodel.TasksModel;
+import def.taskmodel.source.FileModelProvider;
+
+/**
+ * FileModelProvider save and load of the whole model.
+ * @author ovoievodin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ModelProviderBenchmark {
+
+	@Param({ "10000", "1000000" })
+	public int size;
+
+	private File modelFile;
+	private FileModelProvider provider;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		BenchmarkSupport.silenceStdout();
+		modelFile = File.createTempFile("tasksmodel", ".tmdl");
+		modelFile.delete();
+		provider = new FileModelProvider(modelFile.getPath());
+		provider.load(); // nothing to load -> empty model.
+		provider.getModel().addAll(BenchmarkSupport.generateModel(size).asList());
+		provider.save();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		modelFile.delete();
+	}
+
+	@Benchmark
+	public void save() {
+		provider.save();
+	}
+
+	@Benchmark
+	public TasksModel load() {
+		final FileModelProvider loader = new FileModelProvider(modelFile.getPath());
+		loader.load();
+		return loader.getModel();
+	}
+}
@@ -0,0 +1,94 @@
+package def.bench.jmh;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import def.remote.RemoteTaskSchedulerClient;
+import def.server.ClientNotifier;
+import def.taskmodel.Task;
+import def.taskmodel.TasksModel;
+import def.taskmodel.TasksModelChange;
+
+/**
+ * Fan-out of a single model change to all of the clients: from publishing until every client has received it.
+ * Clients are in-process stubs, so the notifier overhead is measured, not the network.
+ * @author ovoievodin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NotificationFanOutBenchmark {
+
+	@Param({ "1", "10", "100" })
+	public int clientsAmount;
+
+	private ClientNotifier notifier;
+	private TasksModelChange change;
+	private volatile CountDownLatch delivered;
+	private long version;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		BenchmarkSupport.silenceStdout();
+		notifier = new ClientNotifier(new TasksModel());
+		for(int i = 0; i < clientsAmount; i++) {
+			notifier.addClient(new StubClient());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		notifier.shutdown();
+	}
+
+	@Benchmark
+	public void publishToAll() throws InterruptedException {
+		delivered = new CountDownLatch(clientsAmount);
+		change = new TasksModelChange(TasksModelChange.Type.ADDED, Collections.singletonList(new Task(new Date(), "target")), ++version);
+		notifier.publish(change);
+		delivered.await();
+	}
+
+	private final class StubClient implements RemoteTaskSchedulerClient {
+		private long id;
+
+		@Override
+		public void updateTasksModel(TasksModel model) {
+			delivered.countDown();
+		}
+
+		@Override
+		public void applyTasksModelChange(TasksModelChange change) {
+			delivered.countDown();
+		}
+
+		@Override
+		public void assignId(long newId) {
+			this.id = newId;
+		}
+
+		@Override
+		public long getId() {
+			return id;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package def.bench.jmh;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import def.taskmodel.PriorityQueueSet;
+import def.taskmodel.Task;
+import def.taskmodel.TasksModel;
+
+/**
+ * Schedule operations at scale: insert + cancel and peek of the closest execution time in the model index,
+ * compared with the offer of the deprecated PriorityQueueSet.
+ * @author ovoievodin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+@SuppressWarnings("deprecation")
+public class ScheduleBenchmark {
+
+	@Param({ "1000", "100000", "1000000" })
+	public int size;
+
+	private TasksModel model;
+	private PriorityQueueSet<Date> legacyQueue;
+	private Random random;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		model = new TasksModel();
+		legacyQueue = new PriorityQueueSet<>();
+		for(int i = 0; i < size; i++) {
+			final Date executionDate = new Date(BenchmarkSupport.EPOCH + i * 1000L);
+			model.add(new Task(executionDate, "target"));
+			if(size <= 100_000) { // O(n) offer makes the bigger ones take forever to fill.
+				legacyQueue.offer(executionDate);
+			}
+		}
+		random = new Random(size);
+	}
+
+	@Benchmark
+	public boolean addAndCancel() {
+		final Task probe = new Task(new Date(BenchmarkSupport.EPOCH + random.nextInt(size) * 1000L + 500L), "probe");
+		model.add(probe);
+		return model.remove(probe);
+	}
+
+	@Benchmark
+	public Date peekNext() {
+		return model.getNextExecutionDate();
+	}
+
+	@Benchmark
+	public boolean legacyOfferDuplicate() {
+		// every offer scans the whole queue, as the offered time is already there.
+		return legacyQueue.offer(new Date(BenchmarkSupport.EPOCH + random.nextInt(Math.min(size, 100_000)) * 1000L));
+	}
+}
@@ -0,0 +1,72 @@
+package def.bench.jmh;
+
+import java.rmi.RemoteException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import def.server.TaskSchedulerServer;
+import def.taskmodel.Task;
+import def.taskmodel.source.InMemoryModelProvider;
+
+/**
+ * Throughput of the server addTask/removeTask under contention of several RMI threads.
+ * Server is used in-process with the in-memory model, so only the mutation path is measured.
+ * @author ovoievodin
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServerMutationBenchmark {
+
+	private TaskSchedulerServer server;
+
+	@State(Scope.Thread)
+	public static class ThreadTasks {
+		private final Random random = new Random(Thread.currentThread().getId());
+
+		Task next() {
+			return BenchmarkSupport.randomTask(random);
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		BenchmarkSupport.silenceStdout();
+		server = new TaskSchedulerServer(new InMemoryModelProvider());
+		server.getAdmissionController().setEnabled(false); // the mutation path is measured, not the submission limits.
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void addRemoveUncontended(ThreadTasks tasks) throws RemoteException {
+		addRemove(tasks);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void addRemoveContended(ThreadTasks tasks) throws RemoteException {
+		addRemove(tasks);
+	}
+
+	private void addRemove(ThreadTasks tasks) throws RemoteException {
+		final Task task = tasks.next();
+		server.addTask(task);
+		server.removeTask(task);
+	}
+}
@@ -0,0 +1,85 @@
+package def.bench.jmh;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import def.taskmodel.Task;
+import def.taskmodel.TasksModel;
+
+/**
+ * Throughput of the concurrent model mutations: add + remove of the tasks,
+ * spread over the distinct time slots or all hitting the same one,
+ * and the writers running next to the dispatcher, draining the due slots.
+ * Run with -t 1/4/8 (or -Pjmh.args="-t 8") to see the scaling.
+ * @author ovoievodin
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class TasksModelConcurrencyBenchmark {
+
+	private static final int SLOTS = 100_000;
+
+	private TasksModel model;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		model = new TasksModel();
+		for(int i = 0; i < SLOTS; i++) {
+			model.add(new Task(new Date(BenchmarkSupport.EPOCH + i * 1000L), "target"));
+		}
+	}
+
+	@Benchmark
+	@Threads(4)
+	public boolean distinctSlots() {
+		final Task task = new Task(new Date(BenchmarkSupport.EPOCH + ThreadLocalRandom.current().nextInt(SLOTS) * 1000L + 1L), "target");
+		model.add(task);
+		return model.remove(task);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public boolean hotSlot() {
+		final Task task = new Task(new Date(BenchmarkSupport.EPOCH), "target");
+		model.add(task);
+		return model.remove(task);
+	}
+
+	/**
+	 * Writers keep adding the tasks into the future, the drainer takes the due ones.
+	 */
+	@Benchmark
+	@Group("writersWithDrainer")
+	@GroupThreads(3)
+	public void writer() {
+		model.add(new Task(new Date(System.currentTimeMillis() + ThreadLocalRandom.current().nextInt(1000)), "target"));
+	}
+
+	@Benchmark
+	@Group("writersWithDrainer")
+	@GroupThreads(1)
+	public List<Task> drainer() {
+		return model.pollDue(new Date());
+	}
+}
@@ -0,0 +1,54 @@
+package def.bench.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import def.taskmodel.Task;
+import def.taskmodel.TasksModel;
+
+/**
+ * Whole model reads, the client table does on every refresh and repaint.
+ * @author ovoievodin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class TasksModelReadBenchmark {
+
+	@Param({ "1000", "100000", "1000000" })
+	public int size;
+
+	private TasksModel model;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		BenchmarkSupport.silenceStdout();
+		model = BenchmarkSupport.generateModel(size);
+	}
+
+	@Benchmark
+	public List<Task> asList() {
+		return model.asList();
+	}
+
+	@Benchmark
+	public int getTasksAmount() {
+		return model.getTasksAmount();
+	}
+}
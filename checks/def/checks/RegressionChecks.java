@@ -0,0 +1,113 @@
+package def.checks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import def.server.ExecutionOutputStore;
+import def.server.TaskDispatcher;
+import def.server.TaskExecutionEngine;
+import def.taskmodel.Recurrence;
+import def.taskmodel.Task;
+import def.taskmodel.TaskExecution;
+import def.taskmodel.TaskOutputChunk;
+import def.taskmodel.TasksModel;
+
+/**
+ * Regression checks of the scheduler behaviour, which has already been broken once.
+ * Every check throws the {@link IllegalStateException}, describing the failure, so the build fails.
+ * <br>Usage: gradle regressionChecks (a part of gradle check)
+ * @author ovoievodin
+ */
+public class RegressionChecks {
+
+	public static void main(String[] args) throws Exception {
+		lateRecurringTaskFiresOnce();
+		sameTimeTasksAddInLinearTime();
+		runawayOutputIsCapped();
+		System.out.println("All regression checks passed.");
+	}
+
+	/**
+	 * Recurring task, due long ago (e.g. after the downtime), fires once and is rescheduled after the current time,
+	 * instead of replaying every missed occurrence.
+	 */
+	private static void lateRecurringTaskFiresOnce() throws InterruptedException {
+		final TasksModel model = new TasksModel();
+		final List<Task> fired = Collections.synchronizedList(new ArrayList<>());
+		final TaskDispatcher dispatcher = new TaskDispatcher(model, fired::addAll);
+		final Task task = new Task(new Date(System.currentTimeMillis() - 60L * 60 * 1000), "/opt/jobs/late.sh");
+		task.setRecurrence(Recurrence.parse("every 10s"));
+		model.add(task);
+		final long start = System.currentTimeMillis();
+		dispatcher.start();
+		try {
+			Thread.sleep(1500);
+		} finally {
+			dispatcher.stop();
+		}
+		verify(fired.size() == 1, "late recurring task has fired " + fired.size() + " times instead of once");
+		final Date next = model.getNextExecutionDate();
+		verify(next != null && next.getTime() > start && next.getTime() <= start + 10_000L,
+				"late recurring task is rescheduled at " + next + " instead of the next occurrence after " + new Date(start));
+		System.out.println("Late recurring task fires once: OK");
+	}
+
+	/**
+	 * Many tasks of the same execution time are added in the amortized constant time each, not by copying the whole bucket every time.
+	 * Quadratic growth takes tens of seconds for this amount, the linear one - tens of milliseconds, so the limit is generous.
+	 */
+	private static void sameTimeTasksAddInLinearTime() {
+		final int tasksAmount = 200_000;
+		final List<Task> tasks = new ArrayList<>(tasksAmount);
+		for(int i = 0; i < tasksAmount; i++) {
+			tasks.add(new Task(new Date(4_102_444_800_000L), "/opt/jobs/job-" + i + ".sh"));
+		}
+		final TasksModel model = new TasksModel();
+		final long start = System.nanoTime();
+		model.addAll(tasks);
+		final long millis = (System.nanoTime() - start) / 1_000_000;
+		verify(millis < 2000, tasksAmount + " tasks of the same time are added in " + millis + "ms");
+		verify(model.getTasksAmount() == tasksAmount && model.asList().size() == tasksAmount,
+				model.getTasksAmount() + " tasks are scheduled instead of " + tasksAmount);
+		System.out.println("Same time tasks are added in " + millis + "ms: OK");
+	}
+
+	/**
+	 * Process, which writes endlessly, is killed once it's output is over the limit, and the output file is cut to the limit.
+	 */
+	private static void runawayOutputIsCapped() throws IOException, InterruptedException {
+		final long maxOutputBytes = 64 * 1024;
+		final Path directory = Files.createTempDirectory("executions");
+		final TaskExecutionEngine engine = new TaskExecutionEngine(1, 1, 1, 60_000L, 1000L, 10, 100L);
+		try {
+			final ExecutionOutputStore store = new ExecutionOutputStore(directory, 0, 1, 10, maxOutputBytes);
+			engine.setOutputStore(store);
+			engine.submit(Collections.singletonList(new Task(new Date(), "yes")));
+			final long deadline = System.currentTimeMillis() + 10_000L;
+			while(engine.getFinishedExecutions().isEmpty() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(50);
+			}
+			final List<TaskExecution> finished = engine.getFinishedExecutions();
+			verify(finished.size() == 1 && finished.get(0).getOutcome() == TaskExecution.Outcome.OUTPUT_EXCEEDED,
+					"endless output has ended as " + finished + " instead of " + TaskExecution.Outcome.OUTPUT_EXCEEDED);
+			final long length = Files.size(store.pathOf(finished.get(0).getId(), TaskOutputChunk.Source.STDOUT));
+			verify(length == maxOutputBytes, "output of " + length + " bytes is kept instead of " + maxOutputBytes);
+			store.delete(finished.get(0).getId());
+			Files.deleteIfExists(directory);
+		} finally {
+			engine.shutdown();
+		}
+		System.out.println("Runaway output is capped: OK");
+	}
+
+	private static void verify(boolean condition, String failure) {
+		if(!condition) {
+			throw new IllegalStateException(failure);
+		}
+	}
+}
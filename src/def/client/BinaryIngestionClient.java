@@ -0,0 +1,235 @@
+package def.client;
+
+import static def.remote.BinaryIngestionProtocol.ADD_TASKS;
+import static def.remote.BinaryIngestionProtocol.HEADER_BYTES;
+import static def.remote.BinaryIngestionProtocol.QUERY_TASKS;
+import static def.remote.BinaryIngestionProtocol.REMOVE_TASKS;
+import static def.remote.BinaryIngestionProtocol.STATUS_ERROR;
+import static def.remote.BinaryIngestionProtocol.STATUS_OK;
+import static def.remote.BinaryIngestionProtocol.STATUS_REJECTED;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import def.remote.BinaryIngestionProtocol;
+import def.taskmodel.Task;
+import def.taskmodel.TaskWireFormat;
+import def.taskmodel.TasksPage;
+import def.taskmodel.TasksQuery;
+
+/**
+ * Client of the scheduler's binary ingestion endpoint (see {@link BinaryIngestionProtocol}) for the batch producers.
+ * Asynchronous calls are pipelined: the request is sent at once and the future is completed by the reader thread,
+ * once it's response arrives, so the producer keeps any amount of requests in flight over the single connection.
+ * Failed request completes with the {@link RemoteException}, the rejected one with the {@link def.remote.AdmissionRejectedException},
+ * as the RMI calls do. Lost connection fails all of the requests in flight.
+ * @author ovoievodin
+ */
+public class BinaryIngestionClient implements Closeable {
+
+	private final Socket socket;
+	private final DataOutputStream out;
+	private final DataInputStream in;
+	private final Map<Integer, CompletableFuture<DataInputStream>> pendingResponses;
+
+	/** Guarded by out. */
+	private int lastRequestId;
+
+	private volatile IOException failure;
+
+	/**
+	 * Connect to the endpoint and start reading the responses.
+	 * @throws IOException if the endpoint is not reachable.
+	 */
+	public BinaryIngestionClient(InetSocketAddress address) throws IOException {
+		this.socket = new Socket();
+		socket.setTcpNoDelay(true);
+		socket.connect(address);
+		this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+		this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+		this.pendingResponses = new ConcurrentHashMap<>();
+		final Thread reader = new Thread(this::readResponses, "binary-ingestion-client");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * @return future ids of the added tasks in their order, 0 for the task of the other shard.
+	 */
+	public CompletableFuture<long[]> addTasksAsync(List<Task> tasks) {
+		return call(ADD_TASKS, out -> TaskWireFormat.writeTasks(out, tasks)).thenApply(in -> {
+			try {
+				final long[] ids = new long[TaskWireFormat.readVarInt(in)];
+				for(int i = 0; i < ids.length; i++) {
+					ids[i] = TaskWireFormat.readVarLong(in);
+				}
+				return ids;
+			} catch (IOException e) {
+				throw new IllegalStateException("Malformed response: " + e.getMessage(), e);
+			}
+		});
+	}
+
+	/**
+	 * @return future results of the removal in the order of ids: true for every removed task.
+	 */
+	public CompletableFuture<boolean[]> removeTasksAsync(long... taskIds) {
+		return call(REMOVE_TASKS, out -> {
+			TaskWireFormat.writeVarLong(out, taskIds.length);
+			for(long taskId : taskIds) {
+				TaskWireFormat.writeVarLong(out, taskId);
+			}
+		}).thenApply(in -> {
+			try {
+				final boolean[] results = new boolean[TaskWireFormat.readVarInt(in)];
+				for(int i = 0; i < results.length; i++) {
+					results[i] = in.readBoolean();
+				}
+				return results;
+			} catch (IOException e) {
+				throw new IllegalStateException("Malformed response: " + e.getMessage(), e);
+			}
+		});
+	}
+
+	public CompletableFuture<TasksPage> queryTasksAsync(TasksQuery query) {
+		return call(QUERY_TASKS, out -> BinaryIngestionProtocol.writeQuery(out, query)).thenApply(in -> {
+			try {
+				return BinaryIngestionProtocol.readPage(in);
+			} catch (IOException e) {
+				throw new IllegalStateException("Malformed response: " + e.getMessage(), e);
+			}
+		});
+	}
+
+	public long[] addTasks(List<Task> tasks) throws RemoteException {
+		return await(addTasksAsync(tasks));
+	}
+
+	public boolean[] removeTasks(long... taskIds) throws RemoteException {
+		return await(removeTasksAsync(taskIds));
+	}
+
+	public TasksPage queryTasks(TasksQuery query) throws RemoteException {
+		return await(queryTasksAsync(query));
+	}
+
+	@Override
+	public void close() throws IOException {
+		socket.close();
+	}
+
+	private interface RequestBody {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	private CompletableFuture<DataInputStream> call(byte operation, RequestBody body) {
+		final CompletableFuture<DataInputStream> response = new CompletableFuture<>();
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+			body.write(new DataOutputStream(bytes));
+			synchronized (out) {
+				if(failure != null) {
+					throw failure;
+				}
+				final int requestId = ++lastRequestId;
+				pendingResponses.put(requestId, response);
+				out.writeInt(HEADER_BYTES + bytes.size());
+				out.writeInt(requestId);
+				out.writeByte(operation);
+				bytes.writeTo(out);
+				out.flush();
+			}
+		} catch (IOException e) {
+			fail(e);
+			response.completeExceptionally(new RemoteException("Binary ingestion request error", e));
+		}
+		return response;
+	}
+
+	private void readResponses() {
+		try {
+			while(true) {
+				final int length = in.readInt();
+				if(length < HEADER_BYTES) {
+					throw new StreamCorruptedException("Response frame of " + length + " bytes");
+				}
+				final int requestId = in.readInt();
+				final byte status = in.readByte();
+				final byte[] body = new byte[length - HEADER_BYTES];
+				in.readFully(body);
+				final CompletableFuture<DataInputStream> response = pendingResponses.remove(requestId);
+				if(response == null) {
+					throw new StreamCorruptedException("Response to the unknown request " + requestId);
+				}
+				final DataInputStream bodyIn = new DataInputStream(new ByteArrayInputStream(body));
+				switch(status) {
+					case STATUS_OK:
+						response.complete(bodyIn);
+						break;
+					case STATUS_REJECTED:
+						response.completeExceptionally(BinaryIngestionProtocol.readRejection(bodyIn));
+						break;
+					case STATUS_ERROR:
+						response.completeExceptionally(new RemoteException(bodyIn.readUTF()));
+						break;
+					default:
+						throw new StreamCorruptedException("Unknown response status " + status);
+				}
+			}
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Fail all of the requests in flight and the following ones.
+	 */
+	private void fail(IOException error) {
+		synchronized (out) {
+			if(failure == null) {
+				failure = error;
+			}
+		}
+		for(Integer requestId : pendingResponses.keySet()) {
+			final CompletableFuture<DataInputStream> response = pendingResponses.remove(requestId);
+			if(response != null) {
+				response.completeExceptionally(new RemoteException("Binary ingestion connection lost", error));
+			}
+		}
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// already closed.
+		}
+	}
+
+	private static <T> T await(CompletableFuture<T> response) throws RemoteException {
+		try {
+			return response.get();
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RemoteException) {
+				throw (RemoteException) e.getCause();
+			}
+			throw new RemoteException("Binary ingestion request error", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RemoteException("Interrupted while waiting for the response", e);
+		}
+	}
+}
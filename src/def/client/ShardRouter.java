@@ -0,0 +1,513 @@
+package def.client;
+
+import static def.utils.Preferences.MAX_QUERY_PAGE_SIZE;
+import static def.utils.Preferences.REMOTE_LOOKUP_SERVER_TARGET;
+
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.Registry;
+import java.rmi.server.RemoteObject;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import def.remote.RemoteTaskSchedulerClient;
+import def.remote.RemoteTaskSchedulerServer;
+import def.taskmodel.Task;
+import def.taskmodel.TaskExecution;
+import def.taskmodel.TaskOutputChunk;
+import def.taskmodel.TasksCursor;
+import def.taskmodel.TasksModel;
+import def.taskmodel.TasksModelChange;
+import def.taskmodel.TasksPage;
+import def.taskmodel.TasksQuery;
+import def.utils.ShardUtils;
+
+/**
+ * Client side routing layer of the sharded scheduler cluster.
+ * Looks like a single scheduler server, while every task is actually kept by the shard, owning it (see {@link ShardUtils#shardOf(Task, int)}):
+ * <li>single task calls go to the owning shard only, batches are split by shard and sent in parallel.</li>
+ * <li>task id calls go to the shard, which has assigned the id (see {@link ShardUtils#shardOfTask(long, int)}).</li>
+ * <li>whole model and paged queries are sent to every shard in parallel and merged in the execution time order.</li>
+ * <li>changes, pushed by the shards, are renumbered into the single sequence of versions of the merged model,
+ * so the client keeps applying them incrementally, as with a single server. Every registered client has it's own sequence,
+ * which starts from the merged model, pushed to it on registration or loaded by {@link #getTasks(RemoteTaskSchedulerClient)}.
+ * Missed change of the shard pushes the whole merged model to the client anew.</li>
+ * <li>execution output is read from the shard, which has made the execution (see {@link ShardUtils#shardOfExecution(long, int)}).</li>
+ * @author ovoievodin
+ */
+public class ShardRouter implements RemoteTaskSchedulerServer {
+
+	private final RemoteTaskSchedulerServer[] shards;
+	private final ExecutorService executor;
+	private final Map<RemoteTaskSchedulerClient, Registration> registrations;
+
+	/**
+	 * @param shards shard servers, in the shard index order.
+	 */
+	public ShardRouter(RemoteTaskSchedulerServer[] shards) {
+		this.shards = shards;
+		this.registrations = new ConcurrentHashMap<>();
+		final AtomicInteger threadsCounter = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(shards.length, runnable -> {
+			final Thread thread = new Thread(runnable, "shard-router-" + threadsCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Find all of the shard servers in the registry.
+	 * @param registry RMI registry, the shards are bound to.
+	 * @return router over the found shards.
+	 * @throws NotBoundException if there are no shards or some of them are missing.
+	 * @author ovoievodin
+	 */
+	public static ShardRouter lookup(Registry registry) throws RemoteException, NotBoundException {
+		RemoteTaskSchedulerServer[] shards = null;
+		for(String lookupName : registry.list()) {
+			final int[] shard = ShardUtils.parseShardLookupName(lookupName);
+			if(shard == null) {
+				continue;
+			}
+			if(shards == null) {
+				shards = new RemoteTaskSchedulerServer[shard[1]];
+			} else if(shards.length != shard[1]) {
+				throw new NotBoundException("Shards of different clusters are bound: " + shards.length + " and " + shard[1] + " shards.");
+			}
+			shards[shard[0]] = (RemoteTaskSchedulerServer) registry.lookup(lookupName);
+		}
+		if(shards == null) {
+			throw new NotBoundException(REMOTE_LOOKUP_SERVER_TARGET);
+		}
+		for(int i = 0; i < shards.length; i++) {
+			if(shards[i] == null) {
+				throw new NotBoundException(ShardUtils.shardLookupName(i, shards.length));
+			}
+		}
+		System.out.println("Scheduler cluster of " + shards.length + " shards found.");
+		return new ShardRouter(shards);
+	}
+
+	public int getShardsAmount() {
+		return shards.length;
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Override
+	public long addTask(Task newTask) throws RemoteException {
+		return shards[ShardUtils.shardOf(newTask, shards.length)].addTask(newTask);
+	}
+
+	@Override
+	public void removeTask(Task task) throws RemoteException {
+		shards[ShardUtils.shardOf(task, shards.length)].removeTask(task);
+	}
+
+	@Override
+	public boolean removeTask(long taskId) throws RemoteException {
+		return shards[ShardUtils.shardOfTask(taskId, shards.length)].removeTask(taskId);
+	}
+
+	@Override
+	public Task getTask(long taskId) throws RemoteException {
+		return shards[ShardUtils.shardOfTask(taskId, shards.length)].getTask(taskId);
+	}
+
+	@Override
+	public List<Boolean> addTasks(Collection<Task> newTasks) throws RemoteException {
+		final List<List<Task>> batches = partition(newTasks);
+		return mergeResults(newTasks, callAll((shard, i) -> batches.get(i).isEmpty() ? null : shard.addTasks(batches.get(i))));
+	}
+
+	@Override
+	public List<Boolean> removeTasks(Collection<Task> tasks) throws RemoteException {
+		final List<List<Task>> batches = partition(tasks);
+		return mergeResults(tasks, callAll((shard, i) -> batches.get(i).isEmpty() ? null : shard.removeTasks(batches.get(i))));
+	}
+
+	/**
+	 * Merge the models of all of the shards.
+	 * Version of the merged model is the sum of the shard versions, it does not continue the changes, pushed to any client,
+	 * the registered client loads the model by {@link #getTasks(RemoteTaskSchedulerClient)} instead.
+	 */
+	@Override
+	public TasksModel getTasks() throws RemoteException {
+		final List<TasksModel> models = callAll((shard, i) -> shard.getTasks());
+		long version = 0;
+		for(TasksModel model : models) {
+			version += model.getVersion();
+		}
+		return merge(models, version);
+	}
+
+	/**
+	 * Merge the models of all of the shards for the registered client.
+	 * Merged model gets the new version of the client's sequence, and the changes, pushed by the shards after their models were taken,
+	 * are numbered following it.
+	 * @param client registered client, the not registered one gets the model of {@link #getTasks()}.
+	 * @author ovoievodin
+	 */
+	public TasksModel getTasks(RemoteTaskSchedulerClient client) throws RemoteException {
+		final Registration registration = registrations.get(asStub(client));
+		return registration == null ? getTasks() : registration.load();
+	}
+
+	private TasksModel merge(List<TasksModel> models, long version) {
+		final Map<Date, List<Task>> merged = new HashMap<>();
+		for(TasksModel model : models) {
+			for(Map.Entry<Date, List<Task>> bucket : model.getData().entrySet()) {
+				merged.computeIfAbsent(bucket.getKey(), time -> new ArrayList<>()).addAll(bucket.getValue());
+			}
+		}
+		return new TasksModel(merged, version);
+	}
+
+	/**
+	 * Query every shard from it's own cursor and merge the pages in the execution time order
+	 * (tasks of the same time go in the shard index order).
+	 * Next cursor keeps the position of every shard right after it's last task, taken into the merged page.
+	 * Version of the merged page is the sum of the shard versions, so it still grows with every change.
+	 * Offset can not be split between the shards, so the merged pages before it are walked through.
+	 */
+	@Override
+	public TasksPage queryTasks(TasksQuery query) throws RemoteException {
+		if(query.getCursor() == null && query.getOffset() > 0) {
+			return queryFromOffset(query);
+		}
+		final TasksCursor[] cursors = query.getCursor() == null ? new TasksCursor[shards.length] : query.getCursor().getShardCursors().clone();
+		final List<TasksPage> pages = callAll((shard, i) -> shard.queryTasks(
+				new TasksQuery(query.getFrom(), query.getTo(), query.getOwnerId(), query.getPageSize(), cursors[i])));
+		final int[] taken = new int[shards.length];
+		final List<Task> merged = new ArrayList<>();
+		while(merged.size() < query.getPageSize()) {
+			int next = -1;
+			for(int i = 0; i < shards.length; i++) {
+				final List<Task> shardTasks = pages.get(i).getTasks();
+				if(taken[i] == shardTasks.size()) {
+					if(pages.get(i).getNextCursor() != null) {
+						next = -1; // shard page was cut by the server's page limit, it's next tasks are unknown.
+						break;
+					}
+				} else if(next < 0 || shardTasks.get(taken[i]).compareTo(pages.get(next).getTasks().get(taken[next])) < 0) {
+					next = i;
+				}
+			}
+			if(next < 0) {
+				break;
+			}
+			merged.add(pages.get(next).getTasks().get(taken[next]++));
+		}
+		boolean isLast = true;
+		long version = 0;
+		int tasksAmount = 0;
+		for(int i = 0; i < shards.length; i++) {
+			final TasksPage page = pages.get(i);
+			version += page.getVersion();
+			tasksAmount = tasksAmount < 0 || page.getTasksAmount() < 0 ? -1 : tasksAmount + page.getTasksAmount();
+			if(taken[i] < page.getTasks().size() || page.getNextCursor() != null) {
+				isLast = false;
+			}
+			if(taken[i] > 0) {
+				cursors[i] = advance(cursors[i], page.getTasks(), taken[i]);
+			}
+		}
+		if(isLast || merged.isEmpty()) {
+			return new TasksPage(merged, null, version, tasksAmount);
+		}
+		final long lastTime = merged.get(merged.size() - 1).getExecutionTime();
+		int returnedInBucket = 0;
+		for(TasksCursor cursor : cursors) {
+			if(cursor != null && cursor.getExecutionTime() == lastTime) {
+				returnedInBucket += cursor.getReturnedInBucket();
+			}
+		}
+		return new TasksPage(merged, new TasksCursor(lastTime, returnedInBucket, cursors), version, tasksAmount);
+	}
+
+	/**
+	 * Skip the offset by the merged pages of the maximal size and take the page, following it.
+	 */
+	private TasksPage queryFromOffset(TasksQuery query) throws RemoteException {
+		int remaining = query.getOffset();
+		TasksQuery skipping = new TasksQuery(query.getFrom(), query.getTo(), query.getOwnerId(), Math.min(remaining, MAX_QUERY_PAGE_SIZE));
+		while(true) {
+			final TasksPage skipped = queryTasks(skipping);
+			remaining -= skipped.getTasks().size();
+			if(skipped.getNextCursor() == null) {
+				return new TasksPage(new ArrayList<>(), null, skipped.getVersion(), skipped.getTasksAmount());
+			}
+			final TasksQuery following = new TasksQuery(query.getFrom(), query.getTo(), query.getOwnerId(),
+					remaining > 0 ? Math.min(remaining, MAX_QUERY_PAGE_SIZE) : query.getPageSize(), skipped.getNextCursor());
+			if(remaining <= 0) {
+				return queryTasks(following);
+			}
+			skipping = following;
+		}
+	}
+
+	/**
+	 * Executions of all of the shards in the order of their start.
+	 */
+	@Override
+	public List<TaskExecution> getTaskExecutions() throws RemoteException {
+		final List<TaskExecution> merged = new ArrayList<>();
+		for(List<TaskExecution> executions : callAll((shard, i) -> shard.getTaskExecutions())) {
+			merged.addAll(executions);
+		}
+		merged.sort(Comparator.comparingLong(TaskExecution::getStartTime));
+		return merged;
+	}
+
+	@Override
+	public TaskOutputChunk readTaskOutput(long executionId, TaskOutputChunk.Source source, long offset, int maxLength) throws RemoteException {
+		return shards[ShardUtils.shardOfExecution(executionId, shards.length)].readTaskOutput(executionId, source, offset, maxLength);
+	}
+
+	/**
+	 * Register the client on every shard through it's own channel, renumbering the changes of that shard,
+	 * and push the merged model to it, which the changes are numbered from.
+	 */
+	@Override
+	public void registerClient(RemoteTaskSchedulerClient client) throws RemoteException {
+		client = asStub(client);
+		final Registration registration = new Registration(client);
+		final ShardChannel[] channels = registration.channels;
+		for(int i = 0; i < shards.length; i++) {
+			UnicastRemoteObject.exportObject(channels[i], 0);
+		}
+		if(registrations.putIfAbsent(client, registration) != null) {
+			unexport(channels);
+			System.out.println("Client logging failed: " + client + " already logged in.");
+			return;
+		}
+		callAll((shard, i) -> {
+			shard.registerClient(channels[i]);
+			return null;
+		});
+		registration.reload();
+	}
+
+	@Override
+	public void unRegisterClient(RemoteTaskSchedulerClient client) throws RemoteException {
+		final Registration registration = registrations.remove(asStub(client));
+		if(registration == null) {
+			return;
+		}
+		final ShardChannel[] channels = registration.channels;
+		try {
+			callAll((shard, i) -> {
+				shard.unRegisterClient(channels[i]);
+				return null;
+			});
+		} finally {
+			unexport(channels);
+		}
+	}
+
+	/**
+	 * Client is registered both by itself and by it's stub, so both should be the same registration.
+	 */
+	private static RemoteTaskSchedulerClient asStub(RemoteTaskSchedulerClient client) {
+		try {
+			return (RemoteTaskSchedulerClient) RemoteObject.toStub(client);
+		} catch (NoSuchObjectException e) {
+			return client; // not exported, so it is called locally.
+		}
+	}
+
+	private static void unexport(ShardChannel[] channels) {
+		for(ShardChannel channel : channels) {
+			try {
+				UnicastRemoteObject.unexportObject(channel, true);
+			} catch (RemoteException e) {
+				// not exported -> nothing to do.
+			}
+		}
+	}
+
+	private List<List<Task>> partition(Collection<Task> tasks) {
+		final List<List<Task>> batches = new ArrayList<>(shards.length);
+		for(int i = 0; i < shards.length; i++) {
+			batches.add(new ArrayList<>());
+		}
+		for(Task task : tasks) {
+			batches.get(ShardUtils.shardOf(task, shards.length)).add(task);
+		}
+		return batches;
+	}
+
+	/**
+	 * Put the results of the shard batches back into the order of the tasks.
+	 */
+	private List<Boolean> mergeResults(Collection<Task> tasks, List<List<Boolean>> shardResults) {
+		final int[] positions = new int[shards.length];
+		final List<Boolean> results = new ArrayList<>(tasks.size());
+		for(Task task : tasks) {
+			final int shardIndex = ShardUtils.shardOf(task, shards.length);
+			results.add(shardResults.get(shardIndex).get(positions[shardIndex]++));
+		}
+		return results;
+	}
+
+	/**
+	 * Cursor of the shard right after the specified amount of tasks of it's page.
+	 */
+	private static TasksCursor advance(TasksCursor cursor, List<Task> pageTasks, int taken) {
+		final long lastTime = pageTasks.get(taken - 1).getExecutionTime();
+		int returnedInBucket = cursor != null && cursor.getExecutionTime() == lastTime ? cursor.getReturnedInBucket() : 0;
+		for(int i = 0; i < taken; i++) {
+			if(pageTasks.get(i).getExecutionTime() == lastTime) {
+				returnedInBucket++;
+			}
+		}
+		return new TasksCursor(lastTime, returnedInBucket);
+	}
+
+	/**
+	 * Call every shard in parallel and wait for all of them.
+	 * @return results in the shard index order.
+	 */
+	private <T> List<T> callAll(ShardCall<T> call) throws RemoteException {
+		final List<Future<T>> futures = new ArrayList<>(shards.length);
+		for(int i = 0; i < shards.length; i++) {
+			final int shardIndex = i;
+			futures.add(executor.submit(() -> call.call(shards[shardIndex], shardIndex)));
+		}
+		final List<T> results = new ArrayList<>(shards.length);
+		try {
+			for(Future<T> future : futures) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RemoteException("Interrupted waiting for the shards.", e);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RemoteException) {
+				throw (RemoteException) e.getCause();
+			}
+			throw new RemoteException("Shard call failed.", e.getCause());
+		}
+		return results;
+	}
+
+	private interface ShardCall<T> {
+		T call(RemoteTaskSchedulerServer shard, int shardIndex) throws RemoteException;
+	}
+
+	/**
+	 * Registered client: it's channels and the version sequence of the merged model, it is up to date with.
+	 * Changes of the client are forwarded under it's own lock, so it receives the changes of all of the shards
+	 * in the version order, while the slow client does not hold the others.
+	 */
+	private final class Registration {
+
+		private final RemoteTaskSchedulerClient client;
+		private final ShardChannel[] channels;
+		/** Version of every shard, the client's merged model is up to date with. Guarded by this. */
+		private final long[] shardVersions;
+		/** Guarded by this. */
+		private long mergedVersion;
+
+		private Registration(RemoteTaskSchedulerClient client) {
+			this.client = client;
+			this.channels = new ShardChannel[shards.length];
+			for(int i = 0; i < shards.length; i++) {
+				channels[i] = new ShardChannel(this, i);
+			}
+			this.shardVersions = new long[shards.length];
+		}
+
+		/**
+		 * Merge the models of the shards and number the following changes after it.
+		 */
+		private synchronized TasksModel load() throws RemoteException {
+			final List<TasksModel> models = callAll((shard, i) -> shard.getTasks());
+			for(int i = 0; i < shards.length; i++) {
+				shardVersions[i] = models.get(i).getVersion();
+			}
+			return merge(models, ++mergedVersion);
+		}
+
+		/**
+		 * Push the whole merged model to the client instead of the changes, it has missed.
+		 */
+		private synchronized void reload() throws RemoteException {
+			client.updateTasksModel(load());
+		}
+
+		/**
+		 * Renumber the change of the shard into the client's version sequence and pass it to the client.
+		 */
+		private synchronized void forward(int shardIndex, TasksModelChange change) throws RemoteException {
+			if(change.getVersion() <= shardVersions[shardIndex]) {
+				return; // already in the merged model.
+			}
+			if(change.getVersion() != shardVersions[shardIndex] + 1) {
+				reload();
+				return;
+			}
+			shardVersions[shardIndex]++;
+			client.applyTasksModelChange(new TasksModelChange(change.getType(), change.getTasks(), ++mergedVersion));
+		}
+	}
+
+	/**
+	 * Callback of the single shard, registered instead of the client itself.
+	 */
+	private static final class ShardChannel implements RemoteTaskSchedulerClient {
+
+		private final Registration registration;
+		private final RemoteTaskSchedulerClient client;
+		private final int shardIndex;
+
+		private ShardChannel(Registration registration, int shardIndex) {
+			this.registration = registration;
+			this.client = registration.client;
+			this.shardIndex = shardIndex;
+		}
+
+		/**
+		 * Only the model of this shard is pushed, so the client gets the merged one anew.
+		 */
+		@Override
+		public void updateTasksModel(TasksModel model) throws RemoteException {
+			registration.reload();
+		}
+
+		@Override
+		public void applyTasksModelChange(TasksModelChange change) throws RemoteException {
+			registration.forward(shardIndex, change);
+		}
+
+		/**
+		 * Every shard assigns the id on it's own, the first one is used.
+		 */
+		@Override
+		public void assignId(long newId) throws RemoteException {
+			if(shardIndex == 0) {
+				client.assignId(newId);
+			}
+		}
+
+		@Override
+		public long getId() throws RemoteException {
+			return client.getId();
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package def.client;
 
 import static def.utils.Preferences.BOUNDING_PORT;
+import static def.utils.Preferences.CLIENT_REMOTE_CALL_THREADS_AMOUNT;
 import static def.utils.Preferences.DEFAULT_CLIENT_IDENTIFIER;
 import static def.utils.Preferences.GUI_LOOKANDFEEL_CLASSNAME;
 import static def.utils.Preferences.REMOTE_LOOKUP_SERVER_TARGET;
@@ -10,29 +11,75 @@ import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
 
 import def.client.gui.RMIClientFrame;
+import def.remote.AdmissionRejectedException;
 import def.remote.RemoteTaskSchedulerClient;
 import def.remote.RemoteTaskSchedulerServer;
+import def.taskmodel.Recurrence;
 import def.taskmodel.Task;
+import def.taskmodel.TaskExecution;
+import def.taskmodel.TaskOutputChunk;
 import def.taskmodel.TasksModel;
+import def.taskmodel.TasksModelChange;
+import def.taskmodel.TasksPage;
+import def.taskmodel.TasksQuery;
 
 /**
  * Scheduler client represents mostly just an interface
  * for communicating the scheduler server with a Client GUI.
+ * <br>Asynchronous methods (*Async) make the remote calls on the bounded pool of the remote call threads,
+ * so the GUI never waits for the server and the independent requests are in flight at the same time.
+ * Their futures complete on the remote call thread, so the GUI should apply the results
+ * with {@code thenAcceptAsync(..., SwingUtilities::invokeLater)}.
  * @author ovoievodin
  */
 public class TaskSchedulerClient implements RemoteTaskSchedulerClient {
 
+	private static final String VIRTUAL_TABLE_ARGUMENT = "--virtual";
+
 	private RemoteTaskSchedulerServer taskSchedulingServer;
 	private RMIClientFrame clientGUI;
+	
+	/**
+	 * Local copy of the server's tasks model, kept up to date by the pushed changes.
+	 */
+	private volatile TasksModel tasksModel;
 	private long id;
-	private boolean isConnectionLost;
+	private volatile boolean isConnectionLost;
+	
+	private final ExecutorService remoteCalls;
+	
+	/**
+	 * Whole model load, which is in flight, so the concurrent loads just join it. Guarded by this.
+	 */
+	private CompletableFuture<TasksModel> pendingLoad;
 	
 	public TaskSchedulerClient() {
 		id = DEFAULT_CLIENT_IDENTIFIER;
 		isConnectionLost = false;
+		final AtomicInteger threadsCounter = new AtomicInteger();
+		remoteCalls = new ThreadPoolExecutor(
+				CLIENT_REMOTE_CALL_THREADS_AMOUNT,
+				CLIENT_REMOTE_CALL_THREADS_AMOUNT,
+				60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(),
+				runnable -> {
+					final Thread thread = new Thread(runnable, "client-remote-call-" + threadsCounter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
 	}
 	
 	/**
@@ -40,15 +87,79 @@ public class TaskSchedulerClient implements RemoteTaskSchedulerClient {
 	 * Will raise error dialog in the GUI in case of error.
 	 * @param time task execution time.
 	 * @param target execution target filename.
+	 * @return id, assigned to the task by the server, or 0 in case of exception.
+	 * @author ovoievodin
+	 */
+	public long addTask(Date time, String target) {
+		return addTask(time, target, null);
+	}
+	
+	/**
+	 * Attempt to schedule new recurring task on server.
+	 * Will raise error dialog in the GUI in case of error.
+	 * @param time first execution time.
+	 * @param target execution target filename.
+	 * @param recurrence recurrence rule or null for the single execution.
+	 * @return id, assigned to the task by the server, or 0 in case of exception.
+	 * @author ovoievodin
+	 */
+	public long addTask(Date time, String target, Recurrence recurrence) {
+		final Task task = newTask(time, target, recurrence);
+		try {
+			return taskSchedulingServer.addTask(task);
+		} catch (RemoteException e) {
+			final AdmissionRejectedException rejection = AdmissionRejectedException.causeOf(e);
+			if(rejection != null) {
+				displayAdmissionRejection("Task is not admitted by the server: " + task + "\n" + rejection.getMessage());
+				return 0;
+			}
+			displayServerCommunicationError("Error creating remote task on server: " + task + "\n" + e.getMessage());
+			return 0;
+		}
+	}
+	
+	/**
+	 * Schedule new recurring task on server without waiting for it.
+	 * Will raise error dialog in the GUI in case of error.
+	 * @param time first execution time.
+	 * @param target execution target filename.
+	 * @param recurrence recurrence rule or null for the single execution.
+	 * @return future of the id, assigned to the task by the server, completed exceptionally in case of error.
 	 * @author ovoievodin
 	 */
-	public void addTask(Date time, String target) {
+	public CompletableFuture<Long> addTaskAsync(Date time, String target, Recurrence recurrence) {
+		final Task task = newTask(time, target, recurrence);
+		return callAsync(() -> taskSchedulingServer.addTask(task), "Error creating remote task on server: " + task + "\n");
+	}
+	
+	private Task newTask(Date time, String target, Recurrence recurrence) {
 		final Task task = new Task(time, target);
 		task.setOwnerId(this.id);
+		task.setRecurrence(recurrence);
+		return task;
+	}
+	
+	/**
+	 * Attempt to schedule the whole batch of tasks on server with a single remote call.
+	 * Will raise error dialog in the GUI in case of error.
+	 * @param tasks tasks to schedule, owner of each task is set to this client.
+	 * @return addition result for each of the tasks or null in case of exception.
+	 * @author ovoievodin
+	 */
+	public List<Boolean> addTasks(Collection<Task> tasks) {
+		for(Task task : tasks) {
+			task.setOwnerId(this.id);
+		}
 		try {
-			taskSchedulingServer.addTask(task);
+			return taskSchedulingServer.addTasks(tasks);
 		} catch (RemoteException e) {
-			displayServerCommunicationError("Error creating remote task on server: " + task + "\n" + e.getMessage());
+			final AdmissionRejectedException rejection = AdmissionRejectedException.causeOf(e);
+			if(rejection != null) {
+				displayAdmissionRejection(tasks.size() + " tasks are not admitted by the server.\n" + rejection.getMessage());
+				return null;
+			}
+			displayServerCommunicationError("Error creating " + tasks.size() + " remote tasks on server.\n" + e.getMessage());
+			return null;
 		}
 	}
 	
@@ -63,13 +174,89 @@ public class TaskSchedulerClient implements RemoteTaskSchedulerClient {
 			if(isConnectionLost){
 				connectToServer();
 			}
-			return taskSchedulingServer.getTasks();
+			tasksModel = getServerTasks();
+			return tasksModel;
 		} catch (RemoteException | NotBoundException e) {
 			displayServerCommunicationError("Error loading tasks model from server. " + e.getMessage());
 			return null;
 		}
 	}
 	
+	/**
+	 * Load the tasks model from the remote task scheduling server without waiting for it.
+	 * Load, requested while the other one is in flight, joins it instead of making one more remote call,
+	 * so the repeated requests (e.g. the bursts of 'Load' clicks) cost a single transfer of the whole model.
+	 * Will raise error dialog in the GUI in case of error.
+	 * @return future of the tasks model, completed exceptionally in case of error.
+	 * @author ovoievodin
+	 */
+	public synchronized CompletableFuture<TasksModel> loadTasksAsync() {
+		if(pendingLoad != null) {
+			return pendingLoad;
+		}
+		final CompletableFuture<TasksModel> load = callAsync(() -> {
+			if(isConnectionLost){
+				connectToServer();
+			}
+			tasksModel = getServerTasks();
+			return tasksModel;
+		}, "Error loading tasks model from server. ");
+		pendingLoad = load;
+		load.whenComplete((model, error) -> {
+			synchronized (this) {
+				if(pendingLoad == load) {
+					pendingLoad = null;
+				}
+			}
+		});
+		return load;
+	}
+	
+	/**
+	 * Router of the sharded cluster numbers the changes separately for every client, so the model is loaded for this one.
+	 */
+	private TasksModel getServerTasks() throws RemoteException {
+		if(taskSchedulingServer instanceof ShardRouter) {
+			return ((ShardRouter) taskSchedulingServer).getTasks(this);
+		}
+		return taskSchedulingServer.getTasks();
+	}
+	
+	/**
+	 * Load a single page of tasks from the remote task scheduling server.
+	 * Will raise error dialog in the GUI in case of error.
+	 * @param query tasks query, see {@link TasksQuery}.
+	 * @return Tasks page or null in case of exception.
+	 * @author ovoievodin
+	 */
+	public TasksPage queryTasks(TasksQuery query) {
+		try {
+			if(isConnectionLost){
+				connectToServer();
+			}
+			return taskSchedulingServer.queryTasks(query);
+		} catch (RemoteException | NotBoundException e) {
+			displayServerCommunicationError("Error querying tasks from server. " + e.getMessage());
+			return null;
+		}
+	}
+	
+	/**
+	 * Load a single page of tasks from the remote task scheduling server without waiting for it.
+	 * Will raise error dialog in the GUI in case of error.
+	 * @param query tasks query, see {@link TasksQuery}.
+	 * @return future of the tasks page, completed exceptionally in case of error.
+	 * @author ovoievodin
+	 */
+	public CompletableFuture<TasksPage> queryTasksAsync(TasksQuery query) {
+		return callAsync(() -> {
+			if(isConnectionLost){
+				connectToServer();
+			}
+			return taskSchedulingServer.queryTasks(query);
+		}, "Error querying tasks from server. ");
+	}
+	
 	/**
 	 * Remove task from the server's schedule.
 	 * @param task target task to remove from server.
@@ -83,6 +270,120 @@ public class TaskSchedulerClient implements RemoteTaskSchedulerClient {
 		}
 	}
 	
+	/**
+	 * Remove task from the server's schedule without waiting for it.
+	 * @param task target task to remove from server.
+	 * @return future, completed once the task is removed, or exceptionally in case of error.
+	 * @author ovoievodin
+	 */
+	public CompletableFuture<Void> removeTaskAsync(Task task) {
+		return callAsync(() -> {
+			taskSchedulingServer.removeTask(task);
+			return null;
+		}, "Error removing task from schedule. ");
+	}
+	
+	/**
+	 * Remove task from the server's schedule by it's id without waiting for it.
+	 * @param taskId id of the task to remove.
+	 * @return future of the removal result, false -> there is no such task, completed exceptionally in case of error.
+	 * @author ovoievodin
+	 */
+	public CompletableFuture<Boolean> removeTaskAsync(long taskId) {
+		return callAsync(() -> taskSchedulingServer.removeTask(taskId), "Error removing task #" + taskId + " from schedule. ");
+	}
+	
+	/**
+	 * Look the scheduled task up on the server by it's id.
+	 * Will raise error dialog in the GUI in case of error.
+	 * @param taskId id of the task.
+	 * @return the task or null, if there is no such task or in case of exception.
+	 * @author ovoievodin
+	 */
+	public Task getTask(long taskId) {
+		try {
+			return taskSchedulingServer.getTask(taskId);
+		} catch(RemoteException e) {
+			displayServerCommunicationError("Error looking task #" + taskId + " up. " + e.getMessage());
+			return null;
+		}
+	}
+	
+	/**
+	 * Remove the whole batch of tasks from the server's schedule with a single remote call.
+	 * @param tasks target tasks to remove from server.
+	 * @return removal result for each of the tasks or null in case of exception.
+	 * @author ovoievodin
+	 */
+	public List<Boolean> removeTasks(Collection<Task> tasks) {
+		try {
+			return taskSchedulingServer.removeTasks(tasks);
+		} catch(RemoteException e) {
+			displayServerCommunicationError("Error removing " + tasks.size() + " tasks from schedule. " + e.getMessage());
+			return null;
+		}
+	}
+	
+	/**
+	 * Remote call, made by {@link TaskSchedulerClient#callAsync(RemoteCall, String)}.
+	 */
+	@FunctionalInterface
+	private interface RemoteCall<T> {
+		T call() throws RemoteException, NotBoundException;
+	}
+	
+	/**
+	 * Make the remote call on the remote call thread.
+	 * @param call the call to make.
+	 * @param errorMessage message of the error dialog, followed by the error itself.
+	 * @return future of the call result.
+	 */
+	private <T> CompletableFuture<T> callAsync(RemoteCall<T> call, String errorMessage) {
+		final CompletableFuture<T> result = new CompletableFuture<>();
+		remoteCalls.execute(() -> {
+			try {
+				result.complete(call.call());
+			} catch (RemoteException | NotBoundException | RuntimeException e) {
+				final AdmissionRejectedException rejection = AdmissionRejectedException.causeOf(e);
+				if(rejection != null) {
+					displayAdmissionRejection(errorMessage + rejection.getMessage());
+				} else {
+					displayServerCommunicationError(errorMessage + e.getMessage());
+				}
+				result.completeExceptionally(e);
+			}
+		});
+		return result;
+	}
+	
+	/**
+	 * Get the task executions of the server: the running ones and the latest finished ones.
+	 * @return task executions or null in case of exception.
+	 * @author ovoievodin
+	 */
+	public List<TaskExecution> getTaskExecutions() {
+		try {
+			return taskSchedulingServer.getTaskExecutions();
+		} catch (RemoteException e) {
+			displayServerCommunicationError("Error loading task executions from server. " + e.getMessage());
+			return null;
+		}
+	}
+	
+	/**
+	 * Read a chunk of the task execution output, see {@link RemoteTaskSchedulerServer#readTaskOutput(long, TaskOutputChunk.Source, long, int)}.
+	 * @return chunk of the output or null in case of exception.
+	 * @author ovoievodin
+	 */
+	public TaskOutputChunk readTaskOutput(long executionId, TaskOutputChunk.Source source, long offset, int maxLength) {
+		try {
+			return taskSchedulingServer.readTaskOutput(executionId, source, offset, maxLength);
+		} catch (RemoteException e) {
+			displayServerCommunicationError("Error reading the output of the execution #" + executionId + ". " + e.getMessage());
+			return null;
+		}
+	}
+	
 	/**
 	 * Register client on server.
 	 * @author ovoievodin
@@ -108,16 +409,14 @@ public class TaskSchedulerClient implements RemoteTaskSchedulerClient {
 	}
 
 	/**
-	 * Client tasks model initialization.
+	 * Client tasks model initialization, the model is shown once it is loaded.
 	 * @author ovoievodin
 	 */
 	public void initTasksModel() {
-		if(this.getClientGUI() != null) {
-			try {
-				this.updateTasksModel(this.loadTasks());
-			} catch (RemoteException e) {
-				displayServerCommunicationError("Error initializing the tasks model. " + e.getMessage());
-			}
+		if(this.getClientGUI() != null && clientGUI.isVirtual()) {
+			SwingUtilities.invokeLater(clientGUI::reloadVirtualTasksTable);
+		} else if(this.getClientGUI() != null) {
+			loadTasksAsync().thenAcceptAsync(clientGUI::refreshTasksTableModel, SwingUtilities::invokeLater);
 		}
 	}
 	
@@ -129,9 +428,33 @@ public class TaskSchedulerClient implements RemoteTaskSchedulerClient {
 	private void displayServerCommunicationError(final String message) {
 		isConnectionLost = true;
 		System.err.println(message);
-		clientGUI.showErrorDialog(message + "\nYou can try to reconnect by pressing 'Load'");
+		if(clientGUI == null) {
+			return;
+		}
+		if(SwingUtilities.isEventDispatchThread()) {
+			clientGUI.showErrorDialog(message + "\nYou can try to reconnect by pressing 'Load'");
+		} else {
+			SwingUtilities.invokeLater(() -> clientGUI.showErrorDialog(message + "\nYou can try to reconnect by pressing 'Load'"));
+		}
 	}
 		
+	/**
+	 * Show the error of the call, the server has not admitted. Connection is fine, so the call may just be retried later.
+	 * @param message actually the error message to display.
+	 * @author ovoievodin
+	 */
+	private void displayAdmissionRejection(final String message) {
+		System.err.println(message);
+		if(clientGUI == null) {
+			return;
+		}
+		if(SwingUtilities.isEventDispatchThread()) {
+			clientGUI.showErrorDialog(message);
+		} else {
+			SwingUtilities.invokeLater(() -> clientGUI.showErrorDialog(message));
+		}
+	}
+	
 	public void setScheduler(RemoteTaskSchedulerServer scheduler) {
 		this.taskSchedulingServer = scheduler;
 	}
@@ -161,12 +484,50 @@ public class TaskSchedulerClient implements RemoteTaskSchedulerClient {
 	
 	@Override
 	public void updateTasksModel(TasksModel model) throws RemoteException {
-		this.clientGUI.refreshTasksTableModel(model);
+		if(clientGUI != null && clientGUI.isVirtual()) {
+			SwingUtilities.invokeLater(clientGUI::reloadVirtualTasksTable); // virtual table keeps no model.
+			return;
+		}
+		this.tasksModel = model;
+		if(clientGUI != null) {
+			SwingUtilities.invokeLater(() -> clientGUI.refreshTasksTableModel(model));
+		}
+	}
+	
+	@Override
+	public void applyTasksModelChange(TasksModelChange change) throws RemoteException {
+		if(clientGUI == null) {
+			return; // model is loaded as a whole, when GUI is ready.
+		}
+		if(clientGUI.isVirtual()) {
+			SwingUtilities.invokeLater(() -> clientGUI.applyTasksModelChange(change));
+			return;
+		}
+		final TasksModel localModel = this.tasksModel;
+		if(localModel != null && localModel.apply(change)) {
+			SwingUtilities.invokeLater(() -> clientGUI.applyTasksModelChange(change));
+		} else {
+			// never reload right in the callback: server is still busy pushing this change.
+			System.out.println("Tasks model change " + change.getVersion() + " is out of order, reloading the whole model.");
+			SwingUtilities.invokeLater(this::initTasksModel);
+		}
 	}
 	
-	public void connectToServer() throws RemoteException, NotBoundException {
+	/**
+	 * Connect to the single server or, if there is none, to the cluster of shards, bound to the registry.
+	 * @throws RemoteException
+	 * @throws NotBoundException
+	 */
+	public synchronized void connectToServer() throws RemoteException, NotBoundException {
 		Registry registry = LocateRegistry.getRegistry(BOUNDING_PORT);
-		this.setScheduler((RemoteTaskSchedulerServer) registry.lookup(REMOTE_LOOKUP_SERVER_TARGET));
+		if(taskSchedulingServer instanceof ShardRouter) {
+			((ShardRouter) taskSchedulingServer).shutdown();
+		}
+		try {
+			this.setScheduler((RemoteTaskSchedulerServer) registry.lookup(REMOTE_LOOKUP_SERVER_TARGET));
+		} catch (NotBoundException e) {
+			this.setScheduler(ShardRouter.lookup(registry));
+		}
 		if(isConnectionLost) {
 			this.registerOnServer(); // if we lose the connection -> should re-register on server. 
 		}
@@ -190,8 +551,12 @@ public class TaskSchedulerClient implements RemoteTaskSchedulerClient {
 		System.out.println("Client initialization complete!");
 	}
 
+	/**
+	 * @param args none -> the whole model is loaded and kept by the client,
+	 * --virtual -> only the shown rows are fetched from the server, for the schedules too large to be kept by the client.
+	 */
 	public static void main(String[] args) {
-		
+		final boolean isVirtual = args.length > 0 && VIRTUAL_TABLE_ARGUMENT.equals(args[0]);
 		TaskSchedulerClient client = new TaskSchedulerClient();
 	
 		try {
@@ -209,7 +574,7 @@ public class TaskSchedulerClient implements RemoteTaskSchedulerClient {
 			}
 		}));
 		
-		client.setClientGUI(new RMIClientFrame(client));
+		client.setClientGUI(new RMIClientFrame(client, isVirtual));
 		client.getClientGUI().switchLookAndFeel(GUI_LOOKANDFEEL_CLASSNAME);
 		client.getClientGUI().setVisible(true);
 		client.initTasksModel();
@@ -13,12 +13,14 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.UIManager.LookAndFeelInfo;
 
 import def.client.TaskSchedulerClient;
 import def.taskmodel.Task;
 import def.taskmodel.TasksModel;
+import def.taskmodel.TasksModelChange;
 import def.taskmodel.TasksTableModel;
 import def.utils.Preferences;
 
@@ -36,10 +38,20 @@ public class RMIClientFrame extends JFrame {
 	
 	private TaskSchedulerClient schedulerClient;
 	private TasksTableModel tasksTableModel;
+	/** Not null -> the table shows the server's schedule page by page, instead of the whole local model. */
+	private VirtualTasksTableModel virtualTasksTableModel;
 	
 	public RMIClientFrame(TaskSchedulerClient client) {
+		this(client, false);
+	}
+	
+	/**
+	 * @param isVirtual true -> only the shown rows are fetched from the server, see {@link VirtualTasksTableModel}.
+	 */
+	public RMIClientFrame(TaskSchedulerClient client, boolean isVirtual) {
 		schedulerClient = client;
 		tasksTableModel = new TasksTableModel(null);
+		virtualTasksTableModel = isVirtual ? new VirtualTasksTableModel(client) : null;
 		pnlContentPane = new JPanel(new GridBagLayout());
 		constraints = new GridBagConstraints();
 		constraints.fill = GridBagConstraints.BOTH;
@@ -59,7 +71,7 @@ public class RMIClientFrame extends JFrame {
 		constraints.gridx = 0;
 		constraints.gridy = 1;
 		constraints.weighty = 1;
-		tblTasksTable = new JTable(tasksTableModel);
+		tblTasksTable = new JTable(virtualTasksTableModel != null ? virtualTasksTableModel : tasksTableModel);
 		tblTasksTable.setFillsViewportHeight(true);
 		scpTasksTableScrollPane = new JScrollPane(tblTasksTable);
 		pnlContentPane.add(scpTasksTableScrollPane, constraints);
@@ -99,11 +111,36 @@ public class RMIClientFrame extends JFrame {
 	 */
 	public void refreshTasksTableModel(TasksModel newModel) {
 		tasksTableModel.setTasksModel(newModel);
-		tasksTableModel.fireTableDataChanged();
+	}
+	
+	/**
+	 * Drop the fetched rows of the virtual table, so the shown ones are fetched anew.
+	 * @author ovoievodin
+	 */
+	public void reloadVirtualTasksTable() {
+		virtualTasksTableModel.reload();
+	}
+	
+	public boolean isVirtual() {
+		return virtualTasksTableModel != null;
+	}
+	
+	/**
+	 * Apply the change of the model, the table was refreshed with, updating only the changed rows.
+	 * @param change incremental change of the model.
+	 * @author ovoievodin
+	 */
+	public void applyTasksModelChange(TasksModelChange change) {
+		if(virtualTasksTableModel != null) {
+			virtualTasksTableModel.applyChange(change);
+		} else {
+			tasksTableModel.applyChange(change);
+		}
 	}
 	
 	/**
 	 * Handling all of the user input.
+	 * Remote calls are made asynchronously, the table is refreshed on the event dispatch thread, once the model is loaded.
 	 * @author ovoievodin
 	 */
 	private void addActionListeners() {
@@ -113,8 +150,8 @@ public class RMIClientFrame extends JFrame {
 			public void actionPerformed(ActionEvent e) {
 				taskCreationDialog.setVisible(true);
 				if(taskCreationDialog.isConfirmed()) {
-					schedulerClient.addTask(taskCreationDialog.getExecutionTime(), taskCreationDialog.getExecutionTarget());
-					refreshTasksTableModel(schedulerClient.loadTasks());	
+					// the row is inserted, once the server pushes the change.
+					schedulerClient.addTaskAsync(taskCreationDialog.getExecutionTime(), taskCreationDialog.getExecutionTarget(), taskCreationDialog.getRecurrence());
 				}
 			}
 		});
@@ -122,7 +159,11 @@ public class RMIClientFrame extends JFrame {
 		btnLoad.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				refreshTasksTableModel(schedulerClient.loadTasks());
+				if(virtualTasksTableModel != null) {
+					virtualTasksTableModel.reload();
+					return;
+				}
+				schedulerClient.loadTasksAsync().thenAcceptAsync(RMIClientFrame.this::refreshTasksTableModel, SwingUtilities::invokeLater);
 			}
 		});
 		
@@ -130,9 +171,16 @@ public class RMIClientFrame extends JFrame {
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				final int index = tblTasksTable.getSelectedRow();
-				if(index >= 0 && index < tasksTableModel.getCache().size()){
-					final Task task = tasksTableModel.getCache().get(index);
-					schedulerClient.removeTask(task);
+				if(index >= 0 && index < tblTasksTable.getModel().getRowCount()){
+					final Task task = virtualTasksTableModel != null ? virtualTasksTableModel.getTaskAt(index) : tasksTableModel.getTaskAt(index);
+					if(task == null) {
+						return; // row is not fetched yet.
+					}
+					if(task.getId() != 0) {
+						schedulerClient.removeTaskAsync(task.getId());
+					} else {
+						schedulerClient.removeTaskAsync(task);
+					}
 				}
 			}
 		});
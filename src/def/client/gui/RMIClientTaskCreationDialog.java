@@ -14,6 +14,7 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 
+import def.taskmodel.Recurrence;
 import def.utils.DateUtils;
 
 public final class RMIClientTaskCreationDialog extends JDialog implements ActionListener {
@@ -24,12 +25,15 @@ public final class RMIClientTaskCreationDialog extends JDialog implements Action
 	private JButton btnCancel;
 	private JTextField tfExecTime;
 	private JTextField tfExecTarget;
+	private JTextField tfRecurrence;
 	private JPanel contentPane;
 	private JLabel lblExecTime;
 	private JLabel lblExecTarget;
+	private JLabel lblRecurrence;
 	
 	private Date executionTime;
 	private String executionTarget;
+	private Recurrence recurrence;
 	private boolean isConfirmed;
 	
 	private GridBagConstraints constraints;
@@ -47,8 +51,10 @@ public final class RMIClientTaskCreationDialog extends JDialog implements Action
 		this.btnCancel = new JButton("Cancel");
 		this.tfExecTime = new JTextField();
 		this.tfExecTarget = new JTextField();
-		this.lblExecTime = new JLabel("Execution time(hh:MM):");
+		this.tfRecurrence = new JTextField();
+		this.lblExecTime = new JLabel("Execution time(hh:MM or yyyy-MM-dd hh:MM):");
 		this.lblExecTarget = new JLabel("Execution target:");
+		this.lblRecurrence = new JLabel("Repeat(every 30s|cron, optional):");
 		
 		btnOk.addActionListener(this);
 		btnCancel.addActionListener(this);
@@ -72,6 +78,13 @@ public final class RMIClientTaskCreationDialog extends JDialog implements Action
 
 		constraints.gridx = 0;
 		constraints.gridy = 2;
+		this.contentPane.add(lblRecurrence, constraints);
+		
+		constraints.gridx = 1;
+		this.contentPane.add(tfRecurrence, constraints);
+
+		constraints.gridx = 0;
+		constraints.gridy = 3;
 		this.contentPane.add(btnOk, constraints);
 		
 		constraints.gridx = 1;
@@ -88,6 +101,7 @@ public final class RMIClientTaskCreationDialog extends JDialog implements Action
 	private void loadDefaultValues() {
 		this.executionTime = DateUtils.parseTime("00:00");
 		this.executionTarget = "NoTarget";
+		this.recurrence = null;
 	}
 	
 	public Date getExecutionTime() {
@@ -98,6 +112,13 @@ public final class RMIClientTaskCreationDialog extends JDialog implements Action
 		return executionTarget;
 	}
 
+	/**
+	 * @return recurrence rule or null for the single execution.
+	 */
+	public Recurrence getRecurrence() {
+		return recurrence;
+	}
+
 	public boolean isConfirmed() {
 		return isConfirmed;
 	}
@@ -109,18 +130,31 @@ public final class RMIClientTaskCreationDialog extends JDialog implements Action
 			if (parsedTime == null) {
 				JOptionPane.showMessageDialog(
 						contentPane, 
-						"Incorrect time entered. Please enter time in format 'HH:mm'", 
+						"Incorrect time entered. Please enter time in format 'HH:mm' or 'yyyy-MM-dd HH:mm'", 
+						"Error", 
+						JOptionPane.ERROR_MESSAGE
+				);
+				loadDefaultValues();
+				this.isConfirmed = false;
+				return;
+			}
+			final String recurrenceSpec = this.tfRecurrence.getText().trim();
+			try {
+				this.recurrence = recurrenceSpec.isEmpty() ? null : Recurrence.parse(recurrenceSpec);
+			} catch (IllegalArgumentException e) {
+				JOptionPane.showMessageDialog(
+						contentPane, 
+						e.getMessage() + "\nPlease enter 'every <amount><ms|s|m|h|d>' or 5-field cron expression", 
 						"Error", 
 						JOptionPane.ERROR_MESSAGE
 				);
 				loadDefaultValues();
 				this.isConfirmed = false;
 				return;
-			} else {
-				this.executionTime = parsedTime;
-				this.executionTarget = this.tfExecTarget.getText();
-				this.isConfirmed = true;
 			}
+			this.executionTime = parsedTime;
+			this.executionTarget = this.tfExecTarget.getText();
+			this.isConfirmed = true;
 		} else {
 			loadDefaultValues();
 		}
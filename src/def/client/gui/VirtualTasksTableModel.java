@@ -0,0 +1,209 @@
+package def.client.gui;
+
+import static def.utils.Preferences.GUI_VIRTUAL_TABLE_CACHED_PAGES;
+import static def.utils.Preferences.GUI_VIRTUAL_TABLE_PAGE_SIZE;
+import static def.utils.Preferences.GUI_VIRTUAL_TABLE_PREFETCH_PAGES;
+import static def.utils.Preferences.GUI_VIRTUAL_TABLE_RETRY_MILLIS;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+import def.client.TaskSchedulerClient;
+import def.taskmodel.Task;
+import def.taskmodel.TasksModelChange;
+import def.taskmodel.TasksPage;
+import def.taskmodel.TasksQuery;
+
+/**
+ * Table model, which never holds the whole schedule: the rows are fetched from the server by pages,
+ * only for the rows, the table actually shows, plus the prefetch margin around them.
+ * Fetched pages are kept in the LRU cache of the limited size, so the client memory and the startup time
+ * do not depend on the size of the schedule.
+ * <li>Row, which page is not fetched yet, is shown empty, and it's page is fetched asynchronously.</li>
+ * <li>Page follows the cursor of the previous page, if it is cached, or the offset otherwise.</li>
+ * <li>Change of the model drops the cached pages, which rows it shifts, and the pages, which are being fetched.</li>
+ * <li>Page, which fetch has failed (the client reports the error itself), is not fetched again for the retry delay,
+ * so the unreachable server is not queried on every repaint.</li>
+ * Used on the event dispatch thread only.
+ * @author ovoievodin
+ */
+public class VirtualTasksTableModel extends AbstractTableModel {
+
+	private static final long serialVersionUID = 2630513457958135263L;
+
+	private static final String LOADING = "...";
+
+	private final String[] columnHeaders = {
+			"Execution Time",
+			"Eexcution Target",
+			"Recurrence"
+	};
+
+	private final transient TaskSchedulerClient client;
+
+	/** Fetched pages by index, least recently used first. */
+	private final transient Map<Integer, TasksPage> pages;
+
+	/** Pages, which are being fetched, and the generation they were requested at. */
+	private final transient Map<Integer, Long> pendingPages;
+
+	/** Pages, which fetch has failed, and the time they may be fetched again at. */
+	private final transient Map<Integer, Long> failedPages;
+
+	/** Incremented by every change, so the pages, fetched before it, are dropped. */
+	private long generation;
+
+	private int rowCount;
+
+	public VirtualTasksTableModel(TaskSchedulerClient client) {
+		this.client = client;
+		this.pendingPages = new HashMap<>();
+		this.failedPages = new HashMap<>();
+		this.pages = new LinkedHashMap<Integer, TasksPage>(16, 0.75f, true) {
+			private static final long serialVersionUID = -5190316226707233046L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, TasksPage> eldest) {
+				return size() > GUI_VIRTUAL_TABLE_CACHED_PAGES;
+			}
+		};
+	}
+
+	/**
+	 * Drop all of the fetched pages and fetch the first one anew, which also brings the amount of rows.
+	 * @author ovoievodin
+	 */
+	public void reload() {
+		pages.clear();
+		failedPages.clear();
+		generation++;
+		fetch(0);
+		fireTableDataChanged();
+	}
+
+	/**
+	 * Drop the pages, which rows are shifted by the change: the ones, which end at or after the earliest changed task.
+	 * @param change change of the server's model.
+	 * @author ovoievodin
+	 */
+	public void applyChange(TasksModelChange change) {
+		final List<Task> tasks = change.getTasks();
+		if(tasks.isEmpty()) {
+			return;
+		}
+		long earliest = Long.MAX_VALUE;
+		for(Task task : tasks) {
+			earliest = Math.min(earliest, task.getExecutionTime());
+		}
+		final Iterator<TasksPage> iterator = pages.values().iterator();
+		while(iterator.hasNext()) {
+			final TasksPage page = iterator.next();
+			final List<Task> pageTasks = page.getTasks();
+			if(page.getNextCursor() == null || pageTasks.isEmpty() || pageTasks.get(pageTasks.size() - 1).getExecutionTime() >= earliest) {
+				iterator.remove();
+			}
+		}
+		generation++;
+		rowCount = Math.max(0, rowCount + (change.getType() == TasksModelChange.Type.ADDED ? tasks.size() : -tasks.size()));
+		fireTableDataChanged();
+	}
+
+	/**
+	 * @return task, displayed in the row, or null, if it's page is not fetched.
+	 */
+	public Task getTaskAt(int row) {
+		final TasksPage page = pages.get(row / GUI_VIRTUAL_TABLE_PAGE_SIZE);
+		final int index = row % GUI_VIRTUAL_TABLE_PAGE_SIZE;
+		return page != null && index < page.getTasks().size() ? page.getTasks().get(index) : null;
+	}
+
+	public int getCachedPagesAmount() {
+		return pages.size();
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return this.columnHeaders[column];
+	}
+
+	@Override
+	public int getColumnCount() {
+		return columnHeaders.length;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	@Override
+	public Object getValueAt(int row, int column) {
+		final int pageIndex = row / GUI_VIRTUAL_TABLE_PAGE_SIZE;
+		for(int i = Math.max(0, pageIndex - GUI_VIRTUAL_TABLE_PREFETCH_PAGES); i <= pageIndex + GUI_VIRTUAL_TABLE_PREFETCH_PAGES; i++) {
+			if(i == pageIndex || i * GUI_VIRTUAL_TABLE_PAGE_SIZE < rowCount) {
+				fetch(i);
+			}
+		}
+		final Task task = getTaskAt(row);
+		if(task == null) {
+			return column == 0 ? LOADING : null;
+		}
+		switch (column) {
+			case 0: return task.getExecutionDate();
+			case 1: return task.getTarget();
+			case 2: return task.getRecurrence();
+			default: return null;
+		}
+	}
+
+	/**
+	 * Fetch the page, unless it is cached, is being fetched already or has failed recently.
+	 */
+	private void fetch(int pageIndex) {
+		if(pages.containsKey(pageIndex) || Long.valueOf(generation).equals(pendingPages.get(pageIndex))) {
+			return;
+		}
+		final Long retryTime = failedPages.get(pageIndex);
+		if(retryTime != null) {
+			if(System.currentTimeMillis() < retryTime) {
+				return;
+			}
+			failedPages.remove(pageIndex);
+		}
+		final long requestGeneration = generation;
+		pendingPages.put(pageIndex, requestGeneration);
+		final TasksPage previous = pageIndex > 0 ? pages.get(pageIndex - 1) : null;
+		final TasksQuery query = previous != null && previous.getNextCursor() != null
+				? new TasksQuery(null, null, null, GUI_VIRTUAL_TABLE_PAGE_SIZE, previous.getNextCursor())
+				: new TasksQuery(null, null, null, GUI_VIRTUAL_TABLE_PAGE_SIZE, pageIndex * GUI_VIRTUAL_TABLE_PAGE_SIZE);
+		client.queryTasksAsync(query).whenCompleteAsync((page, error) -> onFetched(pageIndex, requestGeneration, page, error), SwingUtilities::invokeLater);
+	}
+
+	private void onFetched(int pageIndex, long requestGeneration, TasksPage page, Throwable error) {
+		pendingPages.remove(pageIndex, requestGeneration);
+		if(error != null || page == null) { // no repaint, it would fetch the page again at once.
+			failedPages.put(pageIndex, System.currentTimeMillis() + GUI_VIRTUAL_TABLE_RETRY_MILLIS);
+			return;
+		}
+		final int firstRow = pageIndex * GUI_VIRTUAL_TABLE_PAGE_SIZE;
+		if(requestGeneration != generation) {
+			if(firstRow < rowCount) { // repaint fetches it again, if it is still shown.
+				fireTableRowsUpdated(firstRow, Math.min(rowCount, firstRow + GUI_VIRTUAL_TABLE_PAGE_SIZE) - 1);
+			}
+			return;
+		}
+		pages.put(pageIndex, page);
+		if(page.getTasksAmount() >= 0 && page.getTasksAmount() != rowCount) {
+			rowCount = page.getTasksAmount();
+			fireTableDataChanged();
+		} else if(firstRow < rowCount) {
+			fireTableRowsUpdated(firstRow, Math.min(rowCount, firstRow + GUI_VIRTUAL_TABLE_PAGE_SIZE) - 1);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package def.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Registry, exposing all of it's metrics as the attributes of the single MXBean,
+ * so they are seen in JConsole, VisualVM or any JMX exporter.
+ * Values are computed only when the attributes are read.
+ * @author ovoievodin
+ */
+public class JmxMetricsRegistry implements MetricsRegistry, SchedulerMetricsMXBean {
+
+	private final Map<String, LatencyHistogram> histograms;
+	private final Map<String, LongSupplier> gauges;
+
+	public JmxMetricsRegistry() {
+		this.histograms = new ConcurrentHashMap<>();
+		this.gauges = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public void register(String name, LatencyHistogram histogram) {
+		histograms.put(name, histogram);
+	}
+
+	@Override
+	public void register(String name, LongSupplier gauge) {
+		gauges.put(name, gauge);
+	}
+
+	@Override
+	public SortedMap<String, Long> getGauges() {
+		final SortedMap<String, Long> values = new TreeMap<>();
+		for(Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+			values.put(gauge.getKey(), gauge.getValue().getAsLong());
+		}
+		return values;
+	}
+
+	@Override
+	public SortedMap<String, LatencySnapshot> getLatencies() {
+		final SortedMap<String, LatencySnapshot> snapshots = new TreeMap<>();
+		for(Map.Entry<String, LatencyHistogram> histogram : histograms.entrySet()) {
+			snapshots.put(histogram.getKey(), histogram.getValue().snapshot());
+		}
+		return snapshots;
+	}
+
+	/**
+	 * Register this in the platform MBean server.
+	 * @param objectName JMX name of the MBean.
+	 * @return false, if the MBean could not be registered, e.g. the name is already taken.
+	 * @author ovoievodin
+	 */
+	public boolean export(String objectName) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(objectName));
+			return true;
+		} catch (JMException e) {
+			System.err.println("Metrics MBean registration error: " + e.getMessage());
+			return false;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package def.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram, cheap enough to record every event on the hot path:
+ * recording takes no lock and allocates nothing, it only increments the counter of the value's bucket.
+ * Buckets are log-linear: every power of two range is split into 8 equal sub-buckets,
+ * so any recorded value is reported within 12.5% of it.
+ * Values are nanoseconds, negative ones (e.g. clock adjustments) are recorded as 0.
+ * @author ovoievodin
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS_AMOUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts;
+	private final AtomicLong total;
+	private final AtomicLong max;
+
+	public LatencyHistogram() {
+		this.counts = new AtomicLongArray(BUCKETS_AMOUNT);
+		this.total = new AtomicLong();
+		this.max = new AtomicLong();
+	}
+
+	/**
+	 * @param nanos measured latency in nanoseconds.
+	 */
+	public void record(long nanos) {
+		final long value = Math.max(0L, nanos);
+		counts.incrementAndGet(indexOf(value));
+		total.addAndGet(value);
+		long current = max.get();
+		while(value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * @param startNanos {@link System#nanoTime()} at the start of the measured operation.
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Take the statistics of the values recorded so far.
+	 * Not atomic with the concurrent recording, so the figures can be off by the values, recorded meanwhile.
+	 * @author ovoievodin
+	 */
+	public LatencySnapshot snapshot() {
+		final long[] bucketCounts = new long[BUCKETS_AMOUNT];
+		long count = 0;
+		for(int i = 0; i < BUCKETS_AMOUNT; i++) {
+			bucketCounts[i] = counts.get(i);
+			count += bucketCounts[i];
+		}
+		final long maxNanos = max.get();
+		return new LatencySnapshot(count,
+				count == 0 ? 0 : toMillis(total.get() / (double) count),
+				toMillis(percentile(bucketCounts, count, 0.50, maxNanos)),
+				toMillis(percentile(bucketCounts, count, 0.90, maxNanos)),
+				toMillis(percentile(bucketCounts, count, 0.99, maxNanos)),
+				toMillis(maxNanos));
+	}
+
+	private static long percentile(long[] bucketCounts, long count, double fraction, long maxNanos) {
+		if(count == 0) {
+			return 0;
+		}
+		final long rank = (long) Math.ceil(count * fraction);
+		long seen = 0;
+		for(int i = 0; i < bucketCounts.length; i++) {
+			seen += bucketCounts[i];
+			if(seen >= rank) {
+				return Math.min(upperBoundOf(i), maxNanos);
+			}
+		}
+		return maxNanos;
+	}
+
+	static int indexOf(long value) {
+		if(value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * @return greatest value, recorded to the bucket.
+	 */
+	static long upperBoundOf(int index) {
+		if(index < SUB_BUCKETS) {
+			return index;
+		}
+		final int shift = index / SUB_BUCKETS - 1;
+		final long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		final long upperBound = lowerBound + (1L << shift) - 1;
+		return upperBound < 0 ? Long.MAX_VALUE : upperBound;
+	}
+
+	private static double toMillis(double nanos) {
+		return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
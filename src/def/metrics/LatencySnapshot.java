@@ -0,0 +1,57 @@
+package def.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Statistics of the {@link LatencyHistogram} at some moment, in milliseconds.
+ * @author ovoievodin
+ */
+public final class LatencySnapshot {
+
+	private final long count;
+	private final double meanMillis;
+	private final double p50Millis;
+	private final double p90Millis;
+	private final double p99Millis;
+	private final double maxMillis;
+
+	@ConstructorProperties({ "count", "meanMillis", "p50Millis", "p90Millis", "p99Millis", "maxMillis" })
+	public LatencySnapshot(long count, double meanMillis, double p50Millis, double p90Millis, double p99Millis, double maxMillis) {
+		this.count = count;
+		this.meanMillis = meanMillis;
+		this.p50Millis = p50Millis;
+		this.p90Millis = p90Millis;
+		this.p99Millis = p99Millis;
+		this.maxMillis = maxMillis;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMeanMillis() {
+		return meanMillis;
+	}
+
+	public double getP50Millis() {
+		return p50Millis;
+	}
+
+	public double getP90Millis() {
+		return p90Millis;
+	}
+
+	public double getP99Millis() {
+		return p99Millis;
+	}
+
+	public double getMaxMillis() {
+		return maxMillis;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+				count, meanMillis, p50Millis, p90Millis, p99Millis, maxMillis);
+	}
+}
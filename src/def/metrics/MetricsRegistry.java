@@ -0,0 +1,25 @@
+package def.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Destination of the scheduler metrics.
+ * Components own their histograms and record to them directly,
+ * the registry only gets them once, at startup, so it is never on the hot path.
+ * {@link JmxMetricsRegistry} exposes them over JMX, other monitoring systems plug in by implementing this.
+ * @author ovoievodin
+ */
+public interface MetricsRegistry {
+
+	/**
+	 * @param name metric name, unique within the registry.
+	 * @param histogram latency histogram, read by the registry whenever it needs to.
+	 */
+	void register(String name, LatencyHistogram histogram);
+
+	/**
+	 * @param name metric name, unique within the registry.
+	 * @param gauge current value of the metric, computed only when the registry reads it.
+	 */
+	void register(String name, LongSupplier gauge);
+}
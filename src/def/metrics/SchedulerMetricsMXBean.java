@@ -0,0 +1,20 @@
+package def.metrics;
+
+import java.util.SortedMap;
+
+/**
+ * JMX view of the scheduler metrics.
+ * @author ovoievodin
+ */
+public interface SchedulerMetricsMXBean {
+
+	/**
+	 * @return current values of the gauges by name.
+	 */
+	SortedMap<String, Long> getGauges();
+
+	/**
+	 * @return latency statistics by name.
+	 */
+	SortedMap<String, LatencySnapshot> getLatencies();
+}
@@ -0,0 +1,59 @@
+package def.remote;
+
+import java.rmi.RemoteException;
+
+/**
+ * Thrown by the server, which has not admitted the submitted tasks: nothing of the rejected call is scheduled.
+ * Rejection is not a communication failure, so the client should just retry later, not reconnect.
+ * RMI delivers it to the client as the cause of the {@link java.rmi.ServerException}, see {@link #causeOf(Throwable)}.
+ * @author ovoievodin
+ */
+public class AdmissionRejectedException extends RemoteException {
+
+	private static final long serialVersionUID = -6397021618327406545L;
+
+	public enum Reason {
+		/** Submission rate of the task owner or of the client host is over the limit. */
+		THROTTLED,
+		/** Task owner has too many tasks scheduled already. */
+		QUOTA_EXCEEDED
+	}
+
+	private final Reason reason;
+	private final long retryAfterMillis;
+
+	/**
+	 * @param reason why the call is rejected.
+	 * @param retryAfterMillis time, after which the same call may be admitted, or -1, if it is unknown.
+	 */
+	public AdmissionRejectedException(String message, Reason reason, long retryAfterMillis) {
+		super(message);
+		this.reason = reason;
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	public Reason getReason() {
+		return reason;
+	}
+
+	/**
+	 * @return time, after which the same call may be admitted, or -1, if it is unknown (e.g. until the owner's tasks are executed or removed).
+	 */
+	public long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+
+	/**
+	 * Find the rejection among the causes of the remote call error.
+	 * @param error error of the remote call.
+	 * @return rejection, which has caused the error, or null, if the call has failed for the other reason.
+	 */
+	public static AdmissionRejectedException causeOf(Throwable error) {
+		for(Throwable cause = error; cause != null; cause = cause.getCause()) {
+			if(cause instanceof AdmissionRejectedException) {
+				return (AdmissionRejectedException) cause;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,132 @@
+package def.remote;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Date;
+import java.util.List;
+
+import def.taskmodel.Task;
+import def.taskmodel.TaskWireFormat;
+import def.taskmodel.TasksCursor;
+import def.taskmodel.TasksPage;
+import def.taskmodel.TasksQuery;
+
+/**
+ * Length-prefixed binary protocol of the scheduler's NIO ingestion endpoint, the batch producers use instead of RMI.
+ * <br>Request: [int length][int request id][byte operation][body], response: [int length][int request id][byte status][body],
+ * the length counts the bytes after it. The client may send any amount of requests without waiting for the responses,
+ * the server responds to the requests of the connection in their order, the request id just matches them.
+ * <li>{@link #ADD_TASKS}: tasks list -> [amount]{[task id, 0 if the task belongs to the other shard]}.</li>
+ * <li>{@link #REMOVE_TASKS}: [amount]{[task id]} -> [amount]{[byte 1 if removed]}.</li>
+ * <li>{@link #QUERY_TASKS}: query -> page, see {@link #writeQuery(DataOutput, TasksQuery)} and {@link #writePage(DataOutput, TasksPage)}.</li>
+ * Errors: {@link #STATUS_ERROR} -> [utf message], {@link #STATUS_REJECTED} -> [byte reason][signed retry after millis][utf message].
+ * <br>Numbers are the variable length integers and the tasks are encoded, as they are in the wire form, see {@link TaskWireFormat}.
+ * @author ovoievodin
+ */
+public final class BinaryIngestionProtocol {
+
+	/** Length prefix of the frame. */
+	public static final int LENGTH_BYTES = 4;
+	/** Request id and operation/status, which follow the length prefix. */
+	public static final int HEADER_BYTES = 5;
+
+	public static final byte ADD_TASKS = 1;
+	public static final byte REMOVE_TASKS = 2;
+	public static final byte QUERY_TASKS = 3;
+
+	public static final byte STATUS_OK = 0;
+	public static final byte STATUS_ERROR = 1;
+	public static final byte STATUS_REJECTED = 2;
+
+	private static final int HAS_FROM = 1;
+	private static final int HAS_TO = 2;
+	private static final int HAS_OWNER = 4;
+	private static final int HAS_CURSOR = 8;
+
+	private static final AdmissionRejectedException.Reason[] REASONS = AdmissionRejectedException.Reason.values();
+
+	private BinaryIngestionProtocol() { }
+
+	/**
+	 * Query: [byte flags][signed from][signed to][signed owner id][page size][offset][signed cursor time][cursor returned],
+	 * the absent (null) parts are skipped.
+	 */
+	public static void writeQuery(DataOutput out, TasksQuery query) throws IOException {
+		final TasksCursor cursor = query.getCursor();
+		out.writeByte((query.getFrom() == null ? 0 : HAS_FROM) | (query.getTo() == null ? 0 : HAS_TO)
+				| (query.getOwnerId() == null ? 0 : HAS_OWNER) | (cursor == null ? 0 : HAS_CURSOR));
+		if(query.getFrom() != null) {
+			TaskWireFormat.writeSignedVarLong(out, query.getFrom().getTime());
+		}
+		if(query.getTo() != null) {
+			TaskWireFormat.writeSignedVarLong(out, query.getTo().getTime());
+		}
+		if(query.getOwnerId() != null) {
+			TaskWireFormat.writeSignedVarLong(out, query.getOwnerId());
+		}
+		TaskWireFormat.writeVarLong(out, query.getPageSize());
+		TaskWireFormat.writeVarLong(out, query.getOffset());
+		if(cursor != null) {
+			TaskWireFormat.writeSignedVarLong(out, cursor.getExecutionTime());
+			TaskWireFormat.writeVarLong(out, cursor.getReturnedInBucket());
+		}
+	}
+
+	public static TasksQuery readQuery(DataInput in) throws IOException {
+		final int flags = in.readByte();
+		final Date from = (flags & HAS_FROM) == 0 ? null : new Date(TaskWireFormat.readSignedVarLong(in));
+		final Date to = (flags & HAS_TO) == 0 ? null : new Date(TaskWireFormat.readSignedVarLong(in));
+		final Long ownerId = (flags & HAS_OWNER) == 0 ? null : TaskWireFormat.readSignedVarLong(in);
+		final int pageSize = TaskWireFormat.readVarInt(in);
+		final int offset = TaskWireFormat.readVarInt(in);
+		if((flags & HAS_CURSOR) == 0) {
+			return new TasksQuery(from, to, ownerId, pageSize, offset);
+		}
+		final long cursorTime = TaskWireFormat.readSignedVarLong(in);
+		return new TasksQuery(from, to, ownerId, pageSize, new TasksCursor(cursorTime, TaskWireFormat.readVarInt(in)));
+	}
+
+	/**
+	 * Page: [version][tasks amount of the whole selection][tasks list][byte has next cursor][signed cursor time][cursor returned].
+	 */
+	public static void writePage(DataOutput out, TasksPage page) throws IOException {
+		TaskWireFormat.writeVarLong(out, page.getVersion());
+		TaskWireFormat.writeVarLong(out, page.getTasksAmount());
+		TaskWireFormat.writeTasks(out, page.getTasks());
+		final TasksCursor cursor = page.getNextCursor();
+		out.writeBoolean(cursor != null);
+		if(cursor != null) {
+			TaskWireFormat.writeSignedVarLong(out, cursor.getExecutionTime());
+			TaskWireFormat.writeVarLong(out, cursor.getReturnedInBucket());
+		}
+	}
+
+	public static TasksPage readPage(DataInput in) throws IOException {
+		final long version = TaskWireFormat.readVarLong(in);
+		final int tasksAmount = TaskWireFormat.readVarInt(in);
+		final List<Task> tasks = TaskWireFormat.readTasks(in);
+		TasksCursor cursor = null;
+		if(in.readBoolean()) {
+			final long cursorTime = TaskWireFormat.readSignedVarLong(in);
+			cursor = new TasksCursor(cursorTime, TaskWireFormat.readVarInt(in));
+		}
+		return new TasksPage(tasks, cursor, version, tasksAmount);
+	}
+
+	public static void writeRejection(DataOutput out, AdmissionRejectedException rejection) throws IOException {
+		out.writeByte(rejection.getReason().ordinal());
+		TaskWireFormat.writeSignedVarLong(out, rejection.getRetryAfterMillis());
+		out.writeUTF(String.valueOf(rejection.getMessage()));
+	}
+
+	public static AdmissionRejectedException readRejection(DataInput in) throws IOException {
+		final int reason = in.readByte();
+		if(reason < 0 || reason >= REASONS.length) {
+			throw new StreamCorruptedException("Unknown admission rejection reason: " + reason);
+		}
+		final long retryAfterMillis = TaskWireFormat.readSignedVarLong(in);
+		return new AdmissionRejectedException(in.readUTF(), REASONS[reason], retryAfterMillis);
+	}
+}
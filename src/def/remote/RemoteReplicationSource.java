@@ -0,0 +1,28 @@
+package def.remote;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+import def.taskmodel.TasksModelChange;
+
+/**
+ * Stream of the primary server's model changes for the standby replica.
+ * Exported by the same server object as {@link RemoteTaskSchedulerServer},
+ * so the replica takes the whole model with {@link RemoteTaskSchedulerServer#getTasks()}, when it has to.
+ * @author ovoievodin
+ */
+public interface RemoteReplicationSource extends Remote {
+
+	/**
+	 * Long-poll for the changes, following the specified version.
+	 * Asking for the changes after some version also acknowledges, that the replica has everything up to it.
+	 * @param afterVersion version of the replica's model.
+	 * @param maxWaitMillis maximal time to wait for the new changes.
+	 * @return changes in the version order, empty list if nothing has changed in time,
+	 * or null if the changes are not kept anymore, so the replica needs the whole model.
+	 * @throws RemoteException
+	 * @author ovoievodin
+	 */
+	List<TasksModelChange> fetchChanges(long afterVersion, long maxWaitMillis) throws RemoteException;
+}
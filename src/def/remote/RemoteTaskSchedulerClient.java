@@ -4,6 +4,7 @@ import java.rmi.Remote;
 import java.rmi.RemoteException;
 
 import def.taskmodel.TasksModel;
+import def.taskmodel.TasksModelChange;
 
 /**
  * Basic interface for communication with remote task scheduler client.
@@ -18,6 +19,16 @@ public interface RemoteTaskSchedulerClient extends Remote {
 	 */
 	void updateTasksModel(TasksModel model) throws RemoteException; 
 	
+	/**
+	 * Remote server pushes single incremental change of it's tasks model to the client.
+	 * Client applies it to the local copy of the model, 
+	 * or reloads the whole model, if some of the previous changes were missed.
+	 * @param change change of the server's tasks model.
+	 * @throws RemoteException
+	 * @author ovoievodin
+	 */
+	void applyTasksModelChange(TasksModelChange change) throws RemoteException;
+	
 	/**
 	 * Method for assigning the identifier for the remote client.
 	 * Server is responsible for assigning new id for the client.
@@ -2,9 +2,15 @@ package def.remote;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.Collection;
+import java.util.List;
 
 import def.taskmodel.Task;
+import def.taskmodel.TaskExecution;
+import def.taskmodel.TaskOutputChunk;
 import def.taskmodel.TasksModel;
+import def.taskmodel.TasksPage;
+import def.taskmodel.TasksQuery;
 
 /**
  * Basic interface for communication with the remote task scheduler server implementation.
@@ -34,20 +40,64 @@ public interface RemoteTaskSchedulerServer extends Remote {
 	 * then new task will be appended to the list(no new hash-map entry created.)</li>
 	 * <li>Else there will be created a new entry in the schedule with time and single-element list with new task, 
 	 * which will be potentially grow in the future.</li>
-	 * Also there is occurring an appending to a task schedule non-duplicate priority queue, 
-	 * containing only tasks execution time, to easily sort them and poll/reference, when needed. 
+	 * Also the execution time is put to the sorted non-duplicate schedule index, 
+	 * containing only tasks execution times, to easily find the closest one and poll it, when needed. 
+	 * @return unique id, the server has assigned to the task.
+	 * @throws RemoteException {@link AdmissionRejectedException} as the cause, if the submission is over the limits of the owner or of the client.
 	 * @author ovoievodin
 	 */
-	void addTask(Task newTask) throws RemoteException;
+	long addTask(Task newTask) throws RemoteException;
 	
 	/**
 	 * Just remove task form the server schedule.
+	 * Task with the id removes exactly the task with this id, even if there are the identical ones.
 	 * @param task task to remove
 	 * @throws RemoteException
 	 * @author ovoievodin
 	 */
 	void removeTask(Task task) throws RemoteException;
 	
+	/**
+	 * Remove the task by it's id, at the same cost regardless of the amount of tasks, scheduled at the same time.
+	 * @param taskId id of the task, see {@link Task#getId()}.
+	 * @return false -> there is no task with the id in the schedule.
+	 * @throws RemoteException
+	 * @author ovoievodin
+	 */
+	boolean removeTask(long taskId) throws RemoteException;
+	
+	/**
+	 * Look the scheduled task up by it's id.
+	 * @param taskId id of the task, see {@link Task#getId()}.
+	 * @return the task or null, if there is no task with the id in the schedule.
+	 * @throws RemoteException
+	 * @author ovoievodin
+	 */
+	Task getTask(long taskId) throws RemoteException;
+	
+	/**
+	 * Add the whole batch of tasks to the schedule at once.
+	 * The batch is applied as a single change: one persistence write and one notification of the clients.
+	 * Ids, assigned to the tasks, come with the change notification.
+	 * @param newTasks tasks to add.
+	 * @return addition result for each of the tasks in the iteration order.
+	 * @throws RemoteException {@link AdmissionRejectedException} as the cause, if the batch is over the limits of the owner or of the client,
+	 * none of the tasks is added then.
+	 * @author ovoievodin
+	 */
+	List<Boolean> addTasks(Collection<Task> newTasks) throws RemoteException;
+	
+	/**
+	 * Remove the whole batch of tasks from the schedule at once.
+	 * The batch is applied as a single change: one persistence write and one notification of the clients.
+	 * @param tasks tasks to remove.
+	 * @return removal result for each of the tasks in the iteration order:
+	 * false -> task was not found in the schedule.
+	 * @throws RemoteException
+	 * @author ovoievodin
+	 */
+	List<Boolean> removeTasks(Collection<Task> tasks) throws RemoteException;
+	
 	/**
 	 * Get all of the available tasks, scheduled on the server.
 	 * @return Tasks Model from the server.
@@ -55,4 +105,36 @@ public interface RemoteTaskSchedulerServer extends Remote {
 	 * @author ovoievodin
 	 */
 	TasksModel getTasks() throws RemoteException;
+	
+	/**
+	 * Get a single page of the scheduled tasks, selected by the query, 
+	 * instead of the whole tasks model.
+	 * Use {@link TasksQuery#next(TasksPage)} to get the query for the following page.
+	 * @param query time window, owner filter, page size and continuation cursor.
+	 * @return page of tasks in the execution time order.
+	 * @throws RemoteException
+	 * @author ovoievodin
+	 */
+	TasksPage queryTasks(TasksQuery query) throws RemoteException;
+	
+	/**
+	 * Get the task executions, which are running now, and the latest finished ones.
+	 * @return task executions.
+	 * @throws RemoteException
+	 * @author ovoievodin
+	 */
+	List<TaskExecution> getTaskExecutions() throws RemoteException;
+	
+	/**
+	 * Read a chunk of the task execution output, so the large outputs are transferred piece by piece
+	 * and the running execution is tailed by reading from the end of the previous chunk.
+	 * @param executionId id of the execution, see {@link TaskExecution#getId()}.
+	 * @param source stdout or stderr of the execution.
+	 * @param offset offset in the output to read from.
+	 * @param maxLength maximal length of the chunk, the server can return less.
+	 * @return chunk of the output, empty, if nothing is written after the offset yet.
+	 * @throws RemoteException if the output of the execution is not kept by the server.
+	 * @author ovoievodin
+	 */
+	TaskOutputChunk readTaskOutput(long executionId, TaskOutputChunk.Source source, long offset, int maxLength) throws RemoteException;
 }
\ No newline at end of file
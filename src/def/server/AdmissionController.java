@@ -0,0 +1,263 @@
+package def.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import def.remote.AdmissionRejectedException;
+import def.taskmodel.Task;
+import def.taskmodel.TasksModel;
+import def.taskmodel.TasksModelChange;
+
+/**
+ * Admission control of the task submissions, so the single client, submitting in a tight loop,
+ * can not starve the others of the persistence and the notifications, every submission costs.
+ * <li>Submission rate of every task owner (in tasks) and of every client host (in calls) is limited by the token bucket:
+ * the burst up to the bucket capacity is admitted at once, the bucket is refilled at the steady rate.</li>
+ * <li>Amount of the scheduled tasks of every owner is limited by the quota.</li>
+ * Call over any limit is rejected right away with the {@link AdmissionRejectedException}, before it touches the model,
+ * and the whole call is either admitted or rejected.
+ * <br>Scheduled tasks are counted by the model changes, so the quota costs nothing to check.
+ * It is checked before the tasks are added, so the concurrent calls of the same owner may overrun it by their own size.
+ * Token buckets of the idle owners and hosts are dropped, once there are too many of them.
+ * @author ovoievodin
+ */
+public class AdmissionController {
+
+	private final double ownerTasksPerSecond;
+	private final int ownerTasksBurst;
+	private final double hostCallsPerSecond;
+	private final int hostCallsBurst;
+	private final int maxScheduledTasksPerOwner;
+	private final int maxTrackedBuckets;
+	private volatile boolean isEnabled;
+
+	private final Map<Long, TokenBucket> ownerBuckets;
+	private final Map<String, TokenBucket> hostBuckets;
+	/** Amount of the scheduled tasks by owner, owners without the tasks are not kept. */
+	private final ConcurrentHashMap<Long, Integer> scheduledPerOwner;
+
+	private final LongAdder admitted;
+	private final LongAdder throttled;
+	private final LongAdder rejected;
+
+	/**
+	 * @param ownerTasksPerSecond steady rate of the task submissions per task owner.
+	 * @param ownerTasksBurst amount of the tasks, the owner may submit at once.
+	 * @param hostCallsPerSecond steady rate of the submission calls per client host.
+	 * @param hostCallsBurst amount of the submission calls, the host may make at once.
+	 * @param maxScheduledTasksPerOwner amount of the scheduled tasks, the owner may have.
+	 * @param maxTrackedBuckets amount of the token buckets of the each kind, over which the idle ones are dropped.
+	 */
+	public AdmissionController(double ownerTasksPerSecond, int ownerTasksBurst, double hostCallsPerSecond, int hostCallsBurst,
+			int maxScheduledTasksPerOwner, int maxTrackedBuckets) {
+		this.ownerTasksPerSecond = ownerTasksPerSecond;
+		this.ownerTasksBurst = ownerTasksBurst;
+		this.hostCallsPerSecond = hostCallsPerSecond;
+		this.hostCallsBurst = hostCallsBurst;
+		this.maxScheduledTasksPerOwner = maxScheduledTasksPerOwner;
+		this.maxTrackedBuckets = maxTrackedBuckets;
+		this.isEnabled = true;
+		this.ownerBuckets = new ConcurrentHashMap<>();
+		this.hostBuckets = new ConcurrentHashMap<>();
+		this.scheduledPerOwner = new ConcurrentHashMap<>();
+		this.admitted = new LongAdder();
+		this.throttled = new LongAdder();
+		this.rejected = new LongAdder();
+	}
+
+	/**
+	 * Count the tasks of the model and keep counting them by it's changes.
+	 * Called before the model is changed by anyone else.
+	 * @param model model, the admitted tasks are added to.
+	 * @author ovoievodin
+	 */
+	public void track(TasksModel model) {
+		final List<Task[]> cut = new ArrayList<>();
+		model.cut(cut);
+		for(Task[] tasks : cut) {
+			for(Task task : tasks) {
+				scheduledPerOwner.merge(task.getOwnerId(), 1, Integer::sum);
+			}
+		}
+		model.addChangeListener(this::onChange);
+	}
+
+	/**
+	 * Admit the submission of the tasks or reject it, consuming the tokens only if it is admitted.
+	 * @param clientHost host of the calling client or null for the local call, which is not limited by host.
+	 * @param tasks submitted tasks.
+	 * @throws AdmissionRejectedException if the submission is over any of the limits.
+	 * @author ovoievodin
+	 */
+	public void admit(String clientHost, List<Task> tasks) throws AdmissionRejectedException {
+		if(!isEnabled || tasks.isEmpty()) {
+			return;
+		}
+		final Map<Long, Integer> tasksPerOwner = tasks.size() == 1 ? Collections.singletonMap(tasks.get(0).getOwnerId(), 1) : new HashMap<>();
+		if(tasks.size() > 1) {
+			for(Task task : tasks) {
+				tasksPerOwner.merge(task.getOwnerId(), 1, Integer::sum);
+			}
+		}
+		for(Map.Entry<Long, Integer> owner : tasksPerOwner.entrySet()) {
+			final int scheduled = scheduledPerOwner.getOrDefault(owner.getKey(), 0);
+			if(scheduled + owner.getValue() > maxScheduledTasksPerOwner) {
+				rejected.increment();
+				throw new AdmissionRejectedException("Owner " + owner.getKey() + " has " + scheduled + " tasks scheduled, "
+						+ owner.getValue() + " more would exceed the quota of " + maxScheduledTasksPerOwner + " tasks.",
+						AdmissionRejectedException.Reason.QUOTA_EXCEEDED, -1);
+			}
+		}
+		final long now = System.nanoTime();
+		final Map<TokenBucket, Integer> taken = new HashMap<>(); // tokens, already taken by the call.
+		if(clientHost != null) {
+			final TokenBucket hostBucket = bucketOf(hostBuckets, clientHost, hostCallsPerSecond, hostCallsBurst, now);
+			acquire(hostBucket, 1, now, taken, "Client host " + clientHost + " is over " + hostCallsPerSecond + " submissions per second");
+		}
+		for(Map.Entry<Long, Integer> owner : tasksPerOwner.entrySet()) {
+			final TokenBucket ownerBucket = bucketOf(ownerBuckets, owner.getKey(), ownerTasksPerSecond, ownerTasksBurst, now);
+			acquire(ownerBucket, owner.getValue(), now, taken, "Owner " + owner.getKey() + " is over " + ownerTasksPerSecond + " tasks per second");
+		}
+		admitted.increment();
+	}
+
+	/**
+	 * Take the tokens or give back the ones, already taken by the call, and reject it.
+	 */
+	private void acquire(TokenBucket bucket, int amount, long now, Map<TokenBucket, Integer> taken, String limit) throws AdmissionRejectedException {
+		final long waitNanos = bucket.tryAcquire(amount, now);
+		if(waitNanos == 0) {
+			taken.put(bucket, amount);
+			return;
+		}
+		taken.forEach(TokenBucket::release);
+		throttled.increment();
+		if(waitNanos < 0) {
+			throw new AdmissionRejectedException(limit + ", submission of " + amount + " tasks is over the burst of " + bucket.capacity
+					+ ", split it into the smaller ones.", AdmissionRejectedException.Reason.THROTTLED, -1);
+		}
+		final long retryAfterMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+		throw new AdmissionRejectedException(limit + ", retry in " + retryAfterMillis + "ms.", AdmissionRejectedException.Reason.THROTTLED, retryAfterMillis);
+	}
+
+	private <K> TokenBucket bucketOf(Map<K, TokenBucket> buckets, K key, double perSecond, int capacity, long now) {
+		TokenBucket bucket = buckets.get(key);
+		if(bucket == null) {
+			if(buckets.size() >= maxTrackedBuckets) {
+				buckets.values().removeIf(idle -> idle.isFull(now)); // full bucket admits the same as the new one.
+			}
+			bucket = buckets.computeIfAbsent(key, newKey -> new TokenBucket(perSecond, capacity, now));
+		}
+		return bucket;
+	}
+
+	/**
+	 * Keep the amount of the scheduled tasks of every owner. Called while the model is locked, so it just updates the counters.
+	 */
+	private void onChange(TasksModelChange change) {
+		final int sign = change.getType() == TasksModelChange.Type.ADDED ? 1 : -1;
+		for(Task task : change.getTasks()) {
+			scheduledPerOwner.compute(task.getOwnerId(), (owner, scheduled) -> {
+				final int updated = (scheduled == null ? 0 : scheduled) + sign;
+				return updated <= 0 ? null : updated;
+			});
+		}
+	}
+
+	/**
+	 * @param isEnabled false -> every submission is admitted, the scheduled tasks are still counted.
+	 */
+	public void setEnabled(boolean isEnabled) {
+		this.isEnabled = isEnabled;
+	}
+
+	public boolean isEnabled() {
+		return isEnabled;
+	}
+
+	/**
+	 * @return amount of the scheduled tasks of the owner.
+	 */
+	public int getScheduledAmount(long ownerId) {
+		return scheduledPerOwner.getOrDefault(ownerId, 0);
+	}
+
+	public long getAdmittedAmount() {
+		return admitted.sum();
+	}
+
+	/**
+	 * @return amount of the calls, rejected by the rate limits.
+	 */
+	public long getThrottledAmount() {
+		return throttled.sum();
+	}
+
+	/**
+	 * @return amount of the calls, rejected by the quota of the scheduled tasks.
+	 */
+	public long getRejectedAmount() {
+		return rejected.sum();
+	}
+
+	public int getTrackedOwnersAmount() {
+		return ownerBuckets.size();
+	}
+
+	/**
+	 * Token bucket, refilled lazily by the time, passed since the previous call.
+	 */
+	private static final class TokenBucket {
+
+		private final double tokensPerNano;
+		private final int capacity;
+		/** Guarded by this. */
+		private double tokens;
+		/** Guarded by this. */
+		private long refilledAt;
+
+		private TokenBucket(double perSecond, int capacity, long now) {
+			this.tokensPerNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+			this.capacity = capacity;
+			this.tokens = capacity;
+			this.refilledAt = now;
+		}
+
+		/**
+		 * @return 0, if the tokens are taken, time until they are available otherwise, -1, if they never are.
+		 */
+		private synchronized long tryAcquire(int amount, long now) {
+			if(amount > capacity) {
+				return -1;
+			}
+			refill(now);
+			if(tokens >= amount) {
+				tokens -= amount;
+				return 0;
+			}
+			return Math.max(1, (long) Math.ceil((amount - tokens) / tokensPerNano));
+		}
+
+		private synchronized void release(int amount) {
+			tokens = Math.min(capacity, tokens + amount);
+		}
+
+		private synchronized boolean isFull(long now) {
+			refill(now);
+			return tokens >= capacity;
+		}
+
+		private void refill(long now) {
+			if(now > refilledAt) {
+				tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+				refilledAt = now;
+			}
+		}
+	}
+}
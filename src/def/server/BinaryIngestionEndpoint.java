@@ -0,0 +1,520 @@
+package def.server;
+
+import static def.remote.BinaryIngestionProtocol.ADD_TASKS;
+import static def.remote.BinaryIngestionProtocol.HEADER_BYTES;
+import static def.remote.BinaryIngestionProtocol.LENGTH_BYTES;
+import static def.remote.BinaryIngestionProtocol.QUERY_TASKS;
+import static def.remote.BinaryIngestionProtocol.REMOVE_TASKS;
+import static def.remote.BinaryIngestionProtocol.STATUS_ERROR;
+import static def.remote.BinaryIngestionProtocol.STATUS_OK;
+import static def.remote.BinaryIngestionProtocol.STATUS_REJECTED;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import def.metrics.LatencyHistogram;
+import def.metrics.MetricsRegistry;
+import def.remote.AdmissionRejectedException;
+import def.remote.BinaryIngestionProtocol;
+import def.taskmodel.Task;
+import def.taskmodel.TaskWireFormat;
+
+/**
+ * Non-blocking NIO endpoint of the batch producers, which speak the {@link BinaryIngestionProtocol} instead of RMI.
+ * Requests are executed by the server itself, so they share the tasks model, the admission and the persistence with the RMI calls.
+ * <br>Single selector thread reads the frames of all connections and hands every complete one to the worker thread,
+ * so the selector never waits for the model or for the disk. The worker takes all of the requests, which have arrived
+ * meanwhile, executes them in the order of arrival and saves the model once for the whole batch (group commit),
+ * then the selector writes their responses back with a single gathering write, so the pipelined requests cost
+ * neither a round trip, nor a sync each. Response to the change is sent only once the change is durable,
+ * the change, which is not saved, gets the error response.
+ * Connection, which does not read it's responses, is not read either, until it's unexecuted requests and unsent responses
+ * are below the pending limit.
+ * Malformed request gets the error response, malformed frame (bad length) closes the connection.
+ * @author ovoievodin
+ */
+public class BinaryIngestionEndpoint implements Runnable {
+
+	private static final int INITIAL_INPUT_CAPACITY = 64 * 1024;
+
+	private final TaskSchedulerServer server;
+	private final Selector selector;
+	private final ServerSocketChannel serverChannel;
+	private final int maxFrameBytes;
+	private final int maxPendingBytes;
+	private final BlockingQueue<Request> requests;
+	private final ConcurrentLinkedQueue<Request> executedRequests;
+	private final Thread worker;
+	/** Queued by {@link #stop()} after the requests, the worker is going to complete. */
+	private final Request stopRequest;
+
+	private volatile boolean isEnabled;
+
+	private final AtomicInteger connectionsAmount;
+	private final LongAdder requestsAmount;
+	private final LongAdder failedRequestsAmount;
+	private final LatencyHistogram addLatency;
+	private final LatencyHistogram removeLatency;
+	private final LatencyHistogram queryLatency;
+
+	/**
+	 * Open the endpoint, it accepts the connections once started.
+	 * @param server server, which executes the requests.
+	 * @param address address to listen at, port 0 -> any free port.
+	 * @param maxFrameBytes maximal length of the request frame, the longer one closes the connection.
+	 * @param maxPendingBytes amount of the unexecuted requests and unsent responses of the connection, above which it is not read.
+	 * @throws IOException if the address can not be bound.
+	 */
+	public BinaryIngestionEndpoint(TaskSchedulerServer server, InetSocketAddress address, int maxFrameBytes, int maxPendingBytes) throws IOException {
+		this.server = server;
+		this.maxFrameBytes = maxFrameBytes;
+		this.maxPendingBytes = maxPendingBytes;
+		this.requests = new LinkedBlockingQueue<>();
+		this.executedRequests = new ConcurrentLinkedQueue<>();
+		this.worker = new Thread(this::executeRequests, "binary-ingestion-worker");
+		this.stopRequest = new Request(null, new byte[0]);
+		this.connectionsAmount = new AtomicInteger();
+		this.requestsAmount = new LongAdder();
+		this.failedRequestsAmount = new LongAdder();
+		this.addLatency = new LatencyHistogram();
+		this.removeLatency = new LatencyHistogram();
+		this.queryLatency = new LatencyHistogram();
+		this.selector = Selector.open();
+		this.serverChannel = ServerSocketChannel.open();
+		try {
+			serverChannel.bind(address);
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			serverChannel.close();
+			selector.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Start the selector and the worker threads.
+	 * @author ovoievodin
+	 */
+	public void start() {
+		isEnabled = true;
+		worker.start();
+		new Thread(this, "binary-ingestion").start();
+	}
+
+	/**
+	 * Request the selector and the worker threads to stop, the selector closes all of the connections.
+	 * The worker is not interrupted: it completes and saves the requests, queued so far, so no change is reported
+	 * without being durable.
+	 * @author ovoievodin
+	 */
+	public void stop() {
+		isEnabled = false;
+		requests.add(stopRequest);
+		selector.wakeup();
+	}
+
+	public InetSocketAddress getAddress() throws IOException {
+		return (InetSocketAddress) serverChannel.getLocalAddress();
+	}
+
+	/**
+	 * Register the metrics of the endpoint: connections, requests, failed (error/rejected) requests
+	 * and the latency of every operation, measured from the complete frame to the ready (durable) response.
+	 * @author ovoievodin
+	 */
+	public void registerMetrics(MetricsRegistry registry) {
+		registry.register("ingestion.connections", connectionsAmount::get);
+		registry.register("ingestion.requests", requestsAmount::sum);
+		registry.register("ingestion.failed", failedRequestsAmount::sum);
+		registry.register("ingestion.add_tasks", addLatency);
+		registry.register("ingestion.remove_tasks", removeLatency);
+		registry.register("ingestion.query_tasks", queryLatency);
+	}
+
+	@Override
+	public void run() {
+		System.out.println("Binary ingestion started...");
+		try {
+			while(isEnabled) {
+				selector.select();
+				respond();
+				final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext()) {
+					final SelectionKey key = keys.next();
+					keys.remove();
+					if(key.isValid() && key.isAcceptable()) {
+						accept();
+					} else if(key.isValid()) {
+						serve(key);
+					}
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Binary ingestion error: " + e.getMessage());
+		} finally {
+			for(SelectionKey key : selector.keys()) {
+				if(key.attachment() != null) {
+					close(key, null);
+				}
+			}
+			try {
+				serverChannel.close();
+				selector.close();
+			} catch (IOException e) {
+				System.err.println("Binary ingestion closing error: " + e.getMessage());
+			}
+		}
+		System.out.println("Binary ingestion stopped.");
+	}
+
+	private void accept() {
+		try {
+			final SocketChannel channel = serverChannel.accept();
+			if(channel == null) {
+				return;
+			}
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			final String host = ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+			channel.register(selector, SelectionKey.OP_READ, new Connection(channel, host));
+			connectionsAmount.incrementAndGet();
+		} catch (IOException e) {
+			System.err.println("Binary ingestion connection accepting error: " + e.getMessage());
+		}
+	}
+
+	private void serve(SelectionKey key) {
+		final Connection connection = (Connection) key.attachment();
+		try {
+			if(key.isReadable() && !read(connection)) {
+				close(key, null);
+				return;
+			}
+			write(key, connection);
+		} catch (IOException e) {
+			close(key, e.getMessage());
+		}
+	}
+
+	/**
+	 * Read what is available and hand every complete request to the worker.
+	 * @return false, if the client has closed the connection.
+	 */
+	private boolean read(Connection connection) throws IOException {
+		final ByteBuffer input = connection.input;
+		if(connection.channel.read(input) < 0) {
+			return false;
+		}
+		input.flip();
+		while(input.remaining() >= LENGTH_BYTES) {
+			final int length = input.getInt(input.position());
+			if(length < HEADER_BYTES || length > maxFrameBytes) {
+				throw new StreamCorruptedException("Frame of " + length + " bytes from " + connection.host);
+			}
+			if(input.remaining() < LENGTH_BYTES + length) {
+				break;
+			}
+			final int start = input.position() + LENGTH_BYTES;
+			input.position(start + length);
+			final byte[] frame = new byte[length]; // the input buffer is reused, while the request waits.
+			System.arraycopy(input.array(), start, frame, 0, length);
+			connection.pendingBytes += length;
+			requests.add(new Request(connection, frame));
+		}
+		input.compact();
+		if(input.position() >= LENGTH_BYTES) {
+			final int frameBytes = LENGTH_BYTES + input.getInt(0);
+			if(frameBytes > input.capacity()) { // the incomplete frame is longer, than the buffer.
+				input.flip();
+				connection.input = ByteBuffer.allocate(Math.max(frameBytes, Math.min(input.capacity() * 2, LENGTH_BYTES + maxFrameBytes))).put(input);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Queue the responses, the worker has made since the last call, to their connections and write them.
+	 */
+	private void respond() {
+		for(Request request = executedRequests.poll(); request != null; request = executedRequests.poll()) {
+			final Connection connection = request.connection;
+			final SelectionKey key = connection.channel.keyFor(selector);
+			if(key == null || !key.isValid()) {
+				continue; // the connection is closed, nobody waits for the response.
+			}
+			connection.responses.add(request.response);
+			connection.pendingBytes += request.response.remaining() - request.frame.length;
+			if(executedRequests.isEmpty() || executedRequests.peek().connection != connection) {
+				try {
+					write(key, connection);
+				} catch (IOException e) {
+					close(key, e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write the pending responses, as much as the socket takes, and wait for it to take the rest.
+	 */
+	private void write(SelectionKey key, Connection connection) throws IOException {
+		while(!connection.responses.isEmpty()) {
+			final long written = connection.channel.write(connection.responses.toArray(new ByteBuffer[0]));
+			connection.pendingBytes -= written;
+			while(!connection.responses.isEmpty() && !connection.responses.peek().hasRemaining()) {
+				connection.responses.poll();
+			}
+			if(written == 0) {
+				break;
+			}
+		}
+		int interest = connection.responses.isEmpty() ? 0 : SelectionKey.OP_WRITE;
+		if(connection.pendingBytes <= maxPendingBytes) {
+			interest |= SelectionKey.OP_READ;
+		}
+		key.interestOps(interest);
+	}
+
+	private void close(SelectionKey key, String reason) {
+		final Connection connection = (Connection) key.attachment();
+		key.cancel();
+		try {
+			connection.channel.close();
+		} catch (IOException e) {
+			// nothing to do with the connection, which is already gone.
+		}
+		connectionsAmount.decrementAndGet();
+		if(reason != null) {
+			System.err.println("Binary ingestion connection of " + connection.host + " closed: " + reason);
+		}
+	}
+
+	/**
+	 * Worker loop: execute the requests by batches of the ones, which have arrived meanwhile,
+	 * and save the model once per batch, before any of the responses is sent.
+	 */
+	private void executeRequests() {
+		final List<Request> batch = new ArrayList<>();
+		try {
+			boolean isStopped = false;
+			while(!isStopped) {
+				batch.add(requests.take());
+				requests.drainTo(batch);
+				isStopped = batch.remove(stopRequest);
+				boolean isChanged = false;
+				for(Request request : batch) {
+					isChanged |= execute(request);
+				}
+				if(isChanged) {
+					save(batch);
+				}
+				for(Request request : batch) {
+					request.recordLatency();
+				}
+				executedRequests.addAll(batch);
+				batch.clear();
+				selector.wakeup();
+			}
+		} catch (InterruptedException e) {
+			// nothing is taken, so nothing is left unsaved.
+		}
+	}
+
+	/**
+	 * Make the changes of the batch durable, if the model can not be saved, the changes get the error response instead.
+	 */
+	private void save(List<Request> batch) {
+		try {
+			server.saveModel();
+		} catch (RuntimeException e) {
+			for(Request request : batch) {
+				if(request.isChange && request.status == STATUS_OK) {
+					failedRequestsAmount.increment();
+					request.status = STATUS_ERROR;
+					request.response = error(request.requestId(), STATUS_ERROR, "Changes are not saved: " + e.getMessage(), null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Execute the single request, without waiting for it's changes to be durable.
+	 * @return true, if the request has changed the model.
+	 */
+	private boolean execute(Request request) {
+		requestsAmount.increment();
+		final byte[] frame = request.frame;
+		final int requestId = request.requestId();
+		final byte operation = frame[Integer.BYTES];
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame, HEADER_BYTES, frame.length - HEADER_BYTES));
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			writeHeader(out, requestId, STATUS_OK);
+			switch(operation) {
+				case ADD_TASKS:
+					request.isChange = true;
+					addTasks(request.connection.host, in, out);
+					break;
+				case REMOVE_TASKS:
+					request.isChange = true;
+					removeTasks(in, out, frame.length);
+					break;
+				case QUERY_TASKS:
+					BinaryIngestionProtocol.writePage(out, server.query(BinaryIngestionProtocol.readQuery(in)));
+					break;
+				default:
+					throw new StreamCorruptedException("Unknown operation " + operation);
+			}
+			request.status = STATUS_OK;
+			request.response = frame(bytes);
+			return request.isChange;
+		} catch (AdmissionRejectedException e) {
+			failedRequestsAmount.increment();
+			request.status = STATUS_REJECTED;
+			request.response = error(requestId, STATUS_REJECTED, null, e);
+			return false;
+		} catch (IOException | RuntimeException e) {
+			failedRequestsAmount.increment();
+			request.status = STATUS_ERROR;
+			request.response = error(requestId, STATUS_ERROR, String.valueOf(e.getMessage()), null);
+			return request.isChange; // the batch may be changed partially.
+		}
+	}
+
+	/**
+	 * @return error or rejection response frame, ready to be written.
+	 */
+	private static ByteBuffer error(int requestId, byte status, String message, AdmissionRejectedException rejection) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			writeHeader(out, requestId, status);
+			if(rejection != null) {
+				BinaryIngestionProtocol.writeRejection(out, rejection);
+			} else {
+				out.writeUTF(message);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // the bytes are written to the memory.
+		}
+		return frame(bytes);
+	}
+
+	private static ByteBuffer frame(ByteArrayOutputStream bytes) {
+		final ByteBuffer response = ByteBuffer.wrap(bytes.toByteArray());
+		response.putInt(0, response.remaining() - LENGTH_BYTES);
+		return response;
+	}
+
+	private static void writeHeader(DataOutputStream out, int requestId, byte status) throws IOException {
+		out.writeInt(0); // the length is known, once the response is written.
+		out.writeInt(requestId);
+		out.writeByte(status);
+	}
+
+	private void addTasks(String host, DataInputStream in, DataOutputStream out) throws IOException {
+		final List<Task> tasks = TaskWireFormat.readTasks(in);
+		final List<Boolean> results = server.addTasks(host, tasks);
+		TaskWireFormat.writeVarLong(out, tasks.size());
+		for(int i = 0; i < tasks.size(); i++) {
+			TaskWireFormat.writeVarLong(out, results.get(i) ? tasks.get(i).getId() : 0L);
+		}
+	}
+
+	private void removeTasks(DataInputStream in, DataOutputStream out, int length) throws IOException {
+		final int amount = TaskWireFormat.readVarInt(in);
+		if(amount > length) { // every id takes a byte at least.
+			throw new StreamCorruptedException(amount + " task ids in " + length + " bytes");
+		}
+		final long[] taskIds = new long[amount];
+		for(int i = 0; i < amount; i++) {
+			taskIds[i] = TaskWireFormat.readVarLong(in);
+		}
+		final boolean[] results = server.removeTasks(taskIds);
+		TaskWireFormat.writeVarLong(out, results.length);
+		for(boolean isRemoved : results) {
+			out.writeBoolean(isRemoved);
+		}
+	}
+
+	/**
+	 * Request, which waits for the worker, and it's response, once executed.
+	 */
+	private final class Request {
+		private final Connection connection;
+		/** Bytes of the request after it's length. */
+		private final byte[] frame;
+		private final long start;
+		private boolean isChange;
+		private byte status;
+		private ByteBuffer response;
+
+		private Request(Connection connection, byte[] frame) {
+			this.connection = connection;
+			this.frame = frame;
+			this.start = System.nanoTime();
+		}
+
+		private int requestId() {
+			return ByteBuffer.wrap(frame).getInt();
+		}
+
+		private void recordLatency() {
+			if(status != STATUS_OK) {
+				return;
+			}
+			switch(frame[Integer.BYTES]) {
+				case ADD_TASKS:
+					addLatency.recordSince(start);
+					break;
+				case REMOVE_TASKS:
+					removeLatency.recordSince(start);
+					break;
+				default:
+					queryLatency.recordSince(start);
+			}
+		}
+	}
+
+	/**
+	 * Accepted connection: the frames, read so far, and the responses, not written yet.
+	 * Touched by the selector thread only.
+	 */
+	private static final class Connection {
+		private final SocketChannel channel;
+		private final String host;
+		private ByteBuffer input;
+		private final ArrayDeque<ByteBuffer> responses;
+		/** Bytes of the requests, handed to the worker, and of the responses, not written yet. */
+		private long pendingBytes;
+
+		private Connection(SocketChannel channel, String host) {
+			this.channel = channel;
+			this.host = host;
+			this.input = ByteBuffer.allocate(INITIAL_INPUT_CAPACITY);
+			this.responses = new ArrayDeque<>();
+		}
+	}
+}
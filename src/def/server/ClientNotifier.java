@@ -0,0 +1,238 @@
+package def.server;
+
+import static def.utils.Preferences.CLIENT_EVICTION_MILLIS;
+import static def.utils.Preferences.CLIENT_MAX_FAILED_NOTIFICATIONS;
+import static def.utils.Preferences.CLIENT_NOTIFICATION_MAX_RETRY_MILLIS;
+import static def.utils.Preferences.CLIENT_NOTIFICATION_RETRY_MILLIS;
+import static def.utils.Preferences.CLIENT_NOTIFICATION_QUEUE_CAPACITY;
+import static def.utils.Preferences.NOTIFICATION_THREADS_AMOUNT;
+
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import def.metrics.LatencyHistogram;
+import def.remote.RemoteTaskSchedulerClient;
+import def.taskmodel.TasksModel;
+import def.taskmodel.TasksModelChange;
+
+/**
+ * Asynchronous fan-out of the tasks model changes to the logged-in clients.
+ * Each client has it's own outbound queue, drained by the bounded pool of notification threads,
+ * so publishing a change never waits for any client and a slow client delays only itself.
+ * <li>Queue overflow -> pending changes are coalesced into a single whole model push.</li>
+ * <li>Failed notification -> the whole model is pushed to the client after the retry delay, which doubles with every failure in a row,
+ * so the short network outage does not use up the failures at once.</li>
+ * <li>Client failed too many times in a row and for the eviction period at least -> it is evicted.</li>
+ * @author ovoievodin
+ */
+public class ClientNotifier {
+
+	private final TasksModel tasks;
+	private final Map<RemoteTaskSchedulerClient, ClientChannel> channels;
+	private final ExecutorService executor;
+	/** Delays the retries of the failed channels. */
+	private final ScheduledThreadPoolExecutor retries;
+
+	/** Time to enqueue the change for all of the clients. */
+	private final LatencyHistogram fanOutLatency;
+	/** Time of the single notification call to the client. */
+	private final LatencyHistogram deliveryLatency;
+
+	public ClientNotifier(TasksModel tasks) {
+		this.tasks = tasks;
+		this.channels = new ConcurrentHashMap<>();
+		this.fanOutLatency = new LatencyHistogram();
+		this.deliveryLatency = new LatencyHistogram();
+		final AtomicInteger threadsCounter = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(
+				NOTIFICATION_THREADS_AMOUNT,
+				NOTIFICATION_THREADS_AMOUNT,
+				60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), // never grows beyond the amount of clients: channel is queued only once.
+				runnable -> {
+					final Thread thread = new Thread(runnable, "client-notifier-" + threadsCounter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.retries = new ScheduledThreadPoolExecutor(1, runnable -> {
+			final Thread thread = new Thread(runnable, "client-notifier-retry");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Start notifying the client.
+	 * @return false, if the client is already registered.
+	 * @author ovoievodin
+	 */
+	public boolean addClient(RemoteTaskSchedulerClient client) {
+		return channels.putIfAbsent(client, new ClientChannel(client)) == null;
+	}
+
+	/**
+	 * Stop notifying the client, changes already pending for it are dropped.
+	 * @author ovoievodin
+	 */
+	public boolean removeClient(RemoteTaskSchedulerClient client) {
+		return channels.remove(client) != null;
+	}
+
+	public boolean hasClient(RemoteTaskSchedulerClient client) {
+		return channels.containsKey(client);
+	}
+
+	public int getClientsAmount() {
+		return channels.size();
+	}
+
+	/**
+	 * Enqueue the change for every client and return immediately.
+	 * @param change the change to push to the clients.
+	 * @author ovoievodin
+	 */
+	public void publish(TasksModelChange change) {
+		final long start = System.nanoTime();
+		for(ClientChannel channel : channels.values()) {
+			channel.enqueue(change);
+		}
+		fanOutLatency.recordSince(start);
+	}
+
+	public LatencyHistogram getFanOutLatency() {
+		return fanOutLatency;
+	}
+
+	public LatencyHistogram getDeliveryLatency() {
+		return deliveryLatency;
+	}
+
+	public void shutdown() {
+		retries.shutdownNow();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Outbound queue of a single client.
+	 * Drained by at most one notification thread at a time, so the client receives the changes in order.
+	 */
+	private final class ClientChannel implements Runnable {
+
+		private final RemoteTaskSchedulerClient client;
+		private final Queue<TasksModelChange> pending;
+
+		/** Pending changes were coalesced, so the whole model should be pushed instead. Guarded by this. */
+		private boolean isSnapshotRequired;
+
+		/** Channel is queued to/drained by the executor. Guarded by this. */
+		private boolean isScheduled;
+
+		/** Accessed only by the draining thread. */
+		private int failuresInRow;
+		/** Time of the first failure in a row. Accessed only by the draining thread. */
+		private long firstFailureTime;
+
+		private ClientChannel(RemoteTaskSchedulerClient client) {
+			this.client = client;
+			this.pending = new ArrayDeque<>();
+		}
+
+		private void enqueue(TasksModelChange change) {
+			synchronized (this) {
+				if(isSnapshotRequired) {
+					return; // whole model is going to be pushed anyway.
+				}
+				if(pending.size() >= CLIENT_NOTIFICATION_QUEUE_CAPACITY) {
+					pending.clear();
+					isSnapshotRequired = true;
+				} else {
+					pending.add(change);
+				}
+				if(isScheduled) {
+					return;
+				}
+				isScheduled = true;
+			}
+			executor.execute(this);
+		}
+
+		@Override
+		public void run() {
+			while(channels.get(client) == this) {
+				final TasksModelChange change;
+				final boolean isSnapshot;
+				synchronized (this) {
+					isSnapshot = isSnapshotRequired;
+					change = isSnapshot ? null : pending.poll();
+					isSnapshotRequired = false;
+					if(!isSnapshot && change == null) {
+						isScheduled = false;
+						return;
+					}
+				}
+				if(!deliver(change)) {
+					retryLater();
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Drain the channel again after the delay, it stays scheduled meanwhile, so the changes are only coalesced.
+		 */
+		private void retryLater() {
+			if(channels.get(client) != this) {
+				return;
+			}
+			final long delay = Math.min(CLIENT_NOTIFICATION_RETRY_MILLIS << Math.min(failuresInRow - 1, 20), CLIENT_NOTIFICATION_MAX_RETRY_MILLIS);
+			try {
+				retries.schedule(() -> executor.execute(this), delay, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// notifier is shut down.
+			}
+		}
+
+		/**
+		 * @return false, if the notification has failed.
+		 */
+		private boolean deliver(TasksModelChange change) {
+			final long start = System.nanoTime();
+			try {
+				if(change == null) {
+					client.updateTasksModel(tasks);
+				} else {
+					client.applyTasksModelChange(change);
+				}
+				deliveryLatency.recordSince(start);
+				failuresInRow = 0;
+				return true;
+			} catch (RemoteException e) {
+				System.err.println("Error updating clients task model " + client + " :: " + e.getMessage());
+				final long now = System.currentTimeMillis();
+				if(failuresInRow++ == 0) {
+					firstFailureTime = now;
+				}
+				if(failuresInRow >= CLIENT_MAX_FAILED_NOTIFICATIONS && now - firstFailureTime >= CLIENT_EVICTION_MILLIS) {
+					channels.remove(client, this);
+					System.err.println("Client evicted after " + failuresInRow + " failed notifications in " + (now - firstFailureTime) + "ms: " + client);
+				} else {
+					synchronized (this) {
+						pending.clear(); // client has missed the change, so it needs the whole model anyway.
+						isSnapshotRequired = true;
+					}
+				}
+				return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package def.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import def.taskmodel.TaskOutputChunk;
+
+/**
+ * Files of the task executions output: every execution has it's own stdout and stderr file,
+ * named by the execution id.
+ * The processes write right to the files (see {@link ProcessBuilder#redirectOutput(java.io.File)}),
+ * so the output never passes through the server and the process never blocks on the full pipe.
+ * Reading goes from the file channel straight to the chunk, without any decoding.
+ * <br>Each output file of the execution is limited: the execution engine kills the process, which file grows over the limit,
+ * and the file is truncated to the limit, once the process exits, so the runaway process can not fill the disk.
+ * <br>Execution ids continue the ones of the previous server run,
+ * and the shard allocates only the ids of it's own residue class, so the id tells the shard, see {@link def.utils.ShardUtils#shardOfExecution(long, int)}.
+ * @author ovoievodin
+ */
+public class ExecutionOutputStore {
+
+	private static final String STDOUT_SUFFIX = ".out";
+	private static final String STDERR_SUFFIX = ".err";
+
+	private final Path directory;
+	private final int shardIndex;
+	private final int shardsAmount;
+	private final long maxOutputBytes;
+	private final AtomicLong sequence;
+
+	/**
+	 * Open the store, keeping only the output of the latest executions of the previous runs.
+	 * @param directory directory of the output files, created if missing.
+	 * @param shardIndex index of the shard, this server is.
+	 * @param shardsAmount total amount of shards in the cluster, 1 -> not sharded.
+	 * @param capacity amount of the latest executions to keep the output of.
+	 * @param maxOutputBytes maximal length of the stdout and of the stderr file of the execution.
+	 * @throws IOException
+	 */
+	public ExecutionOutputStore(Path directory, int shardIndex, int shardsAmount, int capacity, long maxOutputBytes) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.maxOutputBytes = maxOutputBytes;
+		this.shardIndex = shardIndex;
+		this.shardsAmount = shardsAmount;
+		final List<Long> storedIds = listExecutionIds();
+		for(int i = 0; i < storedIds.size() - capacity; i++) {
+			delete(storedIds.get(i));
+		}
+		this.sequence = new AtomicLong(storedIds.isEmpty() ? 0 : storedIds.get(storedIds.size() - 1) / shardsAmount);
+	}
+
+	public long nextExecutionId() {
+		return sequence.incrementAndGet() * shardsAmount + shardIndex;
+	}
+
+	public Path pathOf(long executionId, TaskOutputChunk.Source source) {
+		return directory.resolve(executionId + (source == TaskOutputChunk.Source.STDOUT ? STDOUT_SUFFIX : STDERR_SUFFIX));
+	}
+
+	/**
+	 * Read the chunk of the execution output.
+	 * @param executionId id of the execution.
+	 * @param source stream of the output.
+	 * @param offset offset to read from.
+	 * @param maxLength maximal length of the chunk.
+	 * @param isFinished true, if the execution has finished, so the output does not grow anymore.
+	 * @return the chunk, empty, if there is nothing after the offset yet.
+	 * @throws NoSuchFileException if there is no output of the execution.
+	 * @author ovoievodin
+	 */
+	public TaskOutputChunk read(long executionId, TaskOutputChunk.Source source, long offset, int maxLength, boolean isFinished) throws IOException {
+		try (FileChannel channel = FileChannel.open(pathOf(executionId, source), StandardOpenOption.READ)) {
+			final long length = channel.size();
+			final long position = Math.max(0L, Math.min(offset, length));
+			final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(Math.max(0, maxLength), length - position));
+			while(buffer.hasRemaining()) {
+				if(channel.read(buffer, position + buffer.position()) <= 0) {
+					break;
+				}
+			}
+			final byte[] data = buffer.hasRemaining() ? Arrays.copyOf(buffer.array(), buffer.position()) : buffer.array();
+			return new TaskOutputChunk(position, data, length, isFinished && position + data.length >= length);
+		}
+	}
+
+	public long getMaxOutputBytes() {
+		return maxOutputBytes;
+	}
+
+	/**
+	 * @return true, if any output file of the execution is longer, than the limit.
+	 */
+	public boolean isOutputExceeded(long executionId) {
+		for(TaskOutputChunk.Source source : TaskOutputChunk.Source.values()) {
+			if(pathOf(executionId, source).toFile().length() > maxOutputBytes) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Cut the output files of the finished execution to the limit, the output, written before the process was killed, is dropped.
+	 */
+	public void truncate(long executionId) {
+		for(TaskOutputChunk.Source source : TaskOutputChunk.Source.values()) {
+			try (FileChannel channel = FileChannel.open(pathOf(executionId, source), StandardOpenOption.WRITE)) {
+				if(channel.size() > maxOutputBytes) {
+					channel.truncate(maxOutputBytes);
+				}
+			} catch (NoSuchFileException e) {
+				// nothing to cut.
+			} catch (IOException e) {
+				System.err.println("Error truncating the output of the execution #" + executionId + " :: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Delete the output files of the execution.
+	 */
+	public void delete(long executionId) {
+		for(TaskOutputChunk.Source source : TaskOutputChunk.Source.values()) {
+			try {
+				Files.deleteIfExists(pathOf(executionId, source));
+			} catch (IOException e) {
+				System.err.println("Error deleting the output of the execution #" + executionId + " :: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @return ids of the executions of this shard, which have the output stored, in the ascending order.
+	 */
+	private List<Long> listExecutionIds() throws IOException {
+		final List<Long> ids = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + STDOUT_SUFFIX)) {
+			for(Path file : files) {
+				final String fileName = file.getFileName().toString();
+				try {
+					final long id = Long.parseLong(fileName.substring(0, fileName.length() - STDOUT_SUFFIX.length()));
+					if(id % shardsAmount == shardIndex) {
+						ids.add(id);
+					}
+				} catch (NumberFormatException e) {
+					// not an output file.
+				}
+			}
+		}
+		Collections.sort(ids);
+		return ids;
+	}
+}
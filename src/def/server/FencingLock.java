@@ -0,0 +1,78 @@
+package def.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Exclusive right to dispatch the tasks of the model, kept in the same directory.
+ * Backed by the OS file lock, so it is released only when the holding process exits or dies,
+ * and only a single node at a time can be the primary one.
+ * Every acquisition increments the epoch, stored in the lock file, which identifies the primary's term.
+ * @author ovoievodin
+ */
+public class FencingLock {
+
+	private final Path lockPath;
+
+	/** Kept open, as closing it releases the lock. Guarded by this. */
+	private FileChannel channel;
+	/** Guarded by this. */
+	private FileLock lock;
+	/** Guarded by this. */
+	private long epoch;
+
+	public FencingLock(Path lockPath) {
+		this.lockPath = lockPath;
+	}
+
+	/**
+	 * Try to become the holder of the lock without waiting.
+	 * @return true -> lock is held by this node.<br>false -> it is held by another one.
+	 * @throws IOException
+	 * @author ovoievodin
+	 */
+	public synchronized boolean tryAcquire() throws IOException {
+		if(lock != null) {
+			return true;
+		}
+		final FileChannel lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		FileLock fileLock = null;
+		try {
+			fileLock = lockChannel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			// held by this very process.
+		}
+		if(fileLock == null) {
+			lockChannel.close();
+			return false;
+		}
+		final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+		while(buffer.hasRemaining() && lockChannel.read(buffer, buffer.position()) >= 0) { /* reading the last epoch */ }
+		epoch = buffer.hasRemaining() ? 1 : buffer.getLong(0) + 1;
+		buffer.clear();
+		buffer.putLong(epoch).flip();
+		while(buffer.hasRemaining()) {
+			lockChannel.write(buffer, buffer.position());
+		}
+		lockChannel.force(true);
+		this.channel = lockChannel;
+		this.lock = fileLock;
+		return true;
+	}
+
+	public synchronized boolean isHeld() {
+		return lock != null;
+	}
+
+	/**
+	 * @return epoch of the holder's term, 0 if the lock is not held.
+	 */
+	public synchronized long getEpoch() {
+		return epoch;
+	}
+}
@@ -0,0 +1,89 @@
+package def.server;
+
+import static def.utils.Preferences.BOUNDING_PORT;
+import static def.utils.Preferences.REPLICATION_POLL_MILLIS;
+
+import java.io.IOException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.util.List;
+
+import def.remote.RemoteReplicationSource;
+import def.remote.RemoteTaskSchedulerServer;
+import def.taskmodel.TasksModel;
+import def.taskmodel.TasksModelChange;
+
+/**
+ * Standby replica of the primary server.
+ * Keeps the in-memory copy of the primary's model up to date by streaming it's changes,
+ * and takes over as soon as the primary's fencing lock is released, i.e. the primary process is gone.
+ * Lock is checked between the polls, so the takeover starts within {@link def.utils.Preferences#REPLICATION_POLL_MILLIS}.
+ * @author ovoievodin
+ */
+public class ReplicationFollower {
+
+	private final String primaryLookupName;
+	private final FencingLock fencingLock;
+
+	private RemoteReplicationSource primary;
+	private TasksModel model;
+
+	/**
+	 * @param primaryLookupName name, the primary server is bound under.
+	 * @param fencingLock lock, held by the primary.
+	 */
+	public ReplicationFollower(String primaryLookupName, FencingLock fencingLock) {
+		this.primaryLookupName = primaryLookupName;
+		this.fencingLock = fencingLock;
+		this.model = new TasksModel();
+	}
+
+	/**
+	 * Replicate the primary's model until the fencing lock is acquired.
+	 * @return replicated model, which is warm and ready to be taken over.
+	 * @throws IOException if the fencing lock can not be checked.
+	 * @author ovoievodin
+	 */
+	public TasksModel followUntilPromoted() throws IOException {
+		System.out.println("Following the primary " + primaryLookupName);
+		while(!fencingLock.tryAcquire()) {
+			try {
+				if(primary == null) {
+					primary = (RemoteReplicationSource) LocateRegistry.getRegistry(BOUNDING_PORT).lookup(primaryLookupName);
+					System.out.println("Connected to the primary " + primaryLookupName);
+				}
+				final List<TasksModelChange> changes = primary.fetchChanges(model.getVersion(), REPLICATION_POLL_MILLIS);
+				if(changes == null || !applyAll(changes)) {
+					model = ((RemoteTaskSchedulerServer) primary).getTasks();
+					System.out.println("Replicated the whole model at version " + model.getVersion());
+				}
+			} catch (RemoteException | NotBoundException e) {
+				if(primary != null) {
+					System.err.println("Primary is unreachable: " + e.getMessage());
+				}
+				primary = null;
+				pause();
+			}
+		}
+		System.out.println("Fencing lock acquired at epoch " + fencingLock.getEpoch() + ", taking over at version " + model.getVersion());
+		return model;
+	}
+
+	private boolean applyAll(List<TasksModelChange> changes) {
+		for(TasksModelChange change : changes) {
+			if(!model.apply(change)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void pause() {
+		try {
+			Thread.sleep(REPLICATION_POLL_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
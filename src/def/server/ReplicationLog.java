@@ -0,0 +1,117 @@
+package def.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import def.taskmodel.TasksModelChange;
+
+/**
+ * Bounded in-memory log of the latest model changes, shipped to the standby replica.
+ * These are the same changes, the journal records are made of, so the replica's model
+ * goes through the same versions as the primary's one.
+ * <br>Replica's fetches are also it's acknowledgements: the dispatcher waits until the replica has
+ * the change, which took the due tasks out of the model, before executing them,
+ * so the replica, promoted after the primary's crash, never executes them again.
+ * @author ovoievodin
+ */
+public class ReplicationLog {
+
+	private final int capacity;
+	private final long followerTimeoutNanos;
+
+	/** Guarded by this. */
+	private final Deque<TasksModelChange> changes;
+	/** Guarded by this. */
+	private long lastVersion;
+	/** Version, the replica is known to have. Guarded by this. */
+	private long acknowledgedVersion;
+	/** Guarded by this. */
+	private long lastFetchNanos;
+	/** Guarded by this. */
+	private boolean isFollowed;
+
+	/**
+	 * @param capacity amount of the latest changes to keep.
+	 * @param followerTimeoutMillis replica, which has not fetched for so long, is not waited for anymore.
+	 * @param initialVersion version of the model, the log starts at.
+	 */
+	public ReplicationLog(int capacity, long followerTimeoutMillis, long initialVersion) {
+		this.capacity = capacity;
+		this.followerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(followerTimeoutMillis);
+		this.changes = new ArrayDeque<>(capacity);
+		this.lastVersion = initialVersion;
+	}
+
+	/**
+	 * Model change listener, never blocks.
+	 */
+	public synchronized void append(TasksModelChange change) {
+		if(changes.size() == capacity) {
+			changes.removeFirst();
+		}
+		changes.addLast(change);
+		lastVersion = change.getVersion();
+		notifyAll();
+	}
+
+	/**
+	 * See {@link def.remote.RemoteReplicationSource#fetchChanges(long, long)}.
+	 * @author ovoievodin
+	 */
+	public synchronized List<TasksModelChange> fetch(long afterVersion, long maxWaitMillis) throws InterruptedException {
+		isFollowed = true;
+		lastFetchNanos = System.nanoTime();
+		if(afterVersion > lastVersion) {
+			return null; // replica has followed another history.
+		}
+		acknowledgedVersion = Math.max(acknowledgedVersion, afterVersion);
+		notifyAll();
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+		long remaining = deadline - System.nanoTime();
+		while(lastVersion == afterVersion && remaining > 0) {
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			remaining = deadline - System.nanoTime();
+		}
+		if(lastVersion == afterVersion) {
+			return Collections.emptyList();
+		}
+		if(changes.isEmpty() || changes.peekFirst().getVersion() > afterVersion + 1) {
+			return null;
+		}
+		final List<TasksModelChange> newer = new ArrayList<>((int) (lastVersion - afterVersion));
+		for(TasksModelChange change : changes) {
+			if(change.getVersion() > afterVersion) {
+				newer.add(change);
+			}
+		}
+		return newer;
+	}
+
+	/**
+	 * Wait until the replica acknowledges the specified version.
+	 * Returns immediately, if there is no replica or it has not fetched for too long.
+	 * @param version model version, which the replica should have.
+	 * @return true -> replica has the version or there is no replica.<br>false -> replica has timed out.
+	 * @author ovoievodin
+	 */
+	public synchronized boolean awaitReplicated(long version) throws InterruptedException {
+		while(isFollowed && acknowledgedVersion < version) {
+			final long remaining = lastFetchNanos + followerTimeoutNanos - System.nanoTime();
+			if(remaining <= 0) {
+				isFollowed = false;
+				System.err.println("Replica has not acknowledged version " + version + " in time, executing without it.");
+				return false;
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return true;
+	}
+
+	public synchronized long getAcknowledgedVersion() {
+		return acknowledgedVersion;
+	}
+}
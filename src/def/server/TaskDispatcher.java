@@ -0,0 +1,169 @@
+package def.server;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import def.metrics.LatencyHistogram;
+import def.taskmodel.Task;
+import def.taskmodel.TasksModel;
+
+/**
+ * Deadline-driven task scheduling job.
+ * The dispatching thread is parked until the head of the tasks schedule is due
+ * and is woken up earlier only if a task with closer execution time gets scheduled.
+ * Each dispatch records the lag between the scheduled and the actual fire time to the histogram.
+ * @author ovoievodin
+ */
+public class TaskDispatcher implements Runnable {
+
+	private static final long NOT_PARKED = Long.MIN_VALUE;
+	private static final long PARKED_INDEFINITELY = Long.MAX_VALUE;
+
+	private final TasksModel tasks;
+	private final Consumer<List<Task>> executor;
+
+	private final ReentrantLock lock;
+	private final Condition scheduleChanged;
+
+	/**
+	 * Time in millis, until which the dispatching thread is currently parked.
+	 * Guarded by the lock.
+	 */
+	private long parkedUntil;
+
+	private volatile boolean isEnabled;
+
+	private final LatencyHistogram lag;
+
+	/**
+	 * @param tasks tasks model, which schedule is going to be dispatched.
+	 * @param executor callback, which receives every bunch of due tasks.
+	 */
+	public TaskDispatcher(TasksModel tasks, Consumer<List<Task>> executor) {
+		this.tasks = tasks;
+		this.executor = executor;
+		this.lock = new ReentrantLock();
+		this.scheduleChanged = lock.newCondition();
+		this.parkedUntil = NOT_PARKED;
+		this.lag = new LatencyHistogram();
+	}
+
+	/**
+	 * Start the dispatching thread.
+	 * @author ovoievodin
+	 */
+	public void start() {
+		isEnabled = true;
+		new Thread(this, "task-dispatcher").start();
+	}
+
+	/**
+	 * Request the dispatching thread to stop.
+	 * @author ovoievodin
+	 */
+	public void stop() {
+		isEnabled = false;
+		signal();
+	}
+
+	/**
+	 * Notify the dispatcher, that a new execution time was added to the schedule.
+	 * The dispatching thread is woken up only if the new time is before the one it is parked until.
+	 * @param executionDate execution time of the newly scheduled task.
+	 * @author ovoievodin
+	 */
+	public void onTaskScheduled(Date executionDate) {
+		lock.lock();
+		try {
+			if(executionDate.getTime() < parkedUntil) {
+				scheduleChanged.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void signal() {
+		lock.lock();
+		try {
+			scheduleChanged.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void run() {
+		System.out.println("Task scheduling started...");
+		lock.lock();
+		try {
+			while(isEnabled) {
+				final Date head = tasks.getNextExecutionDate();
+				if(head == null) {
+					parkedUntil = PARKED_INDEFINITELY;
+					scheduleChanged.await();
+					continue;
+				}
+				final long delay = head.getTime() - System.currentTimeMillis();
+				if(delay > 0) {
+					parkedUntil = head.getTime();
+					scheduleChanged.await(delay, TimeUnit.MILLISECONDS);
+					continue;
+				}
+				parkedUntil = NOT_PARKED;
+				final List<Task> dueTasks = tasks.pollDue(head);
+				if(dueTasks != null) {
+					lock.unlock(); // new tasks can be scheduled while we are dispatching.
+					try {
+						dispatch(head, dueTasks);
+					} finally {
+						lock.lock();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			parkedUntil = NOT_PARKED;
+			lock.unlock();
+		}
+		System.out.println("Scheduling job stopped.");
+	}
+
+	private void dispatch(Date scheduledDate, List<Task> dueTasks) {
+		final long lagMillis = System.currentTimeMillis() - scheduledDate.getTime();
+		lag.record(TimeUnit.MILLISECONDS.toNanos(lagMillis));
+		System.out.println("Dispatching " + dueTasks.size() + " task(s) scheduled at " + scheduledDate + ", lag: " + lagMillis + "ms");
+		try {
+			executor.accept(dueTasks);
+		} catch (RuntimeException e) {
+			System.err.println("Error dispatching tasks scheduled at " + scheduledDate + " :: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return lag between scheduled and actual dispatch time of every dispatched batch.
+	 */
+	public LatencyHistogram getLag() {
+		return lag;
+	}
+
+	public long getDispatchedBatches() {
+		return lag.snapshot().getCount();
+	}
+
+	public double getMaxLagMillis() {
+		return lag.snapshot().getMaxMillis();
+	}
+
+	/**
+	 * @return average lag between scheduled and actual dispatch time or 0, if nothing was dispatched yet.
+	 */
+	public double getAverageLagMillis() {
+		return lag.snapshot().getMeanMillis();
+	}
+}
@@ -0,0 +1,359 @@
+package def.server;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import def.metrics.LatencyHistogram;
+import def.taskmodel.Task;
+import def.taskmodel.TaskExecution;
+import def.taskmodel.TaskOutputChunk;
+
+/**
+ * Execution engine for the due tasks.
+ * Keeps the dispatching thread off the process spawning path:
+ * submitted tasks are launched by the bounded pool of launching threads,
+ * while the amount of simultaneously running processes is limited both globally and per task owner.
+ * Tasks over the limits wait for the free slot in the submission order.
+ * Finished processes are reaped asynchronously through {@link Process#onExit()},
+ * so no thread is blocked waiting for any process.
+ * <br>Every launched process is supervised: it's exit status is recorded as the {@link TaskExecution},
+ * and the process, running longer than the execution timeout, is terminated and, after the grace period, killed
+ * together with it's descendants. Timeouts are kept by the single supervising thread,
+ * so the cost of the supervision is a couple of small objects per process, not a thread per process.
+ * <br>Output of the processes is written to the files of the {@link ExecutionOutputStore}, if it is set, or discarded otherwise.
+ * Output files are deleted together with the execution, once it falls out of the latest finished ones.
+ * The supervising thread also checks the length of the output files of the running processes periodically:
+ * the process, which has written more, than the store allows, is terminated and killed the same way the timed out one is,
+ * and it's files are truncated to the limit, once it exits.
+ * @author ovoievodin
+ */
+public class TaskExecutionEngine {
+
+	private final int maxRunningProcesses;
+	private final int maxRunningProcessesPerOwner;
+	private final ExecutorService launcher;
+	private final long executionTimeoutMillis;
+	private final long killGraceMillis;
+	private final ScheduledThreadPoolExecutor supervisor;
+	private final AtomicLong executionIds;
+	private volatile ExecutionOutputStore outputStore;
+	/** Launched executions, which have not finished yet, by id. */
+	private final Map<Long, TaskExecution> runningExecutions;
+	/** Processes of the running executions, which output is stored, by execution id. */
+	private final Map<Long, Process> outputtingProcesses;
+
+	/** Tasks, waiting for the free slot. Guarded by this. */
+	private final Deque<Task> waiting;
+	/** Guarded by this. */
+	private int running;
+	/** Guarded by this. */
+	private final Map<Long, Integer> runningPerOwner;
+	/** Latest finished executions, oldest first. Guarded by this. */
+	private final Deque<TaskExecution> finished;
+	private final int finishedCapacity;
+	/** Amount of the finished executions by outcome. Guarded by this. */
+	private final long[] outcomes;
+
+	/** Time to spawn the process of the task. */
+	private final LatencyHistogram launchLatency;
+	/** Time from the process start until it's exit. */
+	private final LatencyHistogram executionDuration;
+
+	/**
+	 * @param launchThreadsAmount amount of threads, spawning the processes.
+	 * @param maxRunningProcesses maximal amount of processes running at the same time.
+	 * @param maxRunningProcessesPerOwner maximal amount of processes of the single task owner running at the same time.
+	 * @param executionTimeoutMillis time, the process is allowed to run, before it is terminated.
+	 * @param killGraceMillis time, the terminated process is given to exit, before it is killed forcibly.
+	 * @param finishedCapacity amount of the latest finished executions to keep.
+	 * @param outputCheckMillis period of checking the output length of the running processes.
+	 */
+	public TaskExecutionEngine(int launchThreadsAmount, int maxRunningProcesses, int maxRunningProcessesPerOwner,
+			long executionTimeoutMillis, long killGraceMillis, int finishedCapacity, long outputCheckMillis) {
+		this.maxRunningProcesses = maxRunningProcesses;
+		this.maxRunningProcessesPerOwner = maxRunningProcessesPerOwner;
+		this.executionTimeoutMillis = executionTimeoutMillis;
+		this.killGraceMillis = killGraceMillis;
+		this.finishedCapacity = finishedCapacity;
+		this.waiting = new ArrayDeque<>();
+		this.runningPerOwner = new HashMap<>();
+		this.finished = new ArrayDeque<>();
+		this.outcomes = new long[TaskExecution.Outcome.values().length];
+		this.executionIds = new AtomicLong();
+		this.runningExecutions = new ConcurrentHashMap<>();
+		this.outputtingProcesses = new ConcurrentHashMap<>();
+		this.launchLatency = new LatencyHistogram();
+		this.executionDuration = new LatencyHistogram();
+		this.supervisor = new ScheduledThreadPoolExecutor(1, runnable -> {
+			final Thread thread = new Thread(runnable, "task-supervisor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.supervisor.setRemoveOnCancelPolicy(true); // timeouts of the exited processes are not kept until they expire.
+		this.supervisor.scheduleWithFixedDelay(this::checkOutput, outputCheckMillis, outputCheckMillis, TimeUnit.MILLISECONDS);
+		final AtomicInteger threadsCounter = new AtomicInteger();
+		this.launcher = new ThreadPoolExecutor(
+				launchThreadsAmount,
+				launchThreadsAmount,
+				60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), // never longer, than maxRunningProcesses: tasks are queued only with a free slot.
+				runnable -> {
+					final Thread thread = new Thread(runnable, "task-launcher-" + threadsCounter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+	}
+
+	/**
+	 * Queue the tasks for execution and return immediately.
+	 * @param tasks tasks to execute.
+	 * @author ovoievodin
+	 */
+	public void submit(List<Task> tasks) {
+		final List<Task> launchable;
+		synchronized (this) {
+			waiting.addAll(tasks);
+			launchable = takeLaunchable();
+		}
+		launchAll(launchable);
+	}
+
+	public synchronized int getRunningAmount() {
+		return running;
+	}
+
+	public synchronized int getWaitingAmount() {
+		return waiting.size();
+	}
+
+	public LatencyHistogram getLaunchLatency() {
+		return launchLatency;
+	}
+
+	public LatencyHistogram getExecutionDuration() {
+		return executionDuration;
+	}
+
+	/**
+	 * @return amount of the executions, finished with the outcome.
+	 */
+	public synchronized long getFinishedAmount(TaskExecution.Outcome outcome) {
+		return outcomes[outcome.ordinal()];
+	}
+
+	/**
+	 * @return latest finished executions, oldest first.
+	 */
+	public synchronized List<TaskExecution> getFinishedExecutions() {
+		return new ArrayList<>(finished);
+	}
+
+	/**
+	 * @return executions, which are running now, and the latest finished ones.
+	 */
+	public List<TaskExecution> getExecutions() {
+		final List<TaskExecution> executions = getFinishedExecutions();
+		executions.addAll(runningExecutions.values());
+		return executions;
+	}
+
+	/**
+	 * @return true, if the execution was launched and has not finished yet.
+	 */
+	public boolean isRunning(long executionId) {
+		return runningExecutions.containsKey(executionId);
+	}
+
+	/**
+	 * Capture the output of the executions, launched from now on, to the store.
+	 * @param outputStore store of the output files, null -> output is discarded.
+	 */
+	public void setOutputStore(ExecutionOutputStore outputStore) {
+		this.outputStore = outputStore;
+	}
+
+	public ExecutionOutputStore getOutputStore() {
+		return outputStore;
+	}
+
+	public void shutdown() {
+		launcher.shutdownNow();
+		supervisor.shutdownNow();
+	}
+
+	/**
+	 * Take the waiting tasks, which fit into the limits, reserving the slots for them.
+	 */
+	private List<Task> takeLaunchable() {
+		final List<Task> launchable = new ArrayList<>();
+		final Iterator<Task> iterator = waiting.iterator();
+		while(running < maxRunningProcesses && iterator.hasNext()) {
+			final Task task = iterator.next();
+			final int ownerRunning = runningPerOwner.getOrDefault(task.getOwnerId(), 0);
+			if(ownerRunning < maxRunningProcessesPerOwner) {
+				iterator.remove();
+				running++;
+				runningPerOwner.put(task.getOwnerId(), ownerRunning + 1);
+				launchable.add(task);
+			}
+		}
+		return launchable;
+	}
+
+	private void launchAll(List<Task> launchable) {
+		for(Task task : launchable) {
+			launcher.execute(() -> launch(task));
+		}
+	}
+
+	private void launch(Task task) {
+		System.out.println("Executing task " + task);
+		final ExecutionOutputStore store = outputStore;
+		final TaskExecution execution = new TaskExecution(store != null ? store.nextExecutionId() : executionIds.incrementAndGet(), task);
+		final long launchStart = System.nanoTime();
+		try {
+			final ProcessBuilder processBuilder = new ProcessBuilder(tokenize(task.getTarget()));
+			if(store != null) {
+				processBuilder.redirectOutput(store.pathOf(execution.getId(), TaskOutputChunk.Source.STDOUT).toFile());
+				processBuilder.redirectError(store.pathOf(execution.getId(), TaskOutputChunk.Source.STDERR).toFile());
+			} else {
+				processBuilder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+				processBuilder.redirectError(ProcessBuilder.Redirect.DISCARD);
+			}
+			runningExecutions.put(execution.getId(), execution);
+			final Process process = processBuilder.start();
+			final long startNanos = System.nanoTime();
+			execution.onStarted(process.pid(), System.currentTimeMillis());
+			launchLatency.record(startNanos - launchStart);
+			final long launchMillis = TimeUnit.NANOSECONDS.toMillis(startNanos - launchStart);
+			System.out.println("Task " + task + " launched as process " + process.pid() + " in " + launchMillis + "ms");
+			if(store != null) {
+				outputtingProcesses.put(execution.getId(), process);
+			}
+			final ScheduledFuture<?> timeout = supervisor.schedule(() -> timeOut(execution, process), executionTimeoutMillis, TimeUnit.MILLISECONDS);
+			process.onExit().whenComplete((exited, error) -> {
+				timeout.cancel(false);
+				executionDuration.recordSince(startNanos);
+				if(store != null) {
+					outputtingProcesses.remove(execution.getId());
+					store.truncate(execution.getId());
+				}
+				onProcessExit(execution, process);
+			});
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Error executing the task: " + task + " :: " + e.getMessage());
+			execution.onLaunchFailed(System.currentTimeMillis());
+			release(execution);
+		}
+	}
+
+	private void timeOut(TaskExecution execution, Process process) {
+		if(!process.isAlive()) {
+			return;
+		}
+		System.err.println("Task " + execution.getTask() + " has run out of " + executionTimeoutMillis + "ms, terminating the process " + process.pid());
+		execution.onTimedOut();
+		terminate(execution, process);
+	}
+
+	/**
+	 * Terminate the processes, which have written more output, than the store allows.
+	 */
+	private void checkOutput() {
+		final ExecutionOutputStore store = outputStore;
+		if(store == null) {
+			return;
+		}
+		for(Map.Entry<Long, Process> entry : outputtingProcesses.entrySet()) {
+			final TaskExecution execution = runningExecutions.get(entry.getKey());
+			final Process process = entry.getValue();
+			if(execution == null || execution.isOutputExceeded() || !process.isAlive() || !store.isOutputExceeded(entry.getKey())) {
+				continue;
+			}
+			System.err.println("Task " + execution.getTask() + " has written more, than " + store.getMaxOutputBytes() + " bytes of output, terminating the process " + process.pid());
+			execution.onOutputExceeded();
+			terminate(execution, process);
+		}
+	}
+
+	/**
+	 * Ask the process to exit and kill it, if it has not exited within the grace period.
+	 */
+	private void terminate(TaskExecution execution, Process process) {
+		process.destroy();
+		supervisor.schedule(() -> kill(execution, process), killGraceMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void kill(TaskExecution execution, Process process) {
+		if(!process.isAlive()) {
+			return;
+		}
+		System.err.println("Task " + execution.getTask() + " has not exited in " + killGraceMillis + "ms after termination, killing the process " + process.pid());
+		process.descendants().forEach(ProcessHandle::destroyForcibly);
+		process.destroyForcibly();
+	}
+
+	private void onProcessExit(TaskExecution execution, Process process) {
+		execution.onExited(process.exitValue(), System.currentTimeMillis());
+		System.out.println("Task " + execution.getTask() + " finished with exit code " + process.exitValue() + " :: " + execution.getOutcome());
+		release(execution);
+	}
+
+	/**
+	 * Record the finished execution, free it's slot and launch the waiting tasks, which fit into it.
+	 */
+	private void release(TaskExecution execution) {
+		final Task task = execution.getTask();
+		final List<Task> launchable;
+		TaskExecution dropped = null;
+		synchronized (this) {
+			outcomes[execution.getOutcome().ordinal()]++;
+			finished.addLast(execution);
+			runningExecutions.remove(execution.getId());
+			if(finished.size() > finishedCapacity) {
+				dropped = finished.removeFirst();
+			}
+			running--;
+			final int ownerRunning = runningPerOwner.get(task.getOwnerId()) - 1;
+			if(ownerRunning == 0) {
+				runningPerOwner.remove(task.getOwnerId());
+			} else {
+				runningPerOwner.put(task.getOwnerId(), ownerRunning);
+			}
+			launchable = takeLaunchable();
+		}
+		launchAll(launchable);
+		final ExecutionOutputStore store = outputStore;
+		if(dropped != null && store != null) {
+			store.delete(dropped.getId());
+		}
+	}
+
+	/**
+	 * Split the target the same way {@link Runtime#exec(String)} does.
+	 */
+	private static String[] tokenize(String target) {
+		final StringTokenizer tokenizer = new StringTokenizer(target);
+		final String[] command = new String[tokenizer.countTokens()];
+		for(int i = 0; tokenizer.hasMoreTokens(); i++) {
+			command[i] = tokenizer.nextToken();
+		}
+		return command;
+	}
+}
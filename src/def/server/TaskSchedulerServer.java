@@ -1,38 +1,109 @@
 package def.server;
 
+import static def.utils.Preferences.ADMISSION_HOST_CALLS_BURST;
+import static def.utils.Preferences.ADMISSION_HOST_CALLS_PER_SECOND;
+import static def.utils.Preferences.ADMISSION_MAX_SCHEDULED_TASKS_PER_OWNER;
+import static def.utils.Preferences.ADMISSION_MAX_TRACKED_BUCKETS;
+import static def.utils.Preferences.ADMISSION_OWNER_TASKS_BURST;
+import static def.utils.Preferences.ADMISSION_OWNER_TASKS_PER_SECOND;
+import static def.utils.Preferences.BINARY_INGESTION_MAX_FRAME_BYTES;
+import static def.utils.Preferences.BINARY_INGESTION_MAX_PENDING_BYTES;
+import static def.utils.Preferences.BINARY_INGESTION_PORT;
 import static def.utils.Preferences.BOUNDING_PORT;
+import static def.utils.Preferences.CLIENT_RESPONSE_TIMEOUT_MILLIS;
+import static def.utils.Preferences.EXECUTION_HISTORY_CAPACITY;
+import static def.utils.Preferences.EXECUTION_KILL_GRACE_MILLIS;
+import static def.utils.Preferences.EXECUTION_LAUNCH_THREADS_AMOUNT;
+import static def.utils.Preferences.EXECUTION_MAX_OUTPUT_BYTES;
+import static def.utils.Preferences.EXECUTION_OUTPUT_CHECK_MILLIS;
+import static def.utils.Preferences.EXECUTION_OUTPUT_DIRECTORY;
+import static def.utils.Preferences.EXECUTION_TIMEOUT_MILLIS;
+import static def.utils.Preferences.FENCING_LOCK_FILENAME;
+import static def.utils.Preferences.MAX_QUERY_PAGE_SIZE;
+import static def.utils.Preferences.MAX_RUNNING_PROCESSES;
+import static def.utils.Preferences.MAX_OUTPUT_CHUNK_SIZE;
+import static def.utils.Preferences.MAX_RUNNING_PROCESSES_PER_OWNER;
+import static def.utils.Preferences.METRICS_OBJECT_NAME;
 import static def.utils.Preferences.REMOTE_LOOKUP_SERVER_TARGET;
-import static def.utils.Preferences.TASK_LOOKUP_FREQUENCY;
+import static def.utils.Preferences.REPLICATION_FOLLOWER_TIMEOUT_MILLIS;
+import static def.utils.Preferences.REPLICATION_LOG_CAPACITY;
+import static def.utils.Preferences.REPLICATION_POLL_MILLIS;
+import static def.utils.Preferences.SHARD_DIRECTORY_PREFIX;
+import static def.utils.Preferences.SOURCE_MODEL_FILNAME;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 import java.rmi.AlreadyBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.rmi.server.ExportException;
+import java.rmi.server.RemoteServer;
+import java.rmi.server.ServerNotActiveException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.Queue;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
+import def.metrics.JmxMetricsRegistry;
+import def.metrics.LatencyHistogram;
+import def.metrics.MetricsRegistry;
+import def.remote.AdmissionRejectedException;
+import def.remote.RemoteReplicationSource;
 import def.remote.RemoteTaskSchedulerClient;
 import def.remote.RemoteTaskSchedulerServer;
 import def.taskmodel.Task;
+import def.taskmodel.TaskExecution;
+import def.taskmodel.TaskOutputChunk;
 import def.taskmodel.TasksModel;
-import def.taskmodel.source.FileModelProvider;
+import def.taskmodel.TasksModelChange;
+import def.taskmodel.TasksPage;
+import def.taskmodel.TasksQuery;
+import def.taskmodel.source.JournalModelProvider;
 import def.taskmodel.source.TasksModelProvider;
+import def.utils.ShardUtils;
 
 /**
  * Basic RMI task scheduling server.
  * Allows remote clients to add tasks to the schedule,
  * which will be executed at the specified time.
+ * <br>Can also run as a single shard of the cluster, keeping only the tasks, owned by it (see {@link ShardUtils}):
+ * the shard is bound under it's own name, so the clients find all of the shards in the same registry.
+ * <br>Standby replica of the server streams it's changes (see {@link RemoteReplicationSource}) and takes over,
+ * once the server's {@link FencingLock} is released.
+ * <br>Task submissions are admitted by the {@link AdmissionController}, so the single client can not flood the server.
+ * <br>Metrics of the server and it's components are exposed over JMX, see {@link #registerMetrics(MetricsRegistry)}.
  * @author ovoievodin
  */
-public class TaskSchedulerServer implements RemoteTaskSchedulerServer {
+public class TaskSchedulerServer implements RemoteTaskSchedulerServer, RemoteReplicationSource {
+	
+	private static final String FOLLOWER_ARGUMENT = "--follower";
+	private static final String BINARY_INGESTION_ARGUMENT = "--binary";
+	
+	/**
+	 * Remote methods, which call latency is measured.
+	 */
+	private enum RemoteCall {
+		ADD_TASK, ADD_TASKS, GET_TASKS, QUERY_TASKS, REMOVE_TASK, REMOVE_TASKS, FETCH_CHANGES, REGISTER_CLIENT, UNREGISTER_CLIENT,
+		GET_TASK_EXECUTIONS, READ_TASK_OUTPUT, GET_TASK, REMOVE_TASK_BY_ID;
+		
+		private String metricName() {
+			return "rmi." + name().toLowerCase(Locale.ROOT);
+		}
+	}
 	
 	/**
 	 * The map of tasks, which are needed to be scheduled.
@@ -45,156 +116,446 @@ public class TaskSchedulerServer implements RemoteTaskSchedulerServer {
 	private TasksModelProvider modelProvider;
 	
 	/**
-	 * Logged-in clients set.
+	 * Logged-in clients and their outbound notification queues.
+	 */
+	private ClientNotifier clients;
+	
+	private TaskDispatcher dispatcher;
+	
+	private TaskExecutionEngine executionEngine;
+	
+	/**
+	 * Latest changes, streamed to the standby replica.
+	 */
+	private ReplicationLog replicationLog;
+	
+	private final AdmissionController admission;
+	
+	/**
+	 * Optional NIO endpoint of the batch producers, null until started.
+	 */
+	private BinaryIngestionEndpoint ingestionEndpoint;
+	
+	private final int shardIndex;
+	
+	private final int shardsAmount;
+	
+	/**
+	 * Sequence of the task ids. Shard gives out only the ids of it's own residue class, see {@link ShardUtils#shardOfTask(long, int)}.
 	 */
-	private Set<RemoteTaskSchedulerClient> clients;
+	private final AtomicLong taskIds;
 	
-	private boolean isSchedulingJobEnabled;
+	private final Map<RemoteCall, LatencyHistogram> callLatencies;
 	
 	public TaskSchedulerServer() {
-		modelProvider = new FileModelProvider();
-		modelProvider.load();
+		this(new JournalModelProvider());
+	}
+	
+	/**
+	 * @param modelProvider source of the tasks model, which is going to be loaded and used for persistence.
+	 */
+	public TaskSchedulerServer(TasksModelProvider modelProvider) {
+		this(modelProvider, 0, 1);
+	}
+	
+	/**
+	 * @param modelProvider source of the tasks model, which is going to be loaded and used for persistence.
+	 * @param shardIndex index of the shard, this server is.
+	 * @param shardsAmount total amount of shards in the cluster, 1 -> not sharded.
+	 */
+	public TaskSchedulerServer(TasksModelProvider modelProvider, int shardIndex, int shardsAmount) {
+		this(modelProvider, shardIndex, shardsAmount, Paths.get(""));
+	}
+	
+	/**
+	 * @param modelProvider source of the tasks model, which is going to be loaded and used for persistence.
+	 * @param shardIndex index of the shard, this server is.
+	 * @param shardsAmount total amount of shards in the cluster, 1 -> not sharded.
+	 * @param dataDirectory directory, the output of the task executions is kept in.
+	 */
+	public TaskSchedulerServer(TasksModelProvider modelProvider, int shardIndex, int shardsAmount, Path dataDirectory) {
+		this.shardIndex = shardIndex;
+		this.shardsAmount = shardsAmount;
+		this.modelProvider = modelProvider;
+		this.callLatencies = new EnumMap<>(RemoteCall.class);
+		for(RemoteCall call : RemoteCall.values()) {
+			callLatencies.put(call, new LatencyHistogram());
+		}
+		if(modelProvider.getModel() == null) {
+			modelProvider.load(); // otherwise the model is already taken over from the replica.
+		}
 		tasks = modelProvider.getModel();
-		clients = new HashSet<>();
+		taskIds = new AtomicLong(tasks.getLastTaskId() / shardsAmount);
+		clients = new ClientNotifier(tasks);
+		executionEngine = new TaskExecutionEngine(EXECUTION_LAUNCH_THREADS_AMOUNT, MAX_RUNNING_PROCESSES, MAX_RUNNING_PROCESSES_PER_OWNER,
+				EXECUTION_TIMEOUT_MILLIS, EXECUTION_KILL_GRACE_MILLIS, EXECUTION_HISTORY_CAPACITY, EXECUTION_OUTPUT_CHECK_MILLIS);
+		try {
+			executionEngine.setOutputStore(new ExecutionOutputStore(dataDirectory.resolve(EXECUTION_OUTPUT_DIRECTORY), shardIndex, shardsAmount,
+					EXECUTION_HISTORY_CAPACITY, EXECUTION_MAX_OUTPUT_BYTES));
+		} catch (IOException e) {
+			System.err.println("Task output directory opening error, the output is discarded: " + e.getMessage());
+		}
+		replicationLog = new ReplicationLog(REPLICATION_LOG_CAPACITY, REPLICATION_FOLLOWER_TIMEOUT_MILLIS, tasks.getVersion());
+		dispatcher = new TaskDispatcher(tasks, this::execute);
+		tasks.addChangeListener(clients::publish);
+		tasks.addChangeListener(replicationLog::append);
+		admission = new AdmissionController(ADMISSION_OWNER_TASKS_PER_SECOND, ADMISSION_OWNER_TASKS_BURST,
+				ADMISSION_HOST_CALLS_PER_SECOND, ADMISSION_HOST_CALLS_BURST, ADMISSION_MAX_SCHEDULED_TASKS_PER_OWNER, ADMISSION_MAX_TRACKED_BUCKETS);
+		admission.track(tasks);
 	}
 	
 	@Override
-	public synchronized void addTask(Task newTask) throws RemoteException {
-		final ConcurrentHashMap<Date, List<Task>> tasksData = tasks.getData(); // less boilerplate.
-		if(tasksData.containsKey(newTask.getExecutionDate())) {
-			tasksData.get((newTask.getExecutionDate())).add(newTask);
-		} else {
-			final List<Task> newTasksList = new ArrayList<>();
-			newTasksList.add(newTask);
-			tasksData.put(newTask.getExecutionDate(), newTasksList);
+	public long addTask(Task newTask) throws RemoteException {
+		final long start = System.nanoTime();
+		try {
+			if(!isOwned(newTask)) {
+				throw new RemoteException("Task " + newTask + " belongs to the shard " + ShardUtils.shardOf(newTask, shardsAmount)
+						+ ", not to the shard " + shardIndex + " of " + shardsAmount);
+			}
+			admission.admit(clientHost(), Collections.singletonList(newTask));
+			newTask.setId(nextTaskId());
+			tasks.add(newTask);
+			dispatcher.onTaskScheduled(newTask.getExecutionDate());
+			saveModel();
+			System.out.println("New task #" + newTask.getId() + ": " + newTask + " added.");
+			return newTask.getId();
+		} finally {
+			recordCall(RemoteCall.ADD_TASK, start);
 		}
-		tasks.getTasksSchedule().offer(newTask.getExecutionDate());
-		notifyClients();
-		saveModel();
-		System.out.println("New task: " + newTask + " added.");
+	}
+	
+	@Override
+	public List<Boolean> addTasks(Collection<Task> newTasks) throws RemoteException {
+		final long start = System.nanoTime();
+		try {
+			final List<Boolean> results = addTasks(clientHost(), newTasks);
+			saveModel();
+			return results;
+		} finally {
+			recordCall(RemoteCall.ADD_TASKS, start);
+		}
+	}
+	
+	/**
+	 * Add the tasks, submitted by the client of the specified host, through RMI or through the {@link BinaryIngestionEndpoint}.
+	 * Added tasks get their ids. The change is durable only after the following {@link #saveModel()},
+	 * so the caller may make several changes and wait for them at once.
+	 * @return true for every added task, false for the task of the other shard.
+	 * @throws AdmissionRejectedException if the submission is not admitted, nothing is added then.
+	 */
+	List<Boolean> addTasks(String clientHost, Collection<Task> newTasks) throws AdmissionRejectedException {
+		final List<Task> ownedTasks = new ArrayList<>(newTasks.size());
+		final List<Boolean> results = new ArrayList<>(newTasks.size());
+		Date earliest = null;
+		for(Task task : newTasks) {
+			final boolean isOwned = isOwned(task);
+			results.add(isOwned); // tasks of the other shards are rejected.
+			if(!isOwned) {
+				continue;
+			}
+			ownedTasks.add(task);
+			if(earliest == null || task.getExecutionTime() < earliest.getTime()) {
+				earliest = task.getExecutionDate();
+			}
+		}
+		admission.admit(clientHost, ownedTasks);
+		for(Task task : ownedTasks) {
+			task.setId(nextTaskId());
+		}
+		tasks.addAll(ownedTasks);
+		if(earliest != null) {
+			dispatcher.onTaskScheduled(earliest);
+		}
+		System.out.println(ownedTasks.size() + " new tasks added.");
+		return results;
 	}
 	
 	@Override
 	public TasksModel getTasks() throws RemoteException {
-		return this.tasks;
+		final long start = System.nanoTime();
+		try {
+			return this.tasks;
+		} finally {
+			recordCall(RemoteCall.GET_TASKS, start); // the model itself is serialized after the return, so only the call is measured.
+		}
+	}
+	
+	@Override
+	public TasksPage queryTasks(TasksQuery query) throws RemoteException {
+		final long start = System.nanoTime();
+		try {
+			return query(query);
+		} finally {
+			recordCall(RemoteCall.QUERY_TASKS, start);
+		}
+	}
+	
+	TasksPage query(TasksQuery query) {
+		return tasks.query(query, MAX_QUERY_PAGE_SIZE);
+	}
+	
+	@Override
+	public void removeTask(Task task) throws RemoteException {
+		final long start = System.nanoTime();
+		try {
+			tasks.remove(task);
+			saveModel();
+			System.out.println("Task: " + task + " removed from schedule.");
+		} finally {
+			recordCall(RemoteCall.REMOVE_TASK, start);
+		}
+	}
+	
+	@Override
+	public boolean removeTask(long taskId) throws RemoteException {
+		final long start = System.nanoTime();
+		try {
+			final Task removed = tasks.remove(taskId);
+			if(removed == null) {
+				return false;
+			}
+			saveModel();
+			System.out.println("Task #" + taskId + ": " + removed + " removed from schedule.");
+			return true;
+		} finally {
+			recordCall(RemoteCall.REMOVE_TASK_BY_ID, start);
+		}
+	}
+	
+	/**
+	 * Remove the tasks by their ids. The change is durable only after the following {@link #saveModel()}.
+	 * @return true for every removed task, false for the one, which is not scheduled (anymore).
+	 */
+	boolean[] removeTasks(long[] taskIds) {
+		final boolean[] results = new boolean[taskIds.length];
+		int removedAmount = 0;
+		for(int i = 0; i < taskIds.length; i++) {
+			results[i] = tasks.remove(taskIds[i]) != null;
+			if(results[i]) {
+				removedAmount++;
+			}
+		}
+		System.out.println(removedAmount + " of " + taskIds.length + " tasks removed from schedule.");
+		return results;
 	}
 	
 	@Override
-	public synchronized void removeTask(Task task) throws RemoteException {
-		tasks.remove(task);
-		notifyClients();
-		saveModel();
-		System.out.println("Task: " + task + " removed from schedule.");
+	public Task getTask(long taskId) throws RemoteException {
+		final long start = System.nanoTime();
+		try {
+			return tasks.getTask(taskId);
+		} finally {
+			recordCall(RemoteCall.GET_TASK, start);
+		}
+	}
+	
+	@Override
+	public List<Boolean> removeTasks(Collection<Task> tasksToRemove) throws RemoteException {
+		final long start = System.nanoTime();
+		try {
+			final List<Boolean> results = tasks.removeAll(tasksToRemove);
+			saveModel();
+			System.out.println(Collections.frequency(results, Boolean.TRUE) + " of " + results.size() + " tasks removed from schedule.");
+			return results;
+		} finally {
+			recordCall(RemoteCall.REMOVE_TASKS, start);
+		}
+	}
+	
+	@Override
+	public List<TaskExecution> getTaskExecutions() throws RemoteException {
+		final long start = System.nanoTime();
+		try {
+			return executionEngine.getExecutions();
+		} finally {
+			recordCall(RemoteCall.GET_TASK_EXECUTIONS, start);
+		}
+	}
+	
+	@Override
+	public TaskOutputChunk readTaskOutput(long executionId, TaskOutputChunk.Source source, long offset, int maxLength) throws RemoteException {
+		final long start = System.nanoTime();
+		try {
+			final ExecutionOutputStore outputStore = executionEngine.getOutputStore();
+			if(outputStore == null) {
+				throw new RemoteException("Output of the task executions is not captured by this server.");
+			}
+			final boolean isFinished = !executionEngine.isRunning(executionId); // checked first, so the finished output is read whole.
+			return outputStore.read(executionId, source, offset, Math.min(maxLength, MAX_OUTPUT_CHUNK_SIZE), isFinished);
+		} catch (NoSuchFileException e) {
+			throw new RemoteException("No output of the execution #" + executionId + " is kept.");
+		} catch (IOException e) {
+			throw new RemoteException("Error reading the output of the execution #" + executionId, e);
+		} finally {
+			recordCall(RemoteCall.READ_TASK_OUTPUT, start);
+		}
+	}
+	
+	@Override
+	public List<TasksModelChange> fetchChanges(long afterVersion, long maxWaitMillis) throws RemoteException {
+		final long start = System.nanoTime();
+		try {
+			return replicationLog.fetch(afterVersion, Math.min(maxWaitMillis, REPLICATION_POLL_MILLIS));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RemoteException("Interrupted waiting for the model changes.", e);
+		} finally {
+			recordCall(RemoteCall.FETCH_CHANGES, start);
+		}
 	}
 	
 	@Override
 	public synchronized void registerClient(RemoteTaskSchedulerClient client) throws RemoteException {
-		if(!this.clients.contains(client)){
-			client.assignId(clients.size()); // new client will have maximal id.
-			this.clients.add(client);
-			System.out.println("Client logged in: " + client);	
-		} else {
-			System.out.println("Client logging failed: " + client + " already logged in.");
+		final long start = System.nanoTime();
+		try {
+			if(!this.clients.hasClient(client)){
+				client.assignId(clients.getClientsAmount()); // new client will have maximal id.
+				this.clients.addClient(client);
+				System.out.println("Client logged in: " + client);	
+			} else {
+				System.out.println("Client logging failed: " + client + " already logged in.");
+			}
+		} finally {
+			recordCall(RemoteCall.REGISTER_CLIENT, start);
 		}
 	}
 	
 	@Override
 	public synchronized void unRegisterClient(RemoteTaskSchedulerClient client) throws RemoteException {
-		this.clients.remove(client);
-		System.out.println("Client logged out: " + client);
+		final long start = System.nanoTime();
+		try {
+			this.clients.removeClient(client);
+			System.out.println("Client logged out: " + client);
+		} finally {
+			recordCall(RemoteCall.UNREGISTER_CLIENT, start);
+		}
 	}
 	
-	private void saveModel() {
-		modelProvider.save();
+	public AdmissionController getAdmissionController() {
+		return admission;
 	}
 	
 	/**
-	 * Notify all clients about the tasks model update.
+	 * Start accepting the pipelined binary requests of the batch producers next to RMI, see {@link BinaryIngestionEndpoint}.
+	 * @param address address to listen at, port 0 -> any free port.
+	 * @return started endpoint, which is stopped together with the scheduling.
+	 * @throws IOException if the address can not be bound.
 	 * @author ovoievodin
 	 */
-	private void notifyClients() {
-		for (RemoteTaskSchedulerClient client : clients) {
-			try {
-				client.updateTasksModel(tasks);	
-			} catch (RemoteException e) {
-				System.err.println("Error updating clients task model " + client);
-			}
+	public synchronized BinaryIngestionEndpoint startBinaryIngestion(InetSocketAddress address) throws IOException {
+		if(ingestionEndpoint == null) {
+			ingestionEndpoint = new BinaryIngestionEndpoint(this, address, BINARY_INGESTION_MAX_FRAME_BYTES, BINARY_INGESTION_MAX_PENDING_BYTES);
+			ingestionEndpoint.start();
+			System.out.println("Binary ingestion endpoint is listening at " + ingestionEndpoint.getAddress());
 		}
+		return ingestionEndpoint;
 	}
 	
 	/**
-	 * Method for starting the task scheduling process.
-	 * @author ovoievodin
+	 * @return host of the client, making the current remote call, or null, if the server is called locally.
 	 */
-	private void startScheduling() {
-		System.out.println("Task scheduling started...");
-		final ConcurrentHashMap<Date, List<Task>> tasksData = tasks.getData(); // less boilerplate.
-		final Queue<Date> schedule = tasks.getTasksSchedule();
-		this.isSchedulingJobEnabled = true;
-		new Thread(new Runnable() {
-			@Override
-			public void run() {
-				while(isSchedulingJobEnabled) {
-					if(isNeededToCheckTask()) {
-						if(tasksData.containsKey(schedule.peek()) && isNeededToExecuteNow(schedule.peek())) {
-							final Date executionDate = schedule.poll();
-							execute(tasksData.get(executionDate));
-							tasksData.remove(executionDate);
-							notifyClients();
-						}
-					}
-				}
-				System.out.println("Scheduling job stopped.");
-			}
-		}).start();
+	private static String clientHost() {
+		try {
+			return RemoteServer.getClientHost();
+		} catch (ServerNotActiveException e) {
+			return null;
+		}
+	}
+	
+	private void recordCall(RemoteCall call, long startNanos) {
+		callLatencies.get(call).recordSince(startNanos);
 	}
 	
 	/**
-	 * Kill the task scheduling job.
+	 * Register the metrics of the server and it's components.
+	 * <li>Gauges: schedule size, time to the next due task (-1, if nothing is scheduled), connected clients, running and waiting processes,
+	 * finished executions by outcome, admitted, throttled (over the rate) and rejected (over the quota) submissions.</li>
+	 * <li>Latencies: dispatch lag, process launch and execution duration, notification fan-out and delivery, persistence writes and every remote method call.</li>
+	 * @param registry destination of the metrics.
 	 * @author ovoievodin
 	 */
-	public void stopScheduling() {
-		System.out.println("Scheduling job shutdown requested.");
-		this.isSchedulingJobEnabled = false;
+	public void registerMetrics(MetricsRegistry registry) {
+		registry.register("schedule.tasks", () -> tasks.getTasksAmount());
+		registry.register("schedule.millis_to_next_due", () -> {
+			final Date next = tasks.getNextExecutionDate();
+			return next == null ? -1L : Math.max(0L, next.getTime() - System.currentTimeMillis());
+		});
+		registry.register("schedule.version", tasks::getVersion);
+		registry.register("clients.connected", () -> clients.getClientsAmount());
+		registry.register("execution.running", () -> executionEngine.getRunningAmount());
+		registry.register("execution.waiting", () -> executionEngine.getWaitingAmount());
+		for(TaskExecution.Outcome outcome : TaskExecution.Outcome.values()) {
+			if(outcome != TaskExecution.Outcome.RUNNING) {
+				registry.register("execution." + outcome.name().toLowerCase(Locale.ROOT), () -> executionEngine.getFinishedAmount(outcome));
+			}
+		}
+		registry.register("admission.admitted", admission::getAdmittedAmount);
+		registry.register("admission.throttled", admission::getThrottledAmount);
+		registry.register("admission.rejected", admission::getRejectedAmount);
+		registry.register("dispatch.lag", dispatcher.getLag());
+		registry.register("execution.launch", executionEngine.getLaunchLatency());
+		registry.register("execution.duration", executionEngine.getExecutionDuration());
+		registry.register("notification.fan_out", clients.getFanOutLatency());
+		registry.register("notification.delivery", clients.getDeliveryLatency());
+		registry.register("persistence.write", modelProvider.getWriteLatency());
+		for(Map.Entry<RemoteCall, LatencyHistogram> callLatency : callLatencies.entrySet()) {
+			registry.register(callLatency.getKey().metricName(), callLatency.getValue());
+		}
+		final BinaryIngestionEndpoint endpoint = ingestionEndpoint;
+		if(endpoint != null) {
+			endpoint.registerMetrics(registry);
+		}
 	}
 	
 	/**
-	 * Iterate over the tasks list and execute each of them.
-	 * @param tasksList source tasks list to execute.
-	 * @author ovoievodin
+	 * Hand the due tasks over to the execution engine, once the replica knows they are taken out of the schedule,
+	 * so it would not execute them again after the takeover.
 	 */
-	private void execute(List<Task> tasksList) {
-		for (Task task : tasksList) {
-			System.out.println("Executing task " + task);	
-			try {
-				java.lang.Runtime.getRuntime().exec(task.getTarget());
-			} catch (IOException e) {
-				System.err.println("Error executing the task: " + task + " :: " + e.getMessage());
-			}
+	private void execute(List<Task> dueTasks) {
+		try {
+			replicationLog.awaitReplicated(tasks.getVersion());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
+		executionEngine.submit(dueTasks);
+	}
+	
+	private boolean isOwned(Task task) {
+		return shardsAmount == 1 || ShardUtils.shardOf(task, shardsAmount) == shardIndex;
+	}
+	
+	private long nextTaskId() {
+		return taskIds.incrementAndGet() * shardsAmount + shardIndex;
+	}
+	
+	/**
+	 * Wait until every change, made before the call, is durable.
+	 */
+	void saveModel() {
+		modelProvider.save();
 	}
 	
 	/**
-	 * Determine, if the task is needed to be executed in the current moment in time, or it is out-dated.
-	 * @param taskExecutionDate the source task execution date.
-	 * @return true -> need to be executed now or in the past<br> 
-	 *         false -> execution is not needed currently(will be in the future).
+	 * Method for starting the task scheduling process.
 	 * @author ovoievodin
 	 */
-	private boolean isNeededToExecuteNow(Date taskExecutionDate) {
-		final Date now = Calendar.getInstance().getTime();
-		return taskExecutionDate.before(now) || taskExecutionDate.equals(now);
+	private void startScheduling() {
+		dispatcher.start();
 	}
 	
 	/**
-	 * Determine if it is needed to perform task execution time checking.
-	 * @return true -> if the tasks queue is <b>NOT</b> empty, 
-	 * and current system time is eligible to check.<br>
-	 * false -> otherwise.
+	 * Kill the task scheduling job.
 	 * @author ovoievodin
 	 */
-	private boolean isNeededToCheckTask() {
-		return !tasks.isEmpty() && ((System.currentTimeMillis() / 1000L) % TASK_LOOKUP_FREQUENCY == 0);
+	public void stopScheduling() {
+		System.out.println("Scheduling job shutdown requested.");
+		dispatcher.stop();
+		synchronized (this) {
+			if(ingestionEndpoint != null) {
+				ingestionEndpoint.stop();
+				ingestionEndpoint = null;
+			}
+		}
 	}
 	
 	/**
@@ -202,24 +563,94 @@ public class TaskSchedulerServer implements RemoteTaskSchedulerServer {
 	 * <li>create and export scheduler stub object
 	 * <li>create RMI registry.
 	 * <li>bind the created stub to the registry.
+	 * Shard uses the registry, already created by another shard on the same host,
+	 * and replaces the binding, left by it's own previous run.
 	 * @throws RemoteException
 	 * @throws AlreadyBoundException
 	 * @author ovoievodin
 	 */
 	private void initServer() throws RemoteException, AlreadyBoundException {
 		RemoteTaskSchedulerServer stub = (RemoteTaskSchedulerServer) UnicastRemoteObject.exportObject(this, 0);
-		Registry registry = LocateRegistry.createRegistry(BOUNDING_PORT);
-		registry.bind(REMOTE_LOOKUP_SERVER_TARGET, stub);
+		if(shardsAmount == 1) {
+			Registry registry = LocateRegistry.createRegistry(BOUNDING_PORT);
+			registry.bind(REMOTE_LOOKUP_SERVER_TARGET, stub);
+		} else {
+			Registry registry;
+			try {
+				registry = LocateRegistry.createRegistry(BOUNDING_PORT);
+			} catch (ExportException e) {
+				registry = LocateRegistry.getRegistry(BOUNDING_PORT);
+			}
+			registry.rebind(ShardUtils.shardLookupName(shardIndex, shardsAmount), stub);
+			System.out.println("Shard " + shardIndex + " of " + shardsAmount + " bound.");
+		}
+		final JmxMetricsRegistry metrics = new JmxMetricsRegistry();
+		registerMetrics(metrics);
+		metrics.export(shardsAmount == 1 ? METRICS_OBJECT_NAME : METRICS_OBJECT_NAME + ",shard=" + shardIndex);
 		System.out.println("Server initialization complete!");
 	}
 	
+	/**
+	 * @param args none -> single server, [shard index, shards amount] -> shard of the cluster,
+	 * keeping it's model and journal in it's own directory.
+	 * Leading --follower -> standby replica of the server/shard, started in the same directory,
+	 * which takes over, once the primary process is gone.
+	 * Leading --binary -> accept the binary requests of the batch producers as well,
+	 * at the port {@link def.utils.Preferences#BINARY_INGESTION_PORT} + shard index.
+	 */
 	public static void main(String[] args) {
+		if(System.getProperty("sun.rmi.transport.tcp.responseTimeout") == null) {
+			// hung client should fail the notification and get evicted, instead of blocking the notifier forever.
+			System.setProperty("sun.rmi.transport.tcp.responseTimeout", String.valueOf(CLIENT_RESPONSE_TIMEOUT_MILLIS));
+		}
+		boolean isFollower = false;
+		boolean isBinaryIngestion = false;
+		int optionsAmount = 0;
+		for(; optionsAmount < args.length && args[optionsAmount].startsWith("--"); optionsAmount++) {
+			if(FOLLOWER_ARGUMENT.equals(args[optionsAmount])) {
+				isFollower = true;
+			} else if(BINARY_INGESTION_ARGUMENT.equals(args[optionsAmount])) {
+				isBinaryIngestion = true;
+			} else {
+				System.err.println("Unknown option " + args[optionsAmount]);
+				return;
+			}
+		}
+		final String[] shardArgs = Arrays.copyOfRange(args, optionsAmount, args.length);
 		try {
-			final TaskSchedulerServer server = new TaskSchedulerServer();
+			int shardIndex = 0;
+			int shardsAmount = 1;
+			Path dataDirectory = Paths.get("");
+			if(shardArgs.length >= 2) {
+				shardIndex = Integer.parseInt(shardArgs[0]);
+				shardsAmount = Integer.parseInt(shardArgs[1]);
+				if(shardIndex < 0 || shardIndex >= shardsAmount) {
+					System.err.println("Shard index " + shardIndex + " is out of [0, " + shardsAmount + ")");
+					return;
+				}
+				dataDirectory = Files.createDirectories(Paths.get(SHARD_DIRECTORY_PREFIX + shardIndex));
+			}
+			final FencingLock fencingLock = new FencingLock(dataDirectory.resolve(FENCING_LOCK_FILENAME));
+			final JournalModelProvider modelProvider = new JournalModelProvider(dataDirectory.resolve(SOURCE_MODEL_FILNAME).toString());
+			if(isFollower) {
+				final String primaryLookupName = shardsAmount == 1 ? REMOTE_LOOKUP_SERVER_TARGET : ShardUtils.shardLookupName(shardIndex, shardsAmount);
+				modelProvider.adopt(new ReplicationFollower(primaryLookupName, fencingLock).followUntilPromoted());
+			} else if(!fencingLock.tryAcquire()) {
+				System.err.println("Another scheduler process holds the " + FENCING_LOCK_FILENAME + ", start this one with " + FOLLOWER_ARGUMENT);
+				return;
+			}
+			final TaskSchedulerServer server = new TaskSchedulerServer(modelProvider, shardIndex, shardsAmount, dataDirectory);
+			if(isBinaryIngestion) {
+				server.startBinaryIngestion(new InetSocketAddress(BINARY_INGESTION_PORT + shardIndex));
+			}
 			server.initServer();
 			server.startScheduling();
-		} catch(RemoteException | AlreadyBoundException ex) {
+			System.out.println("Scheduling as the primary at epoch " + fencingLock.getEpoch());
+		} catch(IOException | AlreadyBoundException | NumberFormatException ex) {
 			System.err.println("Server initialization|scheduling error: [" + ex.getMessage() + "]");
+		} catch(UncheckedIOException ex) {
+			System.err.println("Server initialization error: [" + ex.getMessage() + ": " + ex.getCause().getMessage() + "]");
+			System.exit(1); // the model on disk must be fixed first, nothing is served meanwhile.
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,147 @@
+package def.taskmodel;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+
+/**
+ * Recurrence, defined by the 5-field cron expression: "minute hour day-of-month month day-of-week".
+ * Every field is "*", a value, a range "a-b", a step "* /n" or "a-b/n", or a comma separated list of them.
+ * Day of week is 0-7, both 0 and 7 stand for Sunday.
+ * As in cron, when both day fields are restricted, the day matching any of them is taken.
+ * Evaluated in the local time zone of the scheduler.
+ * @author ovoievodin
+ */
+public final class CronRecurrence implements Recurrence {
+
+	private static final long serialVersionUID = 2376409185436017392L;
+
+	/**
+	 * Expression, which has no occurrence in so many years (e.g. "0 0 30 2 *"), never fires.
+	 */
+	private static final int MAX_SEARCH_YEARS = 5;
+
+	private final String spec;
+	private final long minutes;
+	private final long hours;
+	private final long daysOfMonth;
+	private final long months;
+	private final long daysOfWeek;
+	private final boolean isAnyDayOfMonth;
+	private final boolean isAnyDayOfWeek;
+
+	/**
+	 * @param spec cron expression.
+	 * @throws IllegalArgumentException if the expression is malformed.
+	 */
+	public CronRecurrence(String spec) {
+		final String[] fields = spec.trim().split("\\s+");
+		if(fields.length != 5) {
+			throw new IllegalArgumentException("Cron expression should have 5 fields: '" + spec + "'");
+		}
+		this.spec = String.join(" ", fields);
+		this.minutes = parseField(fields[0], 0, 59, "minute");
+		this.hours = parseField(fields[1], 0, 23, "hour");
+		this.daysOfMonth = parseField(fields[2], 1, 31, "day of month");
+		this.months = parseField(fields[3], 1, 12, "month");
+		final long sundayAware = parseField(fields[4], 0, 7, "day of week");
+		this.daysOfWeek = (sundayAware & ~(1L << 7)) | ((sundayAware >>> 7) & 1L);
+		this.isAnyDayOfMonth = fields[2].startsWith("*");
+		this.isAnyDayOfWeek = fields[4].startsWith("*");
+	}
+
+	private static long parseField(String field, int min, int max, String name) {
+		long mask = 0;
+		try {
+			for(String part : field.split(",")) {
+				String range = part;
+				int step = 1;
+				final int slash = part.indexOf('/');
+				if(slash >= 0) {
+					step = Integer.parseInt(part.substring(slash + 1));
+					range = part.substring(0, slash);
+				}
+				final int from;
+				final int to;
+				final int dash = range.indexOf('-');
+				if(range.equals("*")) {
+					from = min;
+					to = max;
+				} else if(dash >= 0) {
+					from = Integer.parseInt(range.substring(0, dash));
+					to = Integer.parseInt(range.substring(dash + 1));
+				} else {
+					from = Integer.parseInt(range);
+					to = slash >= 0 ? max : from;
+				}
+				if(step <= 0 || from < min || to > max || from > to) {
+					throw new IllegalArgumentException("Cron " + name + " '" + part + "' is out of [" + min + ", " + max + "]");
+				}
+				for(int value = from; value <= to; value += step) {
+					mask |= 1L << value;
+				}
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Malformed cron " + name + ": '" + field + "'");
+		}
+		return mask;
+	}
+
+	@Override
+	public Date next(Date previous, Date now) {
+		ZonedDateTime time = Instant.ofEpochMilli(Math.max(previous.getTime(), now.getTime()))
+				.atZone(ZoneId.systemDefault())
+				.truncatedTo(ChronoUnit.MINUTES)
+				.plusMinutes(1);
+		final int lastYear = time.getYear() + MAX_SEARCH_YEARS;
+		while(time.getYear() <= lastYear) {
+			if(!matches(months, time.getMonthValue())) {
+				time = time.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1).plusMonths(1);
+			} else if(!matchesDay(time)) {
+				time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+			} else if(!matches(hours, time.getHour())) {
+				time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+			} else if(!matches(minutes, time.getMinute())) {
+				time = time.plusMinutes(1);
+			} else {
+				return Date.from(time.toInstant());
+			}
+		}
+		return null;
+	}
+
+	private boolean matchesDay(ZonedDateTime time) {
+		final boolean isDayOfMonth = matches(daysOfMonth, time.getDayOfMonth());
+		final boolean isDayOfWeek = matches(daysOfWeek, time.getDayOfWeek().getValue() % 7);
+		if(isAnyDayOfMonth || isAnyDayOfWeek) {
+			return isDayOfMonth && isDayOfWeek;
+		}
+		return isDayOfMonth || isDayOfWeek;
+	}
+
+	private static boolean matches(long mask, int value) {
+		return (mask & (1L << value)) != 0;
+	}
+
+	@Override
+	public String getSpec() {
+		return spec;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof CronRecurrence && ((CronRecurrence) other).spec.equals(spec);
+	}
+
+	@Override
+	public int hashCode() {
+		return spec.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return spec;
+	}
+}
@@ -0,0 +1,83 @@
+package def.taskmodel;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Recurrence with the fixed interval between the occurrences, e.g. "every 30s".
+ * Occurrences keep the phase of the first one: previous + k * interval.
+ * @author ovoievodin
+ */
+public final class IntervalRecurrence implements Recurrence {
+
+	private static final long serialVersionUID = -1954207853734410395L;
+
+	static final String PREFIX = "every ";
+
+	private static final Pattern specPattern = Pattern.compile(Pattern.quote(PREFIX) + "\\s*(\\d+)\\s*(ms|s|m|h|d)");
+
+	private static final String[] units = { "d", "h", "m", "s" };
+	private static final long[] unitMillis = { TimeUnit.DAYS.toMillis(1), TimeUnit.HOURS.toMillis(1), TimeUnit.MINUTES.toMillis(1), TimeUnit.SECONDS.toMillis(1) };
+
+	private final long intervalMillis;
+
+	public IntervalRecurrence(long intervalMillis) {
+		if(intervalMillis <= 0) {
+			throw new IllegalArgumentException("Recurrence interval should be positive: " + intervalMillis);
+		}
+		this.intervalMillis = intervalMillis;
+	}
+
+	static IntervalRecurrence parse(String spec) {
+		final Matcher matcher = specPattern.matcher(spec);
+		if(!matcher.matches()) {
+			throw new IllegalArgumentException("Malformed recurrence interval: '" + spec + "', expected e.g. 'every 30s'");
+		}
+		final long amount = Long.parseLong(matcher.group(1));
+		switch (matcher.group(2)) {
+			case "ms": return new IntervalRecurrence(amount);
+			case "s": return new IntervalRecurrence(TimeUnit.SECONDS.toMillis(amount));
+			case "m": return new IntervalRecurrence(TimeUnit.MINUTES.toMillis(amount));
+			case "h": return new IntervalRecurrence(TimeUnit.HOURS.toMillis(amount));
+			default: return new IntervalRecurrence(TimeUnit.DAYS.toMillis(amount));
+		}
+	}
+
+	public long getIntervalMillis() {
+		return intervalMillis;
+	}
+
+	@Override
+	public Date next(Date previous, Date now) {
+		final long behind = now.getTime() - previous.getTime();
+		final long intervals = behind < 0 ? 1 : behind / intervalMillis + 1;
+		return new Date(previous.getTime() + intervals * intervalMillis);
+	}
+
+	@Override
+	public String getSpec() {
+		for(int i = 0; i < units.length; i++) {
+			if(intervalMillis % unitMillis[i] == 0) {
+				return PREFIX + intervalMillis / unitMillis[i] + units[i];
+			}
+		}
+		return PREFIX + intervalMillis + "ms";
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof IntervalRecurrence && ((IntervalRecurrence) other).intervalMillis == intervalMillis;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(intervalMillis);
+	}
+
+	@Override
+	public String toString() {
+		return getSpec();
+	}
+}
@@ -5,10 +5,13 @@ import java.util.PriorityQueue;
 /**
  * Just a simple wrapper around the ProrityQueue collection.
  * This allows all of the basic PriorityQueue functionality, but does not allow duplicate entries.
- * TODO: The 'offer' method complexity becomes O(n) in the worst case, so need to think about using something more efficient. 
+ * The 'offer' method complexity becomes O(n) in the worst case.
+ * @deprecated schedule is now indexed by the {@link java.util.TreeSet} inside of the {@link TasksModel}.
+ * Left here only for reading the models, which were serialized by the previous versions.
  * @author ovoievodin
  * @param <T>
  */
+@Deprecated
 public class PriorityQueueSet<T> extends PriorityQueue<T> {
 	private static final long serialVersionUID = 2748954990709447377L;
 
@@ -0,0 +1,45 @@
+package def.taskmodel;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Recurrence rule of the task.
+ * Only the closest occurrence of the rule is kept in the schedule,
+ * the following one is computed when it is dispatched.
+ * @author ovoievodin
+ */
+public interface Recurrence extends Serializable {
+
+	/**
+	 * Compute the occurrence, following the previous one.
+	 * Occurrences, missed while the scheduler was not running, are skipped.
+	 * @param previous previous occurrence.
+	 * @param now current time.
+	 * @return the first occurrence after the previous one, which is later than now, or null, if there is none.
+	 * @author ovoievodin
+	 */
+	Date next(Date previous, Date now);
+
+	/**
+	 * @return text form of the rule, see {@link #parse(String)}.
+	 */
+	String getSpec();
+
+	/**
+	 * Parse the recurrence rule:
+	 * <li>"every &lt;amount&gt;&lt;ms|s|m|h|d&gt;" - fixed interval, e.g. "every 30s".</li>
+	 * <li>5-field cron expression "minute hour day-of-month month day-of-week", e.g. "0 9 * * 1-5".</li>
+	 * @param spec text form of the rule.
+	 * @return parsed rule.
+	 * @throws IllegalArgumentException if the rule is malformed.
+	 * @author ovoievodin
+	 */
+	static Recurrence parse(String spec) {
+		final String trimmed = spec.trim();
+		if(trimmed.startsWith(IntervalRecurrence.PREFIX)) {
+			return IntervalRecurrence.parse(trimmed);
+		}
+		return new CronRecurrence(trimmed);
+	}
+}
@@ -1,5 +1,8 @@
 package def.taskmodel;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.Date;
 
@@ -8,25 +11,60 @@ import java.util.Date;
  * Represents the executable task entity, 
  * which contains the date and time of the task execution, 
  * and, actually, the target executable file name.
+ * Recurring task keeps it's closest occurrence as the execution date.
+ * Execution time is kept as a primitive, so the resident task costs no separate date object,
+ * and it is serialized in the compact wire form, while the tasks, serialized by the previous versions with the date, are still readable.
+ * Task, added to the server, gets the unique id, which tells it apart from the other tasks with the same date and target.
  * @author ovoievodin
  */
 public final class Task implements Serializable, Comparable<Task> {
 	private static final long serialVersionUID = 8620820732821381177L;
-	private Date executionDate;
+
+	/**
+	 * Stream fields of the previous versions, which have kept the execution time as a date. Only read.
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("executionDate", Date.class),
+		new ObjectStreamField("target", String.class),
+		new ObjectStreamField("ownerId", long.class),
+		new ObjectStreamField("recurrence", Recurrence.class),
+		new ObjectStreamField("id", long.class)
+	};
+
+	private long executionTime;
 	private String target;
 	private long ownerId;
+	private Recurrence recurrence;
+	private long id;
+
+	/**
+	 * Position of the task in it's bucket, so the task is removed from the bucket without looking it up.
+	 * Not serialized, maintained by the bucket only.
+	 */
+	int slot;
 	
 	public Task(Date execDate, String execTarget) {
-		this.executionDate = execDate;
+		this(execDate.getTime(), execTarget);
+	}
+
+	public Task(long executionTime, String execTarget) {
+		this.executionTime = executionTime;
 		this.target = execTarget;
 	}
 
 	public Date getExecutionDate() {
-		return executionDate;
+		return new Date(executionTime);
 	}
 
 	public void setExecutionDate(Date executionDate) {
-		this.executionDate = executionDate;
+		this.executionTime = executionDate.getTime();
+	}
+
+	/**
+	 * @return execution time in milliseconds, without making the date object.
+	 */
+	public long getExecutionTime() {
+		return executionTime;
 	}
 
 	public String getTarget() {
@@ -45,6 +83,49 @@ public final class Task implements Serializable, Comparable<Task> {
 		this.ownerId = ownerId;
 	}
 
+	/**
+	 * @return id, assigned by the server, or 0, if the task has not been added to the server yet.
+	 */
+	public long getId() {
+		return id;
+	}
+
+	public void setId(long id) {
+		this.id = id;
+	}
+
+	/**
+	 * @return recurrence rule of the task or null, if it is executed once.
+	 */
+	public Recurrence getRecurrence() {
+		return recurrence;
+	}
+
+	public void setRecurrence(Recurrence recurrence) {
+		this.recurrence = recurrence;
+	}
+
+	/**
+	 * Make the next occurrence of the recurring task.
+	 * @param now current time, occurrences before it are skipped.
+	 * @return the same task with the same id, scheduled at the next occurrence, or null, if the task is not recurring or has no more occurrences.
+	 * @author ovoievodin
+	 */
+	public Task nextOccurrence(Date now) {
+		if(recurrence == null) {
+			return null;
+		}
+		final Date nextDate = recurrence.next(new Date(executionTime), now);
+		if(nextDate == null) {
+			return null;
+		}
+		final Task next = new Task(nextDate, target);
+		next.setOwnerId(ownerId);
+		next.setRecurrence(recurrence);
+		next.setId(id);
+		return next;
+	}
+
 	/**
 	 * Returns true only if 2 tasks have equal execution time and target.
 	 * @author ovoievodin
@@ -52,23 +133,53 @@ public final class Task implements Serializable, Comparable<Task> {
 	@Override
 	public boolean equals(Object other) {
 		if(other instanceof Task) {
-			return this.getExecutionDate().equals(((Task) other).getExecutionDate()) && 
+			return this.executionTime == ((Task) other).executionTime && 
 				   this.getTarget().equals(((Task) other).getTarget());
 		}
 		return false;
 	}
 
+	/**
+	 * Consistent with {@link #equals(Object)}, so the id is not a part of it.
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * Long.hashCode(executionTime) + (target == null ? 0 : target.hashCode());
+	}
+
 	/**
 	 * Tasks are compared only by execution date.
 	 * @author ovoievodin
 	 */
 	@Override
 	public int compareTo(Task otherTask) {
-		return executionDate.compareTo(otherTask.executionDate);
+		return Long.compare(executionTime, otherTask.executionTime);
 	}
 	
 	@Override
 	public String toString() {
-		return "[ " + executionDate + " :: " + target + " ]";
+		if(recurrence != null) {
+			return "[ " + getExecutionDate() + " :: " + target + " :: " + recurrence + " ]";
+		}
+		return "[ " + getExecutionDate() + " :: " + target + " ]";
+	}
+
+	/**
+	 * Task is written in it's compact wire form, see {@link TaskExternalForm}.
+	 */
+	private Object writeReplace() {
+		return new TaskExternalForm(this);
+	}
+
+	/**
+	 * Reads the task, written by the previous versions with the date and the fields of {@link #serialPersistentFields}.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		final ObjectInputStream.GetField fields = in.readFields();
+		this.executionTime = ((Date) fields.get("executionDate", null)).getTime();
+		this.target = (String) fields.get("target", null);
+		this.ownerId = fields.get("ownerId", 0L);
+		this.recurrence = (Recurrence) fields.get("recurrence", null);
+		this.id = fields.get("id", 0L); // tasks of the previous versions have no id.
 	}
 }
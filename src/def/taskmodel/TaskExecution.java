@@ -0,0 +1,129 @@
+package def.taskmodel;
+
+import java.io.Serializable;
+
+/**
+ * Single execution of the task: it's process and the way it has ended.
+ * Updated only by the execution engine of the server, read by anyone.
+ * Output of the execution is read by chunks, see {@link TaskOutputChunk}.
+ * @author ovoievodin
+ */
+public final class TaskExecution implements Serializable {
+
+	private static final long serialVersionUID = -3519837412204518711L;
+
+	public enum Outcome {
+		/** Process is launched and has not exited yet. */
+		RUNNING,
+		/** Process has exited with code 0. */
+		SUCCEEDED,
+		/** Process has exited with non-zero code. */
+		FAILED,
+		/** Process has run out of time and was killed. */
+		TIMED_OUT,
+		/** Process has written more output, than it is allowed to, and was killed. */
+		OUTPUT_EXCEEDED,
+		/** Process could not be started at all. */
+		LAUNCH_FAILED
+	}
+
+	public static final int NO_EXIT_CODE = Integer.MIN_VALUE;
+	public static final long NO_PID = -1L;
+
+	private final long id;
+	private final Task task;
+	private volatile long pid;
+	private volatile long startTime;
+	private volatile long finishTime;
+	private volatile int exitCode;
+	private volatile boolean isTimedOut;
+	private volatile boolean isOutputExceeded;
+	private volatile Outcome outcome;
+
+	public TaskExecution(long id, Task task) {
+		this.id = id;
+		this.task = task;
+		this.pid = NO_PID;
+		this.exitCode = NO_EXIT_CODE;
+		this.outcome = Outcome.RUNNING;
+	}
+
+	public void onStarted(long pid, long startTime) {
+		this.pid = pid;
+		this.startTime = startTime;
+	}
+
+	/**
+	 * Timeout is marked before the process is killed, so it's exit is told from the ordinary failure.
+	 */
+	public void onTimedOut() {
+		this.isTimedOut = true;
+	}
+
+	/**
+	 * Exceeded output is marked before the process is killed, as the timeout is.
+	 */
+	public void onOutputExceeded() {
+		this.isOutputExceeded = true;
+	}
+
+	public boolean isOutputExceeded() {
+		return isOutputExceeded;
+	}
+
+	public void onExited(int exitCode, long finishTime) {
+		this.exitCode = exitCode;
+		this.finishTime = finishTime;
+		this.outcome = isOutputExceeded ? Outcome.OUTPUT_EXCEEDED : isTimedOut ? Outcome.TIMED_OUT : exitCode == 0 ? Outcome.SUCCEEDED : Outcome.FAILED;
+	}
+
+	public void onLaunchFailed(long finishTime) {
+		this.finishTime = finishTime;
+		this.outcome = Outcome.LAUNCH_FAILED;
+	}
+
+	/**
+	 * @return identifier of the execution, unique within the server run.
+	 */
+	public long getId() {
+		return id;
+	}
+
+	public Task getTask() {
+		return task;
+	}
+
+	/**
+	 * @return process id or {@link #NO_PID}, if the process is not started.
+	 */
+	public long getPid() {
+		return pid;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @return time of the process exit or 0, if it is still running.
+	 */
+	public long getFinishTime() {
+		return finishTime;
+	}
+
+	/**
+	 * @return exit code of the process or {@link #NO_EXIT_CODE}, if it has not exited.
+	 */
+	public int getExitCode() {
+		return exitCode;
+	}
+
+	public Outcome getOutcome() {
+		return outcome;
+	}
+
+	@Override
+	public String toString() {
+		return "[ #" + id + " " + task + " :: pid " + pid + " :: " + outcome + (exitCode == NO_EXIT_CODE ? "" : ", exit code " + exitCode) + " ]";
+	}
+}
@@ -0,0 +1,44 @@
+package def.taskmodel;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Serialized form of the single {@link Task}: [signed epoch millis] and the task, see {@link TaskWireFormat}.
+ * Written instead of the task, so the task costs no date object and no descriptors of it's fields,
+ * and read back as the task itself.
+ * @author ovoievodin
+ */
+final class TaskExternalForm implements Externalizable {
+
+	private static final long serialVersionUID = 4415239312780472906L;
+
+	private Task task;
+
+	/**
+	 * Used by the serialization only.
+	 */
+	public TaskExternalForm() { }
+
+	TaskExternalForm(Task task) {
+		this.task = task;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		TaskWireFormat.writeSignedVarLong(out, task.getExecutionTime());
+		TaskWireFormat.writeTask(out, task, new TaskWireFormat.StringsWriter());
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		final long executionTime = TaskWireFormat.readSignedVarLong(in);
+		task = TaskWireFormat.readTask(in, executionTime, new TaskWireFormat.StringsReader());
+	}
+
+	private Object readResolve() {
+		return task;
+	}
+}
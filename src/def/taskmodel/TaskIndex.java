@@ -0,0 +1,160 @@
+package def.taskmodel;
+
+/**
+ * Index of the tasks by their ids.
+ * Kept as the striped open addressing hash table of the tasks themselves:
+ * the id is read from the task, so an indexed task costs a single array slot,
+ * not a boxed key and an entry object, as it would in the general purpose concurrent map.
+ * Every stripe is locked separately, so the lookups and the changes of the different ids rarely contend.
+ * Tasks without the id (0) are not indexed.
+ * @author ovoievodin
+ */
+final class TaskIndex {
+
+	private static final int STRIPES_AMOUNT_BITS = 6;
+	private static final int INITIAL_STRIPE_CAPACITY = 16;
+
+	private final Stripe[] stripes;
+
+	TaskIndex() {
+		this.stripes = new Stripe[1 << STRIPES_AMOUNT_BITS];
+		for(int i = 0; i < stripes.length; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+
+	/**
+	 * @return indexed task with the id or null, if there is no such.
+	 */
+	Task get(long id) {
+		final long hash = hash(id);
+		final Stripe stripe = stripeOf(hash);
+		synchronized (stripe) {
+			final int slot = stripe.find(id, slotHash(hash));
+			return slot < 0 ? null : stripe.table[slot];
+		}
+	}
+
+	/**
+	 * Index the task, replacing the task with the same id, if there is such.
+	 */
+	void put(Task task) {
+		if(task.getId() == 0) {
+			return;
+		}
+		final long hash = hash(task.getId());
+		final Stripe stripe = stripeOf(hash);
+		synchronized (stripe) {
+			stripe.put(task, slotHash(hash));
+		}
+	}
+
+	/**
+	 * Remove the task from the index, only if it is the very task, which is indexed by it's id.
+	 * So the stale removal does not drop the task, which has taken the id over.
+	 */
+	void remove(Task task) {
+		if(task.getId() == 0) {
+			return;
+		}
+		final long hash = hash(task.getId());
+		final Stripe stripe = stripeOf(hash);
+		synchronized (stripe) {
+			final int slot = stripe.find(task.getId(), slotHash(hash));
+			if(slot >= 0 && stripe.table[slot] == task) {
+				stripe.delete(slot);
+			}
+		}
+	}
+
+	private Stripe stripeOf(long hash) {
+		return stripes[(int) (hash >>> (Long.SIZE - STRIPES_AMOUNT_BITS))];
+	}
+
+	/**
+	 * Ids are sequential, so they are spread by the multiplicative hashing.
+	 * Only the high bits of the product depend on all of the id bits,
+	 * so the highest ones select the stripe and the next ones select the slot.
+	 */
+	private static long hash(long id) {
+		return id * 0x9E3779B97F4A7C15L;
+	}
+
+	private static int slotHash(long hash) {
+		return (int) (hash >>> (Integer.SIZE - STRIPES_AMOUNT_BITS));
+	}
+
+	/**
+	 * Linear probing table, which is never more, than 3/4 full.
+	 */
+	private static final class Stripe {
+
+		/** Guarded by this. */
+		private Task[] table = new Task[INITIAL_STRIPE_CAPACITY];
+		/** Guarded by this. */
+		private int size;
+
+		private int find(long id, int hash) {
+			final int mask = table.length - 1;
+			for(int slot = hash & mask; table[slot] != null; slot = (slot + 1) & mask) {
+				if(table[slot].getId() == id) {
+					return slot;
+				}
+			}
+			return -1;
+		}
+
+		private void put(Task task, int hash) {
+			final int existing = find(task.getId(), hash);
+			if(existing >= 0) {
+				table[existing] = task;
+				return;
+			}
+			if((size + 1) * 4 > table.length * 3) {
+				resize();
+			}
+			insert(task, hash);
+			size++;
+		}
+
+		private void insert(Task task, int hash) {
+			final int mask = table.length - 1;
+			int slot = hash & mask;
+			while(table[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = task;
+		}
+
+		private void resize() {
+			final Task[] previous = table;
+			table = new Task[previous.length * 2];
+			for(Task task : previous) {
+				if(task != null) {
+					insert(task, slotHash(hash(task.getId())));
+				}
+			}
+		}
+
+		/**
+		 * Empty the slot, shifting the following tasks of the probe sequence back,
+		 * so no task becomes unreachable and no tombstones are needed.
+		 */
+		private void delete(int slot) {
+			final int mask = table.length - 1;
+			int empty = slot;
+			table[empty] = null;
+			size--;
+			for(int next = (empty + 1) & mask; table[next] != null; next = (next + 1) & mask) {
+				final int home = slotHash(hash(table[next].getId())) & mask;
+				// task stays, if it's home slot lies cyclically within (empty, next].
+				final boolean isReachable = empty <= next ? empty < home && home <= next : empty < home || home <= next;
+				if(!isReachable) {
+					table[empty] = table[next];
+					table[next] = null;
+					empty = next;
+				}
+			}
+		}
+	}
+}
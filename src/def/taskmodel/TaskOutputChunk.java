@@ -0,0 +1,67 @@
+package def.taskmodel;
+
+import java.io.Serializable;
+
+/**
+ * Chunk of the task execution output, read from the specified offset.
+ * To tail the output, read the next chunk from {@link #getNextOffset()} until the chunk {@link #isLast()}.
+ * @author ovoievodin
+ */
+public final class TaskOutputChunk implements Serializable {
+
+	private static final long serialVersionUID = -6021739542864571703L;
+
+	/**
+	 * Output stream of the task process.
+	 */
+	public enum Source {
+		STDOUT, STDERR
+	}
+
+	private final long offset;
+	private final byte[] data;
+	private final long length;
+	private final boolean isLast;
+
+	/**
+	 * @param offset offset of the chunk in the output.
+	 * @param data bytes of the output, starting from the offset.
+	 * @param length total length of the output at the moment of reading.
+	 * @param isLast true, if the execution has finished and the chunk reaches the end of the output.
+	 */
+	public TaskOutputChunk(long offset, byte[] data, long length, boolean isLast) {
+		this.offset = offset;
+		this.data = data;
+		this.length = length;
+		this.isLast = isLast;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+
+	/**
+	 * @return offset of the chunk, following this one.
+	 */
+	public long getNextOffset() {
+		return offset + data.length;
+	}
+
+	/**
+	 * @return total length of the output at the moment of reading, it still grows while the execution is running.
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @return true, if no more output is going to be written after this chunk.
+	 */
+	public boolean isLast() {
+		return isLast;
+	}
+}
@@ -0,0 +1,178 @@
+package def.taskmodel;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact encoding of the tasks, shared by the wire forms of the {@link Task}, of the {@link TasksModel}
+ * and by the binary ingestion protocol (see {@link def.remote.BinaryIngestionProtocol}).
+ * <li>Numbers are written as the variable length integers: 7 bits per byte, the high bit tells, that more bytes follow.
+ * Signed ones are zigzag encoded first, so the small negative numbers are short as well.</li>
+ * <li>Execution time is written as the delta from the previous one, so the time of the sorted tasks takes a byte or two.</li>
+ * <li>Strings (targets and recurrence specs) are written once per stream: the first occurrence defines the next entry of the strings table,
+ * the following ones are just it's index, 0 stands for null.</li>
+ * Task without the execution time: [string target][signed owner id][id][string recurrence spec].
+ * <br>List of tasks: [tasks amount]{[signed delta of the execution time][task]}.
+ * @author ovoievodin
+ */
+public final class TaskWireFormat {
+
+	private static final int NULL_STRING = 0;
+
+	private TaskWireFormat() { }
+
+	public static void writeVarLong(DataOutput out, long value) throws IOException {
+		long remaining = value;
+		while((remaining & ~0x7FL) != 0) {
+			out.writeByte((int) (remaining & 0x7F) | 0x80);
+			remaining >>>= 7;
+		}
+		out.writeByte((int) remaining);
+	}
+
+	public static long readVarLong(DataInput in) throws IOException {
+		long value = 0;
+		for(int shift = 0; shift < Long.SIZE; shift += 7) {
+			final byte next = in.readByte();
+			value |= (long) (next & 0x7F) << shift;
+			if(next >= 0) {
+				return value;
+			}
+		}
+		throw new StreamCorruptedException("Variable length integer is longer, than a long");
+	}
+
+	public static void writeSignedVarLong(DataOutput out, long value) throws IOException {
+		writeVarLong(out, (value << 1) ^ (value >> (Long.SIZE - 1)));
+	}
+
+	public static long readSignedVarLong(DataInput in) throws IOException {
+		final long encoded = readVarLong(in);
+		return (encoded >>> 1) ^ -(encoded & 1);
+	}
+
+	/**
+	 * @return non-negative int, read as the variable length integer.
+	 * @throws StreamCorruptedException if the value does not fit into the int.
+	 */
+	public static int readVarInt(DataInput in) throws IOException {
+		final long value = readVarLong(in);
+		if(value < 0 || value > Integer.MAX_VALUE) {
+			throw new StreamCorruptedException("Amount out of range: " + value);
+		}
+		return (int) value;
+	}
+
+	static void writeTask(DataOutput out, Task task, StringsWriter strings) throws IOException {
+		strings.write(out, task.getTarget());
+		writeSignedVarLong(out, task.getOwnerId());
+		writeVarLong(out, task.getId());
+		strings.write(out, task.getRecurrence() == null ? null : task.getRecurrence().getSpec());
+	}
+
+	static Task readTask(DataInput in, long executionTime, StringsReader strings) throws IOException {
+		final Task task = new Task(executionTime, strings.read(in));
+		task.setOwnerId(readSignedVarLong(in));
+		task.setId(readVarLong(in));
+		task.setRecurrence(strings.readRecurrence(in));
+		return task;
+	}
+
+	/**
+	 * Write the tasks in their order with the strings table of their own.
+	 */
+	public static void writeTasks(DataOutput out, List<Task> tasks) throws IOException {
+		final StringsWriter strings = new StringsWriter();
+		writeVarLong(out, tasks.size());
+		long previousTime = 0;
+		for(Task task : tasks) {
+			writeSignedVarLong(out, task.getExecutionTime() - previousTime);
+			previousTime = task.getExecutionTime();
+			writeTask(out, task, strings);
+		}
+	}
+
+	public static List<Task> readTasks(DataInput in) throws IOException {
+		final StringsReader strings = new StringsReader();
+		final int amount = readVarInt(in);
+		final List<Task> tasks = new ArrayList<>(Math.min(amount, 1024));
+		long executionTime = 0;
+		for(int i = 0; i < amount; i++) {
+			executionTime += readSignedVarLong(in);
+			tasks.add(readTask(in, executionTime, strings));
+		}
+		return tasks;
+	}
+
+	/**
+	 * Strings table of the stream, being written.
+	 */
+	static final class StringsWriter {
+
+		private final Map<String, Integer> indexes = new HashMap<>();
+
+		void write(DataOutput out, String string) throws IOException {
+			if(string == null) {
+				writeVarLong(out, NULL_STRING);
+				return;
+			}
+			final Integer index = indexes.get(string);
+			if(index != null) {
+				writeVarLong(out, index);
+				return;
+			}
+			final int defined = indexes.size() + 1;
+			indexes.put(string, defined);
+			writeVarLong(out, defined);
+			final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			writeVarLong(out, bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Strings table of the stream, being read. Recurrence of the same spec is parsed once and shared by the tasks.
+	 */
+	static final class StringsReader {
+
+		private final List<String> strings = new ArrayList<>();
+		private final Map<String, Recurrence> recurrences = new HashMap<>();
+
+		String read(DataInput in) throws IOException {
+			final int index = readVarInt(in);
+			if(index == NULL_STRING) {
+				return null;
+			}
+			if(index <= strings.size()) {
+				return strings.get(index - 1);
+			}
+			if(index != strings.size() + 1) {
+				throw new StreamCorruptedException("String " + index + " is referenced before it is defined");
+			}
+			final byte[] bytes = new byte[readVarInt(in)];
+			in.readFully(bytes);
+			final String string = new String(bytes, StandardCharsets.UTF_8);
+			strings.add(string);
+			return string;
+		}
+
+		Recurrence readRecurrence(DataInput in) throws IOException {
+			final String spec = read(in);
+			if(spec == null) {
+				return null;
+			}
+			try {
+				return recurrences.computeIfAbsent(spec, Recurrence::parse);
+			} catch (IllegalArgumentException e) {
+				throw new StreamCorruptedException("Malformed recurrence \"" + spec + "\": " + e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package def.taskmodel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Tasks of the single execution time slot.
+ * Kept compact: the execution time is a primitive and the tasks are a plain array,
+ * and the bucket is the key of itself in the schedule index, so no separate key object is needed.
+ * Mutated only under it's own monitor, which is the lock of the time slot, while readers take the current array without any locking.
+ * Array has the spare capacity, growing by half, so the added task usually takes the next free slot in place,
+ * and the many tasks of the same time cost the amortized constant time each.
+ * Removed task just leaves the empty (null) slot,
+ * found through the position, the task keeps, so the removal costs the same regardless of the bucket size.
+ * Empty slots (the spare ones included) are squeezed out, once they are more, than the tasks, by the next change.
+ * Array, which is taken by the consistent cut, is trimmed and is not modified anymore, so the first change after the cut copies it.
+ * Once the bucket is taken out of the schedule it is closed,
+ * so the writer, which has raced with the removal, retries with the new bucket instead of losing the task.
+ * @author ovoievodin
+ */
+final class TasksBucket {
+
+	static final Comparator<TasksBucket> BY_EXECUTION_TIME = (first, second) -> Long.compare(first.executionTime, second.executionTime);
+
+	private static final Task[] NO_TASKS = new Task[0];
+
+	private final long executionTime;
+
+	/** Replaced under this, slots of the removed tasks are nulled under this. */
+	private volatile Task[] tasks;
+
+	/** Amount of the tasks in the array. */
+	private volatile int size;
+
+	/** Position after the last used slot, the next task is added at. Guarded by this. */
+	private int end;
+
+	/** Guarded by this. */
+	private boolean isClosed;
+
+	/** Current array is referenced by the cut, so it is replaced instead of being modified. Guarded by this. */
+	private boolean isShared;
+
+	TasksBucket(long executionTime) {
+		this.executionTime = executionTime;
+		this.tasks = NO_TASKS;
+	}
+
+	TasksBucket(long executionTime, Collection<Task> tasks) {
+		this.executionTime = executionTime;
+		this.tasks = tasks.toArray(NO_TASKS);
+		this.size = this.tasks.length;
+		this.end = size;
+		for(int i = 0; i < this.tasks.length; i++) {
+			this.tasks[i].slot = i;
+		}
+	}
+
+	long getExecutionTime() {
+		return executionTime;
+	}
+
+	/**
+	 * @return current tasks array, which may have the empty (null) slots and should not be modified.
+	 */
+	Task[] getTasks() {
+		return tasks;
+	}
+
+	/**
+	 * @return copy of the current tasks.
+	 */
+	List<Task> asList() {
+		final Task[] current = tasks;
+		final List<Task> list = new ArrayList<>(current.length);
+		for(Task task : current) {
+			if(task != null) {
+				list.add(task);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * @return task at the position among the current tasks.
+	 * @throws IndexOutOfBoundsException if there is no task at the position.
+	 */
+	Task get(int index) {
+		int remaining = index;
+		for(Task task : tasks) {
+			if(task != null && remaining-- == 0) {
+				return task;
+			}
+		}
+		throw new IndexOutOfBoundsException("No task at " + index + " in the bucket of " + size);
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Caller holds the monitor.
+	 */
+	void add(Task task) {
+		Task[] current = tasks;
+		if(isShared || end == current.length) {
+			current = squeeze(current, size + (size >> 1) + 1);
+			end = size;
+			isShared = false;
+		}
+		task.slot = end;
+		current[end++] = task;
+		tasks = current; // published again, so the readers, taking the array, see the added task.
+		size++;
+	}
+
+	/**
+	 * Remove the task, equal to the specified one. Caller holds the monitor.
+	 * @return removed task instance or null, if there is no equal task.
+	 */
+	Task remove(Task task) {
+		final Task[] current = tasks;
+		for(int i = 0; i < current.length; i++) {
+			if(current[i] != null && current[i].equals(task)) {
+				final Task removed = current[i];
+				removeAt(i);
+				return removed;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Remove the very task instance at it's position. Caller holds the monitor.
+	 * @return true, if the task was found and removed.
+	 */
+	boolean removeInstance(Task task) {
+		final Task[] current = tasks;
+		if(task.slot < current.length && current[task.slot] == task) {
+			removeAt(task.slot);
+			return true;
+		}
+		for(int i = 0; i < current.length; i++) { // the same instance was added twice, so it's position is of the other slot.
+			if(current[i] == task) {
+				removeAt(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void removeAt(int slot) {
+		final Task[] current = tasks;
+		if(isShared) {
+			final Task[] copy = current.clone();
+			copy[slot] = null;
+			tasks = squeeze(copy, size - 1);
+			end = size - 1;
+			isShared = false;
+		} else {
+			current[slot] = null;
+			if(current.length - size + 1 > size - 1) {
+				tasks = squeeze(current, size - 1);
+				end = size - 1;
+			}
+		}
+		size--;
+	}
+
+	/**
+	 * Mark the current array as referenced by the consistent cut. Caller holds the monitor.
+	 * @return current tasks array without the empty slots, which is not modified anymore.
+	 */
+	Task[] share() {
+		if(tasks.length != size) {
+			tasks = squeeze(tasks, size);
+			end = size;
+		}
+		isShared = true;
+		return tasks;
+	}
+
+	/**
+	 * Copy the tasks to the new array of the length, skipping the empty slots and updating the positions of the tasks,
+	 * the tasks are at the beginning of the new array.
+	 */
+	private static Task[] squeeze(Task[] source, int length) {
+		final Task[] squeezed = new Task[length];
+		int position = 0;
+		for(Task task : source) {
+			if(task != null && position < length) {
+				task.slot = position;
+				squeezed[position++] = task;
+			}
+		}
+		return squeezed;
+	}
+
+	boolean isClosed() {
+		return isClosed;
+	}
+
+	void close() {
+		isClosed = true;
+	}
+}
@@ -0,0 +1,53 @@
+package def.taskmodel;
+
+import java.io.Serializable;
+
+/**
+ * Continuation point of the paged tasks query:
+ * execution time of the last returned task and the amount of matching tasks
+ * of that time, which were already returned.
+ * Query, merged across the scheduler shards, additionally keeps the cursor of every shard.
+ * @author ovoievodin
+ */
+public final class TasksCursor implements Serializable {
+
+	private static final long serialVersionUID = -6120538233406431797L;
+
+	private final long executionTime;
+	private final int returnedInBucket;
+	private final TasksCursor[] shardCursors;
+
+	public TasksCursor(long executionTime, int returnedInBucket) {
+		this(executionTime, returnedInBucket, null);
+	}
+
+	/**
+	 * Cursor of the query, merged across the shards.
+	 * @param shardCursors continuation point of every shard, null element -> shard has not returned anything yet.
+	 */
+	public TasksCursor(long executionTime, int returnedInBucket, TasksCursor[] shardCursors) {
+		this.executionTime = executionTime;
+		this.returnedInBucket = returnedInBucket;
+		this.shardCursors = shardCursors;
+	}
+
+	public long getExecutionTime() {
+		return executionTime;
+	}
+
+	public int getReturnedInBucket() {
+		return returnedInBucket;
+	}
+
+	/**
+	 * @return cursors of the shards or null, if the query was not merged across the shards.
+	 */
+	public TasksCursor[] getShardCursors() {
+		return shardCursors;
+	}
+
+	@Override
+	public String toString() {
+		return "[ " + executionTime + " +" + returnedInBucket + " ]";
+	}
+}
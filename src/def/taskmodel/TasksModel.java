@@ -1,15 +1,41 @@
 package def.taskmodel;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * Simple holder/wrapper for the tasks collection 
  * with some helpful auxiliary handling methods. 
+ * <br>Concurrency: tasks are kept in the concurrent skip list, keyed by execution time,
+ * and every time slot (bucket) is locked separately, so the writers contend only when they hit the same slot,
+ * and the dispatcher drains the due slot without blocking the writers of the other ones.
+ * Batch changes and consistent snapshots exclude all of the single-slot changes for their duration.
+ * Versions are assigned inside of the slot lock, so replaying the changes in the version order
+ * always gives the same model.
+ * <br>Memory: the bucket is the skip list key of itself and keeps it's tasks in a plain array,
+ * and the targets of the added tasks are interned, so the repeated targets are kept once.
+ * <br>Tasks with the id are indexed by it, so the task is looked up and removed by id
+ * at the cost, which depends neither on the amount of tasks, nor on the amount of tasks of the same time.
+ * <br>Serialized in the compact wire form, see {@link TasksModelExternalForm}.
  * @author ovoievodin
  */
 public final class TasksModel implements Serializable {
@@ -17,21 +43,145 @@ public final class TasksModel implements Serializable {
 	private static final long serialVersionUID = 775750715626568841L;
 
 	/**
-	 * The map of tasks, which are needed to be scheduled.
-	 * Key is the time of the execution and the value is actually 
-	 * a list of tasks to execute in this moment of time.
-	 * So we have tasks, grouped by execution time.
+	 * Stream fields of the previous versions, which have serialized the tasks grouped by execution date. Only read.
 	 */
-	private ConcurrentHashMap<Date, List<Task>> data;
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("data", Map.class),
+		new ObjectStreamField("version", long.class)
+	};
+
+	/**
+	 * The tasks, which are needed to be scheduled, grouped by execution time.
+	 * Every bucket is the key of itself, ordered by it's execution time,
+	 * so the set of buckets is the schedule index at the same time.
+	 */
+	private ConcurrentNavigableMap<TasksBucket, TasksBucket> buckets;
 	
 	/**
-	 * The queue of tasks execution dates, sorted and without duplicates. 
+	 * Model version, incremented by every change.
+	 */
+	private volatile long version;
+
+	/**
+	 * Tasks by id. Rebuilt, whenever the buckets are replaced as a whole.
+	 */
+	private transient volatile TaskIndex index;
+
+	/**
+	 * The greatest id of the tasks, ever added to the model, so the ids of the removed tasks are not given out again.
+	 */
+	private transient AtomicLong lastTaskId;
+
+	/**
+	 * Amount of the tasks, counted by the changes, so it is known without walking the buckets.
 	 */
-	private Queue<Date> tasksSchedule;
+	private transient LongAdder tasksAmount;
+	
+	/**
+	 * Listeners, receiving every change of the model, in the order of versions.
+	 */
+	private transient List<Consumer<TasksModelChange>> changeListeners;
+	
+	/**
+	 * Single-slot changes hold it shared, batch changes and snapshots hold it exclusively.
+	 */
+	private transient ReadWriteLock structureLock;
+	
+	/**
+	 * Guards version assignment and changes publishing.
+	 */
+	private transient Object sequencer;
 	
 	public TasksModel() {
-		this.data = new ConcurrentHashMap<>();
-		this.tasksSchedule = new PriorityQueueSet<>();
+		this.buckets = new ConcurrentSkipListMap<>(TasksBucket.BY_EXECUTION_TIME);
+		initTransientState(0);
+	}
+	
+	/**
+	 * Restore the model from the already grouped tasks.
+	 * @param data tasks grouped by execution time.
+	 * @param version version of the model, the tasks were taken from.
+	 */
+	public TasksModel(Map<Date, List<Task>> data, long version) {
+		this(data, version, 0);
+	}
+
+	/**
+	 * Restore the model from the already grouped tasks.
+	 * @param data tasks grouped by execution time.
+	 * @param version version of the model, the tasks were taken from.
+	 * @param lastTaskId the greatest task id, given out before, it is raised to the greatest id of the tasks, if it is less.
+	 */
+	public TasksModel(Map<Date, List<Task>> data, long version, long lastTaskId) {
+		this.buckets = toBuckets(data);
+		this.version = version;
+		initTransientState(lastTaskId);
+	}
+	
+	/**
+	 * Restore the model from the buckets, read by it's wire form.
+	 * @param buckets tasks buckets of the distinct execution times.
+	 */
+	TasksModel(List<TasksBucket> buckets, long version, long lastTaskId) {
+		this.buckets = new ConcurrentSkipListMap<>(TasksBucket.BY_EXECUTION_TIME);
+		for(TasksBucket bucket : buckets) {
+			if(!bucket.isEmpty()) {
+				this.buckets.put(bucket, bucket);
+			}
+		}
+		this.version = version;
+		initTransientState(lastTaskId);
+	}
+	
+	private void initTransientState(long lastTaskId) {
+		this.changeListeners = new CopyOnWriteArrayList<>();
+		this.structureLock = new ReentrantReadWriteLock();
+		this.sequencer = new Object();
+		this.lastTaskId = new AtomicLong(lastTaskId);
+		this.tasksAmount = new LongAdder();
+		reindex();
+	}
+
+	private void reindex() {
+		final TaskIndex index = new TaskIndex();
+		tasksAmount.reset();
+		for(TasksBucket bucket : buckets.keySet()) {
+			tasksAmount.add(bucket.size());
+			for(Task task : bucket.getTasks()) {
+				index.put(task);
+				lastTaskId.accumulateAndGet(task.getId(), Math::max);
+			}
+		}
+		this.index = index;
+	}
+	
+	private static ConcurrentNavigableMap<TasksBucket, TasksBucket> toBuckets(Map<Date, List<Task>> source) {
+		final ConcurrentNavigableMap<TasksBucket, TasksBucket> buckets = new ConcurrentSkipListMap<>(TasksBucket.BY_EXECUTION_TIME);
+		for(Map.Entry<Date, List<Task>> entry : source.entrySet()) {
+			if(!entry.getValue().isEmpty()) {
+				final TasksBucket bucket = new TasksBucket(entry.getKey().getTime(), entry.getValue());
+				buckets.put(bucket, bucket);
+			}
+		}
+		return buckets;
+	}
+
+	/**
+	 * @return empty bucket, which is used only as the key to look the bucket of the time up.
+	 */
+	private static TasksBucket probe(long time) {
+		return new TasksBucket(time);
+	}
+
+	/**
+	 * Keep the single instance of the repeated target.
+	 * Done only on the add paths, so the loading of the model does not pay for it.
+	 */
+	private static Task compact(Task task) {
+		if(task.getTarget() != null) {
+			task.setTarget(task.getTarget().intern());
+		}
+		return task;
 	}
 	
 	/**
@@ -40,11 +190,7 @@ public final class TasksModel implements Serializable {
 	 * @author ovoievodin
 	 */
 	public int getTasksAmount() {
-		int amount = 0;
-		for(List<Task> tasksSublist : data.values()) {
-			amount += tasksSublist.size();
-		}
-		return amount;
+		return (int) tasksAmount.sum();
 	}
 	
 	/**
@@ -55,7 +201,54 @@ public final class TasksModel implements Serializable {
 	 */
 	public List<Task> asList() {
 		System.out.println("tasks cache refreshed.");
-		return data.values().stream().flatMap(task -> task.stream()).collect(Collectors.toList());
+		return buckets.keySet().stream().flatMap(bucket -> bucket.asList().stream()).collect(Collectors.toList());
+	}
+	
+	/**
+	 * Take a single page of the tasks, selected by the query, walking the schedule index
+	 * from the query window start or from the query cursor.
+	 * So the cost depends on the page size, not on the total amount of tasks.
+	 * Query offset is skipped by the whole buckets, when there is no owner filter,
+	 * so it costs the walk over the execution times before the page, not over the tasks.
+	 * @param query tasks query.
+	 * @param maxPageSize upper bound for the query page size.
+	 * @return page of tasks in the execution time order.
+	 * @author ovoievodin
+	 */
+	public TasksPage query(TasksQuery query, int maxPageSize) {
+		final long pageVersion = version;
+		final int pageSize = Math.max(1, Math.min(query.getPageSize(), maxPageSize));
+		final TasksCursor cursor = query.getCursor();
+		final Date from = cursor != null ? new Date(cursor.getExecutionTime()) : query.getFrom();
+		ConcurrentNavigableMap<TasksBucket, TasksBucket> window = buckets;
+		if(from != null) {
+			window = window.tailMap(probe(from.getTime()), true);
+		}
+		if(query.getTo() != null) {
+			window = window.headMap(probe(query.getTo().getTime()), false);
+		}
+		final List<Task> page = new ArrayList<>(Math.min(pageSize, 1024));
+		int toSkip = cursor == null ? query.getOffset() : 0;
+		for(TasksBucket bucket : window.keySet()) {
+			if(toSkip > 0 && query.getOwnerId() == null && bucket.size() <= toSkip) {
+				toSkip -= bucket.size();
+				continue;
+			}
+			final long time = bucket.getExecutionTime();
+			final int alreadyReturned = cursor != null && cursor.getExecutionTime() == time ? cursor.getReturnedInBucket() : toSkip;
+			int matched = 0;
+			for(Task task : bucket.getTasks()) {
+				if(task == null || !query.matches(task) || ++matched <= alreadyReturned) {
+					continue;
+				}
+				if(page.size() == pageSize) {
+					return new TasksPage(page, new TasksCursor(time, matched - 1), pageVersion, getTasksAmount());
+				}
+				page.add(task);
+			}
+			toSkip = Math.max(0, toSkip - matched);
+		}
+		return new TasksPage(page, null, pageVersion, getTasksAmount());
 	}
 	
 	/**
@@ -65,27 +258,410 @@ public final class TasksModel implements Serializable {
 	 * @author ovoievodin
 	 */
 	public Task getAt(Date date, int index) {
-		return data.get(date).get(index);
+		return buckets.get(probe(date.getTime())).get(index);
+	}
+
+	/**
+	 * Look the task up by id.
+	 * @param id task id.
+	 * @return task with the id or null, if there is no such in the model.
+	 * @author ovoievodin
+	 */
+	public Task getTask(long id) {
+		return index.get(id);
+	}
+
+	/**
+	 * @return the greatest task id, ever added to the model or given to it on restore.
+	 */
+	public long getLastTaskId() {
+		return lastTaskId.get();
 	}
 	
-	public ConcurrentHashMap<Date, List<Task>> getData() {
+	/**
+	 * Group the tasks by execution date. Makes the dates and the map anew on every call,
+	 * so it is meant for the occasional whole model processing, not for the lookups.
+	 * @return tasks, grouped by execution time, in execution time order.
+	 */
+	public NavigableMap<Date, List<Task>> getData() {
+		final NavigableMap<Date, List<Task>> data = new TreeMap<>();
+		for(TasksBucket bucket : buckets.keySet()) {
+			data.put(new Date(bucket.getExecutionTime()), bucket.asList());
+		}
 		return data;
 	}
 
-	public void setData(ConcurrentHashMap<Date, List<Task>> data) {
-		this.data = data;
+	public void setData(Map<Date, List<Task>> data) {
+		structureLock.writeLock().lock();
+		try {
+			this.buckets = toBuckets(data);
+			reindex();
+		} finally {
+			structureLock.writeLock().unlock();
+		}
 	}
 
-	public Queue<Date> getTasksSchedule() {
-		return tasksSchedule;
+	public boolean isEmpty() {
+		return buckets.isEmpty();
 	}
 
-	public boolean isEmpty() {
-		return data.isEmpty();
+	/**
+	 * Add task to the bucket of it's execution time, which also puts the time to the schedule.
+	 * @param task task to add.
+	 * @author ovoievodin
+	 */
+	public void add(Task task) {
+		structureLock.readLock().lock();
+		try {
+			addToOpenBucket(compact(task));
+		} finally {
+			structureLock.readLock().unlock();
+		}
 	}
 
-	public void remove(Task task) {
-		data.get(task.getExecutionDate()).remove(task);		
-		tasksSchedule.remove(task);
+	/**
+	 * Add the whole batch of tasks as a single change of the model.
+	 * @param tasks tasks to add.
+	 * @author ovoievodin
+	 */
+	public void addAll(Collection<Task> tasks) {
+		if(tasks.isEmpty()) {
+			return;
+		}
+		structureLock.writeLock().lock();
+		try {
+			for(Task task : tasks) {
+				addToBucket(compact(task));
+			}
+			fireChange(TasksModelChange.Type.ADDED, new ArrayList<>(tasks));
+		} finally {
+			structureLock.writeLock().unlock();
+		}
+	}
+
+	private TasksBucket openBucket(long executionTime) {
+		final TasksBucket created = new TasksBucket(executionTime);
+		final TasksBucket existing = buckets.putIfAbsent(created, created);
+		return existing != null ? existing : created;
+	}
+
+	/**
+	 * Add the task without publishing the change. Caller holds the structure lock exclusively.
+	 */
+	private void addToBucket(Task task) {
+		final TasksBucket bucket = openBucket(task.getExecutionTime());
+		synchronized (bucket) {
+			bucket.add(task);
+			added(task);
+		}
+	}
+
+	/**
+	 * Count and index the added task. Caller holds the bucket monitor.
+	 */
+	private void added(Task task) {
+		tasksAmount.increment();
+		if(task.getId() != 0) {
+			index.put(task);
+			lastTaskId.accumulateAndGet(task.getId(), Math::max);
+		}
+	}
+
+	/**
+	 * Get the closest execution time in the schedule.
+	 * @return closest execution time or null, if nothing is scheduled.
+	 * @author ovoievodin
+	 */
+	public Date getNextExecutionDate() {
+		final Map.Entry<TasksBucket, TasksBucket> head = buckets.firstEntry();
+		return head == null ? null : new Date(head.getKey().getExecutionTime());
+	}
+
+	/**
+	 * Take the closest bunch of tasks out of the model, if it's execution time is not after the specified one.
+	 * Only the due slot is locked, so the writers of the other slots are not blocked.
+	 * Recurring tasks are put back at their next occurrence after the current time, as a separate change,
+	 * so the occurrences, missed while the bucket was late, are skipped.
+	 * @param now the moment in time, tasks are due at.
+	 * @return list of due tasks or null, if nothing is due yet.
+	 * @author ovoievodin
+	 */
+	public List<Task> pollDue(Date now) {
+		structureLock.readLock().lock();
+		try {
+			final Map.Entry<TasksBucket, TasksBucket> head = buckets.firstEntry();
+			if(head == null || head.getKey().getExecutionTime() > now.getTime()) {
+				return null;
+			}
+			final TasksBucket bucket = head.getValue();
+			final List<Task> dueTasks;
+			synchronized (bucket) {
+				if(bucket.isClosed()) {
+					return null; // it's last task was just removed, caller will look at the new head.
+				}
+				bucket.close();
+				buckets.remove(bucket, bucket);
+				dueTasks = bucket.asList();
+				for(Task task : dueTasks) {
+					index.remove(task);
+				}
+				tasksAmount.add(-dueTasks.size());
+				fireChange(TasksModelChange.Type.EXECUTED, dueTasks);
+			}
+			final Date current = new Date(Math.max(now.getTime(), System.currentTimeMillis())); // the late bucket must not replay the missed occurrences.
+			for(Task task : dueTasks) {
+				final Task nextOccurrence = task.nextOccurrence(current);
+				if(nextOccurrence != null) {
+					addToOpenBucket(nextOccurrence);
+				}
+			}
+			return dueTasks;
+		} finally {
+			structureLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Add the task, publishing the change. Caller holds the structure lock shared.
+	 */
+	private void addToOpenBucket(Task task) {
+		while(true) {
+			final TasksBucket bucket = openBucket(task.getExecutionTime());
+			synchronized (bucket) {
+				if(!bucket.isClosed()) { // otherwise drained or emptied right after we have found it.
+					bucket.add(task);
+					added(task);
+					fireChange(TasksModelChange.Type.ADDED, Collections.singletonList(task));
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove the task from it's execution time bucket.
+	 * Bucket becomes empty -> it's execution time is removed from the schedule as well.
+	 * @param task task to remove.
+	 * @return true -> task was found and removed.<br>false -> otherwise.
+	 * @author ovoievodin
+	 */
+	public boolean remove(Task task) {
+		structureLock.readLock().lock();
+		try {
+			final TasksBucket bucket = buckets.get(probe(task.getExecutionTime()));
+			if(bucket == null) {
+				return false;
+			}
+			synchronized (bucket) {
+				final Task removed = removeFromBucket(bucket, task);
+				if(removed == null) {
+					return false;
+				}
+				fireChange(TasksModelChange.Type.REMOVED, Collections.singletonList(removed));
+				return true;
+			}
+		} finally {
+			structureLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove the task by id. Costs the same regardless of the amount of tasks of it's execution time.
+	 * @param id task id.
+	 * @return removed task or null, if there is no task with the id in the model.
+	 * @author ovoievodin
+	 */
+	public Task remove(long id) {
+		structureLock.readLock().lock();
+		try {
+			final Task task = index.get(id);
+			if(task == null) {
+				return null;
+			}
+			final TasksBucket bucket = buckets.get(probe(task.getExecutionTime()));
+			if(bucket == null) {
+				return null;
+			}
+			synchronized (bucket) {
+				if(bucket.isClosed() || !bucket.removeInstance(task)) {
+					return null; // just executed or removed by the other caller.
+				}
+				removed(bucket, task);
+				fireChange(TasksModelChange.Type.REMOVED, Collections.singletonList(task));
+				return task;
+			}
+		} finally {
+			structureLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove the whole batch of tasks as a single change of the model.
+	 * @param tasks tasks to remove.
+	 * @return removal result for each of the tasks in the iteration order.
+	 * @author ovoievodin
+	 */
+	public List<Boolean> removeAll(Collection<Task> tasks) {
+		final List<Boolean> results = new ArrayList<>(tasks.size());
+		final List<Task> removed = new ArrayList<>();
+		structureLock.writeLock().lock();
+		try {
+			for(Task task : tasks) {
+				final Task removedTask = removeFromBucket(task);
+				if(removedTask != null) {
+					removed.add(removedTask);
+				}
+				results.add(removedTask != null);
+			}
+			if(!removed.isEmpty()) {
+				fireChange(TasksModelChange.Type.REMOVED, removed);
+			}
+		} finally {
+			structureLock.writeLock().unlock();
+		}
+		return results;
+	}
+
+	/**
+	 * Remove the task without publishing the change. Caller holds the structure lock exclusively.
+	 * @return removed task instance or null, if it is not found.
+	 */
+	private Task removeFromBucket(Task task) {
+		final TasksBucket bucket = buckets.get(probe(task.getExecutionTime()));
+		if(bucket == null) {
+			return null;
+		}
+		synchronized (bucket) {
+			return removeFromBucket(bucket, task);
+		}
+	}
+
+	/**
+	 * Remove the task, equal to the specified one, preferring the task with the same id,
+	 * so the one of the identical tasks, which was meant, is removed. Caller holds the bucket monitor.
+	 * @return removed task instance or null, if it is not found.
+	 */
+	private Task removeFromBucket(TasksBucket bucket, Task task) {
+		if(bucket.isClosed()) {
+			return null;
+		}
+		final Task indexed = task.getId() != 0 ? index.get(task.getId()) : null;
+		final Task removed;
+		if(indexed != null && indexed.equals(task) && bucket.removeInstance(indexed)) {
+			removed = indexed;
+		} else {
+			removed = bucket.remove(task);
+			if(removed == null) {
+				return null;
+			}
+		}
+		removed(bucket, removed);
+		return removed;
+	}
+
+	/**
+	 * Uncount and unindex the removed task and take the emptied bucket out of the schedule. Caller holds the bucket monitor.
+	 */
+	private void removed(TasksBucket bucket, Task task) {
+		index.remove(task);
+		tasksAmount.decrement();
+		if(bucket.isEmpty()) {
+			bucket.close();
+			buckets.remove(bucket, bucket);
+		}
+	}
+
+	/**
+	 * Apply the change, received from the remote model, to this local copy.
+	 * Changes, which are already reflected in this copy, are just skipped.
+	 * @param change incremental change of the remote model.
+	 * @return true -> change is applied or skipped.<br>
+	 *         false -> some changes before this one were missed, so the copy needs to be reloaded.
+	 * @author ovoievodin
+	 */
+	public boolean apply(TasksModelChange change) {
+		structureLock.writeLock().lock();
+		try {
+			if(change.getVersion() <= version) {
+				return true;
+			}
+			if(change.getVersion() != version + 1) {
+				return false;
+			}
+			for(Task task : change.getTasks()) {
+				if(change.getType() == TasksModelChange.Type.ADDED) {
+					addToBucket(compact(task));
+				} else {
+					removeFromBucket(task);
+				}
+			}
+			version = change.getVersion();
+			return true;
+		} finally {
+			structureLock.writeLock().unlock();
+		}
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Take the consistent cut of the model: no change is applied while it is being taken.
+	 * Costs only the collecting of the bucket arrays, as they are not modified anymore, once they are taken, but replaced.
+	 * @param cut receives the tasks of every execution time in execution time order, the arrays should not be modified.
+	 * @return version of the model, the cut was taken at.
+	 * @author ovoievodin
+	 */
+	public long cut(List<Task[]> cut) {
+		structureLock.writeLock().lock();
+		try {
+			for(TasksBucket bucket : buckets.keySet()) {
+				synchronized (bucket) {
+					cut.add(bucket.share());
+				}
+			}
+			return version;
+		} finally {
+			structureLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Subscribe for the model changes.
+	 * Listener is called while the changed slot is locked, so it should not block.
+	 * @param listener change listener.
+	 * @author ovoievodin
+	 */
+	public void addChangeListener(Consumer<TasksModelChange> listener) {
+		changeListeners.add(listener);
+	}
+
+	private void fireChange(TasksModelChange.Type type, List<Task> tasks) {
+		synchronized (sequencer) {
+			final TasksModelChange change = new TasksModelChange(type, tasks, version + 1);
+			version = change.getVersion();
+			for(Consumer<TasksModelChange> listener : changeListeners) {
+				listener.accept(change);
+			}
+		}
+	}
+
+	/**
+	 * Model is written in it's compact wire form, see {@link TasksModelExternalForm}.
+	 */
+	private Object writeReplace() {
+		return new TasksModelExternalForm(this);
+	}
+
+	/**
+	 * Reads the model, written by the previous versions: the tasks, grouped by execution date into the hash map of the lists.
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		final ObjectInputStream.GetField fields = in.readFields();
+		this.buckets = toBuckets((Map<Date, List<Task>>) fields.get("data", null));
+		this.version = fields.get("version", 0L);
+		initTransientState(0);
 	}
 }
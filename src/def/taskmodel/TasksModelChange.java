@@ -0,0 +1,59 @@
+package def.taskmodel;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Single incremental change of the tasks model.
+ * Carries only the affected tasks and the model version, the change results in,
+ * so the clients can apply it to their local copy of the model instead of reloading the whole one.
+ * Serialized in the compact wire form, see {@link TasksModelChangeExternalForm}.
+ * @author ovoievodin
+ */
+public final class TasksModelChange implements Serializable {
+
+	private static final long serialVersionUID = -3034317994530528071L;
+
+	public enum Type {
+		/** Tasks were added to the schedule. */
+		ADDED,
+		/** Tasks were removed from the schedule on demand. */
+		REMOVED,
+		/** Tasks were taken from the schedule for execution. */
+		EXECUTED
+	}
+
+	private final Type type;
+	private final List<Task> tasks;
+	private final long version;
+
+	public TasksModelChange(Type type, List<Task> tasks, long version) {
+		this.type = type;
+		this.tasks = tasks;
+		this.version = version;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public List<Task> getTasks() {
+		return tasks;
+	}
+
+	/**
+	 * @return version of the model right after this change was applied.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	private Object writeReplace() {
+		return new TasksModelChangeExternalForm(this);
+	}
+
+	@Override
+	public String toString() {
+		return "[ " + type + " v" + version + " :: " + tasks + " ]";
+	}
+}
@@ -0,0 +1,52 @@
+package def.taskmodel;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+
+/**
+ * Serialized form of the {@link TasksModelChange}, which is pushed to every client on every change:
+ * [byte type][version][tasks], the tasks are written as the list, see {@link TaskWireFormat},
+ * so the tasks of the change share the strings table.
+ * @author ovoievodin
+ */
+final class TasksModelChangeExternalForm implements Externalizable {
+
+	private static final long serialVersionUID = 6113837260146377180L;
+
+	private static final TasksModelChange.Type[] TYPES = TasksModelChange.Type.values();
+
+	private TasksModelChange change;
+
+	/**
+	 * Used by the serialization only.
+	 */
+	public TasksModelChangeExternalForm() { }
+
+	TasksModelChangeExternalForm(TasksModelChange change) {
+		this.change = change;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeByte(change.getType().ordinal());
+		TaskWireFormat.writeVarLong(out, change.getVersion());
+		TaskWireFormat.writeTasks(out, change.getTasks());
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		final int type = in.readByte();
+		if(type < 0 || type >= TYPES.length) {
+			throw new StreamCorruptedException("Unknown tasks model change type: " + type);
+		}
+		final long version = TaskWireFormat.readVarLong(in);
+		change = new TasksModelChange(TYPES[type], TaskWireFormat.readTasks(in), version);
+	}
+
+	private Object readResolve() {
+		return change;
+	}
+}
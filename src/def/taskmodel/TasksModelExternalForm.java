@@ -0,0 +1,173 @@
+package def.taskmodel;
+
+import static def.utils.Preferences.WIRE_COMPRESSION_THRESHOLD_BYTES;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Serialized form of the {@link TasksModel}, written from it's consistent cut instead of the model,
+ * and read back as the model itself.
+ * <br>Layout: [byte encoding][raw length][payload length][payload], where the payload is the body,
+ * deflated, if it is longer, than {@link def.utils.Preferences#WIRE_COMPRESSION_THRESHOLD_BYTES}.
+ * <br>Body: [version][last task id][buckets amount]{[signed delta of the execution time][tasks amount]{task}},
+ * buckets in the execution time order, tasks in the order of addition, see {@link TaskWireFormat}.
+ * <br>Lengths are not trusted on reading: the payload is read and inflated by chunks, so the corrupt or cut stream
+ * fails with the {@link StreamCorruptedException}, instead of allocating whatever length it claims.
+ * @author ovoievodin
+ */
+final class TasksModelExternalForm implements Externalizable {
+
+	private static final long serialVersionUID = -1766321409836431907L;
+
+	private static final byte PLAIN = 0;
+	private static final byte DEFLATED = 1;
+
+	private static final int CHUNK_BYTES = 64 * 1024;
+
+	private TasksModel model;
+
+	/**
+	 * Used by the serialization only.
+	 */
+	public TasksModelExternalForm() { }
+
+	TasksModelExternalForm(TasksModel model) {
+		this.model = model;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		final List<Task[]> cut = new ArrayList<>();
+		final long version = model.cut(cut);
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		final DataOutputStream bodyOut = new DataOutputStream(body);
+		TaskWireFormat.writeVarLong(bodyOut, version);
+		TaskWireFormat.writeVarLong(bodyOut, model.getLastTaskId());
+		TaskWireFormat.writeVarLong(bodyOut, cut.size());
+		final TaskWireFormat.StringsWriter strings = new TaskWireFormat.StringsWriter();
+		long previousTime = 0;
+		for(Task[] tasks : cut) {
+			TaskWireFormat.writeSignedVarLong(bodyOut, tasks[0].getExecutionTime() - previousTime);
+			previousTime = tasks[0].getExecutionTime();
+			TaskWireFormat.writeVarLong(bodyOut, tasks.length);
+			for(Task task : tasks) {
+				TaskWireFormat.writeTask(bodyOut, task, strings);
+			}
+		}
+		bodyOut.flush();
+		final boolean isDeflated = body.size() > WIRE_COMPRESSION_THRESHOLD_BYTES;
+		final byte[] payload = isDeflated ? deflate(body) : body.toByteArray();
+		out.writeByte(isDeflated ? DEFLATED : PLAIN);
+		TaskWireFormat.writeVarLong(out, body.size());
+		TaskWireFormat.writeVarLong(out, payload.length);
+		out.write(payload);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException {
+		final byte encoding = in.readByte();
+		if(encoding != PLAIN && encoding != DEFLATED) {
+			throw new StreamCorruptedException("Unknown tasks model encoding: " + encoding);
+		}
+		final int rawLength = TaskWireFormat.readVarInt(in);
+		final int payloadLength = TaskWireFormat.readVarInt(in);
+		if(encoding == PLAIN && payloadLength != rawLength) {
+			throw new StreamCorruptedException("Plain tasks model of " + payloadLength + " bytes instead of " + rawLength);
+		}
+		final byte[] payload = readPayload(in, payloadLength);
+		final byte[] raw = encoding == DEFLATED ? inflate(payload, rawLength) : payload;
+
+		final DataInputStream bodyIn = new DataInputStream(new ByteArrayInputStream(raw));
+		final long version = TaskWireFormat.readVarLong(bodyIn);
+		final long lastTaskId = TaskWireFormat.readVarLong(bodyIn);
+		final int bucketsAmount = TaskWireFormat.readVarInt(bodyIn);
+		final List<TasksBucket> buckets = new ArrayList<>(Math.min(bucketsAmount, raw.length));
+		final TaskWireFormat.StringsReader strings = new TaskWireFormat.StringsReader();
+		long executionTime = 0;
+		for(int i = 0; i < bucketsAmount; i++) {
+			executionTime += TaskWireFormat.readSignedVarLong(bodyIn);
+			final int tasksAmount = TaskWireFormat.readVarInt(bodyIn);
+			final List<Task> tasks = new ArrayList<>(Math.min(tasksAmount, raw.length));
+			for(int j = 0; j < tasksAmount; j++) {
+				tasks.add(TaskWireFormat.readTask(bodyIn, executionTime, strings));
+			}
+			buckets.add(new TasksBucket(executionTime, tasks));
+		}
+		model = new TasksModel(buckets, version, lastTaskId);
+	}
+
+	private Object readResolve() {
+		return model;
+	}
+
+	private static byte[] deflate(ByteArrayOutputStream body) throws IOException {
+		final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			final ByteArrayOutputStream deflated = new ByteArrayOutputStream(body.size() / 4);
+			try (DeflaterOutputStream deflaterOut = new DeflaterOutputStream(deflated, deflater, 64 * 1024)) {
+				body.writeTo(deflaterOut);
+			}
+			return deflated.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Read the payload by chunks, so the buffer grows with the bytes, which are actually there.
+	 */
+	private static byte[] readPayload(ObjectInput in, int length) throws IOException {
+		final ByteArrayOutputStream payload = new ByteArrayOutputStream(Math.min(length, CHUNK_BYTES));
+		final byte[] chunk = new byte[Math.min(length, CHUNK_BYTES)];
+		for(int remaining = length; remaining > 0; ) {
+			final int read = in.read(chunk, 0, Math.min(remaining, chunk.length));
+			if(read < 0) {
+				throw new StreamCorruptedException("Tasks model is cut after " + (length - remaining) + " of " + length + " bytes");
+			}
+			payload.write(chunk, 0, read);
+			remaining -= read;
+		}
+		return payload.toByteArray();
+	}
+
+	private static byte[] inflate(byte[] payload, int rawLength) throws IOException {
+		final Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(payload);
+			final ByteArrayOutputStream raw = new ByteArrayOutputStream(Math.min(rawLength, CHUNK_BYTES));
+			final byte[] chunk = new byte[CHUNK_BYTES];
+			while(!inflater.finished()) {
+				final int length = inflater.inflate(chunk);
+				if(length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				if(raw.size() + length > rawLength) {
+					throw new StreamCorruptedException("Deflated tasks model is longer, than " + rawLength + " bytes");
+				}
+				raw.write(chunk, 0, length);
+			}
+			if(raw.size() != rawLength) {
+				throw new StreamCorruptedException("Deflated tasks model is " + raw.size() + " bytes long instead of " + rawLength);
+			}
+			return raw.toByteArray();
+		} catch (DataFormatException e) {
+			throw new StreamCorruptedException("Broken deflated tasks model: " + e.getMessage());
+		} finally {
+			inflater.end();
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package def.taskmodel;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Single page of the tasks query result.
+ * @author ovoievodin
+ */
+public final class TasksPage implements Serializable {
+
+	private static final long serialVersionUID = 2921655950616734245L;
+
+	private final List<Task> tasks;
+	private final TasksCursor nextCursor;
+	private final long version;
+	private final int tasksAmount;
+
+	public TasksPage(List<Task> tasks, TasksCursor nextCursor, long version) {
+		this(tasks, nextCursor, version, -1);
+	}
+
+	/**
+	 * @param tasksAmount total amount of the tasks in the model, the page was taken from.
+	 */
+	public TasksPage(List<Task> tasks, TasksCursor nextCursor, long version, int tasksAmount) {
+		this.tasks = tasks;
+		this.nextCursor = nextCursor;
+		this.version = version;
+		this.tasksAmount = tasksAmount;
+	}
+
+	public List<Task> getTasks() {
+		return tasks;
+	}
+
+	/**
+	 * @return cursor for the next page or null, if this page is the last one.
+	 */
+	public TasksCursor getNextCursor() {
+		return nextCursor;
+	}
+
+	/**
+	 * @return version of the model, the page was taken from.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return total amount of the tasks in the model, the page was taken from, regardless of the query, or -1, if it is unknown.
+	 */
+	public int getTasksAmount() {
+		return tasksAmount;
+	}
+}
@@ -0,0 +1,103 @@
+package def.taskmodel;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Query for a single page of the scheduled tasks.
+ * Selects the tasks with execution time inside of [from, to) window,
+ * optionally belonging to the single owner, in the execution time order.
+ * The first page can start after the offset, so the page of any position is taken without the previous pages.
+ * @author ovoievodin
+ */
+public final class TasksQuery implements Serializable {
+
+	private static final long serialVersionUID = 4127764838573164502L;
+
+	private final Date from;
+	private final Date to;
+	private final Long ownerId;
+	private final int pageSize;
+	private final TasksCursor cursor;
+	private final int offset;
+
+	/**
+	 * Query for the first page.
+	 * @param from window start (inclusive) or null for no lower bound.
+	 * @param to window end (exclusive) or null for no upper bound.
+	 * @param ownerId owner of the tasks or null for tasks of all owners.
+	 * @param pageSize maximal amount of tasks in the page.
+	 */
+	public TasksQuery(Date from, Date to, Long ownerId, int pageSize) {
+		this(from, to, ownerId, pageSize, null);
+	}
+
+	/**
+	 * Query for the page, continuing the previous one.
+	 * @param cursor position, the previous page has ended at.
+	 */
+	public TasksQuery(Date from, Date to, Long ownerId, int pageSize, TasksCursor cursor) {
+		this(from, to, ownerId, pageSize, cursor, 0);
+	}
+
+	/**
+	 * Query for the page, starting at the position among the selected tasks.
+	 * @param offset amount of the selected tasks to skip.
+	 */
+	public TasksQuery(Date from, Date to, Long ownerId, int pageSize, int offset) {
+		this(from, to, ownerId, pageSize, null, offset);
+	}
+
+	private TasksQuery(Date from, Date to, Long ownerId, int pageSize, TasksCursor cursor, int offset) {
+		this.from = from;
+		this.to = to;
+		this.ownerId = ownerId;
+		this.pageSize = pageSize;
+		this.cursor = cursor;
+		this.offset = offset;
+	}
+
+	/**
+	 * Same query for the page, following the specified one.
+	 * @param page previous page.
+	 * @return next page query or null, if the specified page is the last one.
+	 * @author ovoievodin
+	 */
+	public TasksQuery next(TasksPage page) {
+		return page.getNextCursor() == null ? null : new TasksQuery(from, to, ownerId, pageSize, page.getNextCursor());
+	}
+
+	public Date getFrom() {
+		return from;
+	}
+
+	public Date getTo() {
+		return to;
+	}
+
+	public Long getOwnerId() {
+		return ownerId;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public TasksCursor getCursor() {
+		return cursor;
+	}
+
+	/**
+	 * @return amount of the selected tasks, the page starts after, 0 for the pages, continuing the previous ones.
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return true if the task matches the owner filter of the query.
+	 */
+	public boolean matches(Task task) {
+		return ownerId == null || ownerId == task.getOwnerId();
+	}
+}
@@ -1,44 +1,218 @@
 package def.taskmodel;
 
+import static def.utils.Preferences.GUI_TABLE_MAX_ROW_EVENTS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.swing.table.AbstractTableModel;
 
 /**
- * Just a simple table model for displaying currently 
+ * Just a simple table model for displaying currently
  * scheduled tasks on the server in the client's GUI.
+ * Keeps it's own rows, sorted the same way the model is: by execution time,
+ * tasks of the same time in the order of addition.
+ * Rows are taken from the model once, on load, and then the model changes are applied to them one by one,
+ * firing the row insertion/deletion events, so the table repaints only the changed rows
+ * and the row count and row lookup cost nothing, however large the schedule is.
+ * Used on the event dispatch thread only.
  * @author ovoievodin
  *
  */
 public class TasksTableModel extends AbstractTableModel {
 
 	private static final long serialVersionUID = -4702828061603057203L;
-	
+
+	private static final Comparator<Task> BY_EXECUTION_TIME = Comparator.comparingLong(Task::getExecutionTime);
+
 	private final String[] columnHeaders = {
 			"Execution Time",
-			"Eexcution Target"
+			"Eexcution Target",
+			"Recurrence"
 	};
-	
-	private TasksModel data;
-	private List<Task> cache;
-	
+
+	private final ArrayList<Task> rows;
+
+	/**
+	 * Version of the model, the rows are up to date with.
+	 */
+	private long version;
+
 	public TasksTableModel(TasksModel model) {
+		this.rows = new ArrayList<>();
 		this.setTasksModel(model);
 	}
-	
+
+	/**
+	 * Replace all of the rows with the tasks of the model.
+	 * Rows are taken from the consistent cut of the model, so the changes, already reflected in it, are skipped later.
+	 * @param model tasks model or null for the empty table.
+	 * @author ovoievodin
+	 */
 	public void setTasksModel(TasksModel model) {
-		this.data = model;
+		rows.clear();
+		version = 0;
 		if(model != null) {
-			this.cache = model.asList(); // cache the data in useful for table format.
+			final List<Task[]> cut = new ArrayList<>();
+			version = model.cut(cut);
+			int amount = 0;
+			for(Task[] tasks : cut) {
+				amount += tasks.length;
+			}
+			rows.ensureCapacity(amount);
+			for(Task[] tasks : cut) {
+				rows.addAll(Arrays.asList(tasks));
+			}
+		}
+		rows.trimToSize();
+		fireTableDataChanged();
+	}
+
+	/**
+	 * Apply the model change to the rows, firing the event of every inserted or deleted row.
+	 * The change of too many tasks is applied in a single pass, firing the single data change event instead.
+	 * Changes, which are already reflected in the rows, are skipped.
+	 * @param change change of the model, the rows were taken from.
+	 * @author ovoievodin
+	 */
+	public void applyChange(TasksModelChange change) {
+		if(change.getVersion() <= version) {
+			return;
+		}
+		version = change.getVersion();
+		final boolean isAdded = change.getType() == TasksModelChange.Type.ADDED;
+		if(change.getTasks().size() > GUI_TABLE_MAX_ROW_EVENTS) {
+			if(isAdded) {
+				insertAll(change.getTasks());
+			} else {
+				deleteAll(change.getTasks());
+			}
+			fireTableDataChanged();
+			return;
+		}
+		for(Task task : change.getTasks()) {
+			if(isAdded) {
+				final int row = firstRowOf(task.getExecutionTime(), false);
+				rows.add(row, task);
+				fireTableRowsInserted(row, row);
+			} else {
+				final int row = rowOf(task);
+				if(row >= 0) {
+					rows.remove(row);
+					fireTableRowsDeleted(row, row);
+				}
+			}
 		}
 	}
-	
-	public List<Task> getCache() {
-		return cache;
+
+	/**
+	 * @return task, displayed in the row.
+	 */
+	public Task getTaskAt(int row) {
+		return rows.get(row);
+	}
+
+	public long getVersion() {
+		return version;
 	}
-	
-	public TasksModel getData() {
-		return data;
+
+	/**
+	 * Binary search over the execution times of the rows.
+	 * @param isInclusive true -> the first row of the execution time, false -> the first row after it.
+	 */
+	private int firstRowOf(long executionTime, boolean isInclusive) {
+		int low = 0;
+		int high = rows.size();
+		while(low < high) {
+			final int middle = (low + high) >>> 1;
+			final long middleTime = rows.get(middle).getExecutionTime();
+			if(middleTime < executionTime || (!isInclusive && middleTime == executionTime)) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Find the row of the task among the rows of it's execution time the same way the model does:
+	 * the task with the same id, if there is such, or the first equal one otherwise.
+	 * @return row of the task or -1, if there is no such.
+	 */
+	private int rowOf(Task task) {
+		int firstEqual = -1;
+		for(int row = firstRowOf(task.getExecutionTime(), true); row < rows.size() && rows.get(row).getExecutionTime() == task.getExecutionTime(); row++) {
+			final Task candidate = rows.get(row);
+			if(task.getId() != 0 && candidate.getId() == task.getId()) {
+				return row;
+			}
+			if(firstEqual < 0 && candidate.equals(task)) {
+				firstEqual = row;
+			}
+		}
+		return firstEqual;
+	}
+
+	/**
+	 * Merge the tasks into the rows in a single pass.
+	 */
+	private void insertAll(List<Task> tasks) {
+		final List<Task> added = new ArrayList<>(tasks);
+		added.sort(BY_EXECUTION_TIME); // stable, so the tasks of the same time keep the order of addition.
+		final List<Task> merged = new ArrayList<>(rows.size() + added.size());
+		int i = 0;
+		for(Task task : added) {
+			while(i < rows.size() && rows.get(i).getExecutionTime() <= task.getExecutionTime()) {
+				merged.add(rows.get(i++));
+			}
+			merged.add(task);
+		}
+		merged.addAll(rows.subList(i, rows.size()));
+		rows.clear();
+		rows.addAll(merged);
+	}
+
+	/**
+	 * Filter the tasks out of the rows in a single pass: the tasks with id by id, the others by equality.
+	 */
+	private void deleteAll(List<Task> tasks) {
+		final Set<Long> ids = new HashSet<>();
+		final Map<Task, Integer> equalTasks = new HashMap<>(); // amount of the equal tasks without id to delete.
+		for(Task task : tasks) {
+			if(task.getId() != 0) {
+				ids.add(task.getId());
+			} else {
+				equalTasks.merge(task, 1, Integer::sum);
+			}
+		}
+		int kept = 0;
+		for(Task row : rows) {
+			final boolean isDeleted = row.getId() != 0 ? ids.remove(row.getId()) : takeOne(equalTasks, row);
+			if(!isDeleted) {
+				rows.set(kept++, row);
+			}
+		}
+		rows.subList(kept, rows.size()).clear();
+	}
+
+	private static boolean takeOne(Map<Task, Integer> amounts, Task task) {
+		final Integer amount = amounts.get(task);
+		if(amount == null) {
+			return false;
+		}
+		if(amount == 1) {
+			amounts.remove(task);
+		} else {
+			amounts.put(task, amount - 1);
+		}
+		return true;
 	}
 
 	@Override
@@ -53,14 +227,15 @@ public class TasksTableModel extends AbstractTableModel {
 
 	@Override
 	public int getRowCount() {
-		return data != null ? this.data.getTasksAmount() : 0;
+		return rows.size();
 	}
 
 	@Override
 	public Object getValueAt(int row, int column) {
 		switch (column) {
-			case 0: return cache.get(row).getExecutionDate();
-			case 1: return cache.get(row).getTarget();
+			case 0: return rows.get(row).getExecutionDate();
+			case 1: return rows.get(row).getTarget();
+			case 2: return rows.get(row).getRecurrence();
 			default: return null;
 		}
 	}
@@ -0,0 +1,189 @@
+package def.taskmodel.source;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import def.taskmodel.Recurrence;
+import def.taskmodel.Task;
+import def.taskmodel.TasksModel;
+
+/**
+ * Versioned binary snapshot format of the tasks model.
+ * Written sequentially through the buffered stream and loaded through the memory-mapped file,
+ * so loading does no reflection and allocates only the tasks themselves.
+ * <br>Layout (big-endian):
+ * <li>header: [int magic][short format version][long model version][long last task id]</li>
+ * <li>strings table: [int strings amount]{[int utf-8 length][utf-8 bytes]}</li>
+ * <li>buckets in execution time order: [int buckets amount]{[long epoch millis][int tasks amount]{[long task id][long owner id][int target index][int recurrence index]}}</li>
+ * Equal targets and recurrence specs are stored once in the strings table, index -1 stands for null.
+ * Format version 1 has no recurrence index, and versions 1 and 2 have no task ids, they are still readable.
+ * @author ovoievodin
+ */
+public final class BinarySnapshotFormat {
+
+	public static final int MAGIC = 0x544D444C; // "TMDL"
+	public static final short FORMAT_VERSION = 3;
+
+	private static final short FORMAT_VERSION_WITHOUT_RECURRENCE = 1;
+	private static final short FORMAT_VERSION_WITHOUT_TASK_IDS = 2;
+
+	private static final int NULL_STRING = -1;
+
+	private BinarySnapshotFormat() { }
+
+	/**
+	 * Check whether the file is written in this format.
+	 * @author ovoievodin
+	 */
+	public static boolean isBinarySnapshot(Path snapshotPath) throws IOException {
+		try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+			final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+			while(header.hasRemaining() && channel.read(header) >= 0) { /* reading the magic */ }
+			return !header.hasRemaining() && header.getInt(0) == MAGIC;
+		}
+	}
+
+	/**
+	 * Read only the version of the model, the snapshot was taken at.
+	 * @author ovoievodin
+	 */
+	public static long readVersion(Path snapshotPath) throws IOException {
+		try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+			final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + Short.BYTES + Long.BYTES);
+			while(header.hasRemaining() && channel.read(header) >= 0) { /* reading the header */ }
+			if(header.hasRemaining() || header.getInt(0) != MAGIC) {
+				throw new IOException("Not a binary tasks model snapshot: " + snapshotPath);
+			}
+			return header.getLong(Integer.BYTES + Short.BYTES);
+		}
+	}
+
+	/**
+	 * Write the model snapshot.
+	 * Only the consistent cut of the model is taken under it's lock, the writing itself does not block the model changes.
+	 * @param model model to write.
+	 * @param snapshotStream target stream, closed by the caller.
+	 * @throws IOException
+	 * @author ovoievodin
+	 */
+	public static void write(TasksModel model, FileOutputStream snapshotStream) throws IOException {
+		final List<Task[]> buckets = new ArrayList<>();
+		final long version = model.cut(buckets); // consistent cut, the writing itself does not block the model changes.
+		final long lastTaskId = model.getLastTaskId(); // never less, than any id in the cut.
+
+		final Map<String, Integer> stringIndexes = new HashMap<>();
+		final List<byte[]> strings = new ArrayList<>();
+		for(Task[] bucket : buckets) {
+			for(Task task : bucket) {
+				indexString(task.getTarget(), stringIndexes, strings);
+				if(task.getRecurrence() != null) {
+					indexString(task.getRecurrence().getSpec(), stringIndexes, strings);
+				}
+			}
+		}
+
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(snapshotStream, 64 * 1024));
+		out.writeInt(MAGIC);
+		out.writeShort(FORMAT_VERSION);
+		out.writeLong(version);
+		out.writeLong(lastTaskId);
+		out.writeInt(strings.size());
+		for(byte[] string : strings) {
+			out.writeInt(string.length);
+			out.write(string);
+		}
+		out.writeInt(buckets.size());
+		for(int i = 0; i < buckets.size(); i++) {
+			out.writeLong(buckets.get(i)[0].getExecutionTime());
+			out.writeInt(buckets.get(i).length);
+			for(Task task : buckets.get(i)) {
+				out.writeLong(task.getId());
+				out.writeLong(task.getOwnerId());
+				out.writeInt(task.getTarget() == null ? NULL_STRING : stringIndexes.get(task.getTarget()));
+				out.writeInt(task.getRecurrence() == null ? NULL_STRING : stringIndexes.get(task.getRecurrence().getSpec()));
+			}
+		}
+		out.flush();
+	}
+
+	private static void indexString(String string, Map<String, Integer> stringIndexes, List<byte[]> strings) {
+		if(string != null && !stringIndexes.containsKey(string)) {
+			stringIndexes.put(string, strings.size());
+			strings.add(string.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Load the model snapshot through the memory-mapped file.
+	 * Tasks of the same bucket share the single execution date instance.
+	 * @param snapshotPath snapshot file path.
+	 * @return loaded model.
+	 * @throws IOException when the file is not a snapshot of the supported version or is broken.
+	 * @author ovoievodin
+	 */
+	public static TasksModel read(Path snapshotPath) throws IOException {
+		try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+			if(channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot is too large to be mapped: " + channel.size() + " bytes");
+			}
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(buffer.getInt() != MAGIC) {
+				throw new IOException("Not a binary tasks model snapshot: " + snapshotPath);
+			}
+			final short formatVersion = buffer.getShort();
+			if(formatVersion < FORMAT_VERSION_WITHOUT_RECURRENCE || formatVersion > FORMAT_VERSION) {
+				throw new IOException("Unsupported tasks model snapshot format version: " + formatVersion);
+			}
+			final long version = buffer.getLong();
+			final boolean hasTaskIds = formatVersion > FORMAT_VERSION_WITHOUT_TASK_IDS;
+			final long lastTaskId = hasTaskIds ? buffer.getLong() : 0;
+
+			final boolean hasRecurrence = formatVersion > FORMAT_VERSION_WITHOUT_RECURRENCE;
+			final String[] strings = new String[buffer.getInt()];
+			for(int i = 0; i < strings.length; i++) {
+				final byte[] string = new byte[buffer.getInt()];
+				buffer.get(string);
+				strings[i] = new String(string, StandardCharsets.UTF_8);
+			}
+			final Map<String, Recurrence> recurrences = new HashMap<>();
+
+			final int bucketsAmount = buffer.getInt();
+			final Map<Date, List<Task>> data = new HashMap<>(bucketsAmount * 4 / 3 + 1);
+			for(int i = 0; i < bucketsAmount; i++) {
+				final long executionTime = buffer.getLong();
+				final int tasksAmount = buffer.getInt();
+				final List<Task> bucket = new ArrayList<>(tasksAmount);
+				for(int j = 0; j < tasksAmount; j++) {
+					final long taskId = hasTaskIds ? buffer.getLong() : 0;
+					final long ownerId = buffer.getLong();
+					final int targetIndex = buffer.getInt();
+					final Task task = new Task(executionTime, targetIndex == NULL_STRING ? null : strings[targetIndex]);
+					task.setOwnerId(ownerId);
+					task.setId(taskId);
+					final int recurrenceIndex = hasRecurrence ? buffer.getInt() : NULL_STRING;
+					if(recurrenceIndex != NULL_STRING) {
+						task.setRecurrence(recurrences.computeIfAbsent(strings[recurrenceIndex], Recurrence::parse));
+					}
+					bucket.add(task);
+				}
+				data.put(new Date(executionTime), bucket);
+			}
+			return new TasksModel(data, version, lastTaskId);
+		} catch (RuntimeException e) {
+			throw new IOException("Broken tasks model snapshot: " + e, e);
+		}
+	}
+}
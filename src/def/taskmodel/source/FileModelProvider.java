@@ -2,51 +2,97 @@ package def.taskmodel.source;
 
 import static def.utils.Preferences.SOURCE_MODEL_FILNAME;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 import def.taskmodel.TasksModel;
 
 public class FileModelProvider extends TasksModelProvider {
 
+	protected final String modelFileName;
+
+	public FileModelProvider() {
+		this(SOURCE_MODEL_FILNAME);
+	}
+
+	/**
+	 * @param modelFileName path of the model file.
+	 */
+	public FileModelProvider(String modelFileName) {
+		this.modelFileName = modelFileName;
+	}
+
+	/**
+	 * Load the model from the file, the missing file means the empty model.
+	 * @throws UncheckedIOException if the file exists, but can not be read. The file is left as it is
+	 * and no model is loaded, so the server does not start over the lost schedule and does not overwrite it.
+	 */
 	@Override
 	public void load() {
-		File modelFile = new File(SOURCE_MODEL_FILNAME);
+		File modelFile = new File(modelFileName);
 		if(!modelFile.exists()) {
 			model = new TasksModel(); // we have nothing to load :(
 		} else {
 			try {
-				FileInputStream inFileStream;
-				inFileStream = new FileInputStream(modelFile);
-				ObjectInputStream inObjStream = new ObjectInputStream(inFileStream);
-				model = (TasksModel) inObjStream.readObject();
-				inObjStream.close();
-				inFileStream.close();
-			} catch (IOException | ClassNotFoundException e) {
-				System.err.println("Tasks Model loading error: " + e.getMessage());
+				if(BinarySnapshotFormat.isBinarySnapshot(modelFile.toPath())) {
+					model = BinarySnapshotFormat.read(modelFile.toPath());
+				} else {
+					model = readSerializedModel(modelFile); // saved by the previous versions.
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Tasks Model loading error, " + modelFileName + " is not readable", e);
+			} catch (ClassNotFoundException e) {
+				throw new UncheckedIOException("Tasks Model loading error, " + modelFileName + " is not readable", new IOException(e));
 			}	
 		}
 	}
 
+	/**
+	 * Read the model, written with the java serialization.
+	 * @author ovoievodin
+	 */
+	protected static TasksModel readSerializedModel(File modelFile) throws IOException, ClassNotFoundException {
+		try (FileInputStream inFileStream = new FileInputStream(modelFile);
+			 ObjectInputStream inObjStream = new ObjectInputStream(new BufferedInputStream(inFileStream))) {
+			return (TasksModel) inObjStream.readObject();
+		}
+	}
+
 	@Override
-	public void save() {
-		File modelFile = new File(SOURCE_MODEL_FILNAME);
+	public synchronized void save() {
+		final long start = System.nanoTime();
 		try {
-			if(!modelFile.exists()) {
-				modelFile.createNewFile();
-			}
-			FileOutputStream outFileStream = new FileOutputStream(modelFile);
-			ObjectOutputStream outObjStream = new ObjectOutputStream(outFileStream);
-			outObjStream.writeObject(model);
-			outObjStream.close();
-			outFileStream.close();
+			writeSnapshot(model);
+			writeLatency.recordSince(start);
 			System.out.println("Tasks Model successfully saved!");
 		} catch (IOException e) {
 			System.err.println("Tasks Model saving error: " + e.getMessage());
 		}
 	}
+
+	/**
+	 * Write the model to the temporary file first and then atomically replace the model file with it,
+	 * so the crash in the middle of the saving never leaves the model file truncated.
+	 * @param snapshot model to write.
+	 * @throws IOException
+	 * @author ovoievodin
+	 */
+	protected void writeSnapshot(TasksModel snapshot) throws IOException {
+		final Path modelPath = Paths.get(modelFileName);
+		final Path tempPath = Paths.get(modelFileName + ".tmp");
+		try (FileOutputStream outFileStream = new FileOutputStream(tempPath.toFile())) {
+			BinarySnapshotFormat.write(snapshot, outFileStream);
+			outFileStream.getFD().sync();
+		}
+		Files.move(tempPath, modelPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
 }
@@ -0,0 +1,499 @@
+package def.taskmodel.source;
+
+import static def.utils.Preferences.JOURNAL_COMPACTION_THRESHOLD_BYTES;
+import static def.utils.Preferences.JOURNAL_ORPHANED_SEGMENT_PREFIX;
+import static def.utils.Preferences.JOURNAL_SEGMENT_FILENAME_PREFIX;
+import static def.utils.Preferences.JOURNAL_WRITE_RETRY_MILLIS;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import def.taskmodel.Recurrence;
+import def.taskmodel.Task;
+import def.taskmodel.TasksModel;
+import def.taskmodel.TasksModelChange;
+
+/**
+ * Write-ahead journaled tasks model provider.
+ * Instead of rewriting the whole model on every mutation, each model change is appended
+ * to the journal as a compact record, and the model file becomes just a periodic snapshot.
+ * <li>Changes, made concurrently, are written and fsync-ed by a single journal thread in groups,
+ * {@link #save()} only waits until all the changes made before the call are durable.</li>
+ * <li>Journal is split to segments. Once the current segment grows big enough,
+ * a new one is started and the snapshot is written in the background,
+ * after which the older segments are deleted.</li>
+ * <li>Failed write keeps the changes pending: the current segment (with the possibly torn tail) is abandoned
+ * and the whole group is written again to the next one, until it succeeds. {@link #save()} reports the failure meanwhile.</li>
+ * <li>Loading reads the snapshot and replays the journal records, which are newer than it.
+ * Replay stops at the gap in the versions, the segments after it are set aside as orphaned, so the journal is not continued over them.</li>
+ * <li>Standby replica, taking over, replays only the records, newer than it's replicated model, see {@link #adopt(TasksModel)}.</li>
+ *
+ * Record format: [int payload length][int payload crc32][payload], where payload is:
+ * [byte change type][long model version][int tasks amount]{[long execution time][long owner id][UTF target]}.
+ * Change of the recurring tasks has the {@link #RECURRENCE_FLAG} in the type byte, and it's every task is followed by
+ * [boolean is recurring][UTF recurrence spec, if recurring].
+ * Change of the tasks with ids has the {@link #TASK_ID_FLAG} in the type byte, and it's every task is followed by [long task id] before that.
+ * @author ovoievodin
+ */
+public class JournalModelProvider extends FileModelProvider {
+
+	private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * Records without it are written by the previous versions or have no recurring tasks.
+	 */
+	private static final int RECURRENCE_FLAG = 0x40;
+
+	/**
+	 * Records without it are written by the previous versions or have no tasks with ids.
+	 */
+	private static final int TASK_ID_FLAG = 0x20;
+
+	private final Object journalLock = new Object();
+
+	/** Encoded, but not yet written records. Guarded by journalLock. */
+	private ByteArrayOutputStream pendingRecords;
+	private DataOutputStream pendingOut;
+	/** Version of the last pending record. Guarded by journalLock. */
+	private long pendingVersion;
+	/** Version of the last record, which is already on disk. Guarded by journalLock. */
+	private long durableVersion;
+	/** Error of the last write, null if it has succeeded. Guarded by journalLock. */
+	private IOException writeFailure;
+
+	/** Accessed only by the journal thread. */
+	private FileChannel segment;
+	private long segmentSequence;
+
+	private volatile boolean isCompacting;
+
+	private volatile boolean isClosed;
+
+	public JournalModelProvider() {
+		super();
+	}
+
+	/**
+	 * @param modelFileName path of the model snapshot file, journal segments are kept next to it.
+	 */
+	public JournalModelProvider(String modelFileName) {
+		super(modelFileName);
+	}
+
+	@Override
+	public void load() {
+		super.load();
+		final List<Path> segments = listSegments();
+		for(int i = 0; i < segments.size(); i++) {
+			if(!replay(segments.get(i))) {
+				setAside(segments.subList(i, segments.size()));
+				break;
+			}
+		}
+		startJournal(segments);
+		System.out.println("Tasks Model loaded at version " + model.getVersion() + ", " + segments.size() + " journal segment(s) replayed.");
+	}
+
+	/**
+	 * Take over the model, which is already kept in memory (e.g. by the standby replica), instead of loading it from scratch:
+	 * only the journal records, newer than the model, are replayed on top of it.
+	 * The result is written as the new snapshot, so the journal is continued from it's version.
+	 * Falls back to the full load, if the snapshot or the journal on disk does not continue the model.
+	 * @param warmModel model to take over.
+	 * @author ovoievodin
+	 */
+	public void adopt(TasksModel warmModel) {
+		final long warmVersion = warmModel.getVersion();
+		model = warmModel;
+		final List<Path> segments = listSegments();
+		boolean isContinued = isSnapshotBehind(warmVersion);
+		for(Path segmentPath : segments) {
+			isContinued = isContinued && replay(segmentPath);
+		}
+		if(!isContinued) {
+			System.out.println("Tasks Model on disk does not continue the version " + warmVersion + ", loading it from scratch.");
+			load();
+			return;
+		}
+		try {
+			writeSnapshot(model);
+			for(Path segmentPath : segments) {
+				Files.deleteIfExists(segmentPath);
+			}
+		} catch (IOException e) {
+			System.err.println("Tasks Model snapshot writing error: " + e.getMessage());
+		}
+		startJournal(segments);
+		System.out.println("Tasks Model adopted at version " + warmVersion + ", caught up to " + model.getVersion() + " from the journal.");
+	}
+
+	private boolean isSnapshotBehind(long version) {
+		final Path modelPath = Paths.get(modelFileName);
+		try {
+			return !Files.exists(modelPath) || BinarySnapshotFormat.readVersion(modelPath) <= version;
+		} catch (IOException e) {
+			return false; // written by the previous versions, so the version is unknown.
+		}
+	}
+
+	/**
+	 * Start journaling the changes of the loaded model into the segment, following the existing ones.
+	 */
+	private void startJournal(List<Path> segments) {
+		final long loadedVersion = model.getVersion();
+		pendingRecords = new ByteArrayOutputStream();
+		pendingOut = new DataOutputStream(pendingRecords);
+		pendingVersion = loadedVersion;
+		durableVersion = loadedVersion;
+		segmentSequence = segments.isEmpty() ? 0 : sequenceOf(segments.get(segments.size() - 1));
+		try {
+			openNextSegment();
+		} catch (IOException e) {
+			System.err.println("Tasks journal opening error: " + e.getMessage());
+		}
+		model.addChangeListener(this::append);
+		final Thread journalThread = new Thread(this::writeJournal, "tasks-journal");
+		journalThread.setDaemon(true);
+		journalThread.start();
+	}
+
+	/**
+	 * Segments, which do not continue the model, are renamed, so they are neither replayed, nor continued, nor deleted,
+	 * but are kept for the manual recovery.
+	 */
+	private void setAside(List<Path> orphanedSegments) {
+		System.err.println("Tasks journal has a gap after the version " + model.getVersion() + ", "
+				+ orphanedSegments.size() + " segment(s) are not replayed and are kept as " + JOURNAL_ORPHANED_SEGMENT_PREFIX + "*");
+		final String orphanedPrefix = JOURNAL_ORPHANED_SEGMENT_PREFIX + System.currentTimeMillis() + ".";
+		for(Path segmentPath : new ArrayList<>(orphanedSegments)) {
+			try {
+				Files.move(segmentPath, segmentPath.resolveSibling(orphanedPrefix + segmentPath.getFileName()));
+			} catch (IOException e) {
+				System.err.println("Tasks journal segment " + segmentPath + " setting aside error: " + e.getMessage());
+			}
+		}
+		orphanedSegments.clear();
+	}
+
+	/**
+	 * Wait until every change, made before this call, is written to the journal and fsync-ed.
+	 * @throws UncheckedIOException if the journal writes are failing, so the changes are not durable yet:
+	 * they stay pending and are written, once the journal recovers. Thrown as well, if the thread is interrupted
+	 * while waiting (the interrupt flag is kept), since the changes may still be not durable then.
+	 */
+	@Override
+	public void save() {
+		final long version = model.getVersion();
+		synchronized (journalLock) {
+			while(durableVersion < version && !isClosed) {
+				if(writeFailure != null) {
+					throw new UncheckedIOException("Tasks journal is failing, changes after the version " + durableVersion + " are not durable yet", writeFailure);
+				}
+				try {
+					journalLock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new UncheckedIOException(new InterruptedIOException("Interrupted while waiting for the changes after the version " + durableVersion + " to be durable"));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write the pending records, stop the journal thread and close the current segment.
+	 * @author ovoievodin
+	 */
+	public void close() {
+		save();
+		isClosed = true;
+		synchronized (journalLock) {
+			journalLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Encode the change and pass it to the journal thread.
+	 * Called while the model change is being published, so never touches the disk.
+	 */
+	private void append(TasksModelChange change) {
+		synchronized (journalLock) {
+			try {
+				writeRecord(pendingOut, change);
+			} catch (IOException e) {
+				// never thrown by the in-memory stream.
+				throw new IllegalStateException(e);
+			}
+			pendingVersion = change.getVersion();
+			journalLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Journal thread job: take everything, what was appended since the last write,
+	 * write it with a single call and fsync once for the whole group.
+	 * The records are dropped from the pending ones only once they are durable.
+	 */
+	private void writeJournal() {
+		while(!isClosed) {
+			final byte[] records;
+			final long version;
+			synchronized (journalLock) {
+				while(pendingVersion == durableVersion && !isClosed) {
+					try {
+						journalLock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				records = pendingRecords.toByteArray();
+				version = pendingVersion;
+			}
+			final long start = System.nanoTime();
+			try {
+				final ByteBuffer buffer = ByteBuffer.wrap(records);
+				while(buffer.hasRemaining()) {
+					segment.write(buffer);
+				}
+				segment.force(false);
+				writeLatency.recordSince(start);
+			} catch (IOException | RuntimeException e) {
+				if(!retryAfter(e)) {
+					return;
+				}
+				continue;
+			}
+			synchronized (journalLock) {
+				final byte[] pending = pendingRecords.toByteArray(); // records, appended during the write, stay pending.
+				pendingRecords.reset();
+				pendingRecords.write(pending, records.length, pending.length - records.length);
+				durableVersion = version;
+				writeFailure = null;
+				journalLock.notifyAll();
+			}
+			compactIfNeeded();
+		}
+		try {
+			segment.close();
+		} catch (IOException e) {
+			System.err.println("Tasks journal closing error: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Report the failed write to the waiting savers and prepare the retry: the current segment may end with the torn record now,
+	 * and the replay stops at it, so the group is written again to the next segment.
+	 * @return false, if the journal thread is interrupted.
+	 */
+	private boolean retryAfter(Exception error) {
+		System.err.println("Tasks journal writing error, retrying in " + JOURNAL_WRITE_RETRY_MILLIS + "ms: " + error.getMessage());
+		synchronized (journalLock) {
+			writeFailure = error instanceof IOException ? (IOException) error : new IOException(error);
+			journalLock.notifyAll();
+		}
+		try {
+			Thread.sleep(JOURNAL_WRITE_RETRY_MILLIS);
+			openNextSegment();
+		} catch (InterruptedException e) {
+			return false;
+		} catch (IOException e) {
+			System.err.println("Tasks journal opening error: " + e.getMessage());
+		}
+		return true;
+	}
+
+	private void compactIfNeeded() {
+		try {
+			if(isCompacting || segment.size() < JOURNAL_COMPACTION_THRESHOLD_BYTES) {
+				return;
+			}
+			final long compactedSequence = segmentSequence;
+			openNextSegment();
+			isCompacting = true;
+			final Thread compactionThread = new Thread(() -> compact(compactedSequence), "tasks-journal-compaction");
+			compactionThread.setDaemon(true);
+			compactionThread.start();
+		} catch (IOException e) {
+			System.err.println("Tasks journal rotation error: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Write the snapshot of the model and delete the journal segments, which are covered by it.
+	 * Every record of the segments up to the specified one was made before the snapshot is taken,
+	 * so they are safe to delete once the snapshot is on disk.
+	 * @param lastCompactedSequence sequence number of the last segment to delete.
+	 */
+	private void compact(long lastCompactedSequence) {
+		try {
+			writeSnapshot(model); // consistent cut of the model is taken, see TasksModel#cut(List).
+			for(Path segmentPath : listSegments()) {
+				if(sequenceOf(segmentPath) <= lastCompactedSequence) {
+					Files.deleteIfExists(segmentPath);
+				}
+			}
+			System.out.println("Tasks journal compacted up to the segment " + lastCompactedSequence);
+		} catch (IOException e) {
+			System.err.println("Tasks journal compaction error: " + e.getMessage());
+		} finally {
+			isCompacting = false;
+		}
+	}
+
+	private void openNextSegment() throws IOException {
+		if(segment != null) {
+			try {
+				segment.close();
+			} catch (IOException e) {
+				System.err.println("Tasks journal segment closing error: " + e.getMessage()); // it's records are fsync-ed or written again.
+			}
+		}
+		segmentSequence++;
+		segment = FileChannel.open(segmentPath(segmentSequence),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Apply the records of the journal segment to the loaded model.
+	 * Records, which are already in the snapshot, are skipped.
+	 * Replay stops at the first torn or corrupted record, which can only be the tail of the last write.
+	 * @return false, if the segment does not continue the model.
+	 */
+	private boolean replay(Path segmentPath) {
+		try (DataInputStream in = new DataInputStream(Files.newInputStream(segmentPath))) {
+			while(true) {
+				final TasksModelChange change = readRecord(in);
+				if(change == null) {
+					return true;
+				}
+				if(!model.apply(change)) {
+					System.err.println("Tasks journal is missing changes before version " + change.getVersion() + " in " + segmentPath);
+					return false;
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Tasks journal replay error: " + e.getMessage());
+			return true;
+		}
+	}
+
+	private static void writeRecord(DataOutputStream out, TasksModelChange change) throws IOException {
+		final ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+		final DataOutputStream payload = new DataOutputStream(payloadBytes);
+		boolean hasRecurrence = false;
+		boolean hasIds = false;
+		for(Task task : change.getTasks()) {
+			hasRecurrence |= task.getRecurrence() != null;
+			hasIds |= task.getId() != 0;
+		}
+		payload.writeByte(change.getType().ordinal() | (hasRecurrence ? RECURRENCE_FLAG : 0) | (hasIds ? TASK_ID_FLAG : 0));
+		payload.writeLong(change.getVersion());
+		payload.writeInt(change.getTasks().size());
+		for(Task task : change.getTasks()) {
+			payload.writeLong(task.getExecutionTime());
+			payload.writeLong(task.getOwnerId());
+			payload.writeUTF(task.getTarget());
+			if(hasIds) {
+				payload.writeLong(task.getId());
+			}
+			if(hasRecurrence) {
+				payload.writeBoolean(task.getRecurrence() != null);
+				if(task.getRecurrence() != null) {
+					payload.writeUTF(task.getRecurrence().getSpec());
+				}
+			}
+		}
+		final CRC32 crc = new CRC32();
+		crc.update(payloadBytes.toByteArray());
+		out.writeInt(payloadBytes.size());
+		out.writeInt((int) crc.getValue());
+		payloadBytes.writeTo(out);
+	}
+
+	/**
+	 * @return decoded record or null at the end of the segment or at the torn record.
+	 */
+	private static TasksModelChange readRecord(DataInputStream in) throws IOException {
+		final byte[] payloadBytes;
+		final int crcValue;
+		try {
+			final int length = in.readInt();
+			crcValue = in.readInt();
+			if(length < 0 || length > MAX_RECORD_SIZE) {
+				return null; // garbage instead of the header.
+			}
+			payloadBytes = new byte[length];
+			in.readFully(payloadBytes);
+		} catch (EOFException e) {
+			return null;
+		}
+		final CRC32 crc = new CRC32();
+		crc.update(payloadBytes);
+		if((int) crc.getValue() != crcValue) {
+			return null;
+		}
+		final DataInputStream payload = new DataInputStream(new ByteArrayInputStream(payloadBytes));
+		final int typeByte = payload.readByte();
+		final boolean hasRecurrence = (typeByte & RECURRENCE_FLAG) != 0;
+		final boolean hasIds = (typeByte & TASK_ID_FLAG) != 0;
+		final TasksModelChange.Type type = TasksModelChange.Type.values()[typeByte & ~(RECURRENCE_FLAG | TASK_ID_FLAG)];
+		final long version = payload.readLong();
+		final int amount = payload.readInt();
+		final List<Task> tasks = new ArrayList<>(amount);
+		for(int i = 0; i < amount; i++) {
+			final Task task = new Task(payload.readLong(), null);
+			task.setOwnerId(payload.readLong());
+			task.setTarget(payload.readUTF());
+			if(hasIds) {
+				task.setId(payload.readLong());
+			}
+			if(hasRecurrence && payload.readBoolean()) {
+				task.setRecurrence(Recurrence.parse(payload.readUTF()));
+			}
+			tasks.add(task);
+		}
+		return new TasksModelChange(type, tasks, version);
+	}
+
+	private List<Path> listSegments() {
+		final List<Path> segments = new ArrayList<>();
+		try (DirectoryStream<Path> directory = Files.newDirectoryStream(journalDirectory(), JOURNAL_SEGMENT_FILENAME_PREFIX + "*")) {
+			for(Path segmentPath : directory) {
+				segments.add(segmentPath);
+			}
+		} catch (IOException e) {
+			System.err.println("Tasks journal listing error: " + e.getMessage());
+		}
+		Collections.sort(segments, (first, second) -> Long.compare(sequenceOf(first), sequenceOf(second)));
+		return segments;
+	}
+
+	private Path segmentPath(long sequence) {
+		return journalDirectory().resolve(JOURNAL_SEGMENT_FILENAME_PREFIX + sequence);
+	}
+
+	private Path journalDirectory() {
+		return Paths.get(modelFileName).toAbsolutePath().getParent();
+	}
+
+	private static long sequenceOf(Path segmentPath) {
+		final String fileName = segmentPath.getFileName().toString();
+		return Long.parseLong(fileName.substring(JOURNAL_SEGMENT_FILENAME_PREFIX.length()));
+	}
+}
@@ -1,15 +1,25 @@
 package def.taskmodel.source;
 
+import def.metrics.LatencyHistogram;
 import def.taskmodel.TasksModel;
 
 public abstract class TasksModelProvider {
 	
 	protected TasksModel model;
 	
+	/**
+	 * Duration of the writes to the storage.
+	 */
+	protected final LatencyHistogram writeLatency = new LatencyHistogram();
+	
 	public abstract void load();
 	public abstract void save();
 	
 	public TasksModel getModel() {
 		return model;
 	}
+	
+	public LatencyHistogram getWriteLatency() {
+		return writeLatency;
+	}
 }
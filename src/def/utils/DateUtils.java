@@ -14,9 +14,12 @@ public class DateUtils {
 	
 	private static final DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm");
 	
+	private static final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+	
 	/**
 	 * Parse the input string, according to the specified time format, 
 	 * returning today date with parsed time instant.
+	 * Full date in 'yyyy-MM-dd HH:mm' format is accepted as well.
 	 * A bit of Java 8 API here for parsing simplicity.
 	 * @param source input string to parse.
 	 * @return Parsed Date object, if the parsing succeeds<br>otherwise -> null.
@@ -24,6 +27,9 @@ public class DateUtils {
 	 */
 	public static Date parseTime(String source) {
 		try {
+			if(source.trim().length() > "HH:mm".length()) {
+				return Date.from(LocalDateTime.parse(source.trim(), dateTimeFormatter).atZone(ZoneId.systemDefault()).toInstant());
+			}
 			LocalTime time = LocalTime.parse(source, timeFormatter);
 			LocalDateTime date = LocalDateTime.now()
 					.withHour(time.getHour())
@@ -2,12 +2,55 @@ package def.utils;
 
 public class Preferences {
 	public static final int BOUNDING_PORT = 9999;
+	public static final int BINARY_INGESTION_PORT = 9900;
+	public static final int BINARY_INGESTION_MAX_FRAME_BYTES = 16 * 1024 * 1024;
+	public static final int BINARY_INGESTION_MAX_PENDING_BYTES = 4 * 1024 * 1024;
 	public static final int CLIENTS_CONNECTED_CAPACITY = 5;
-	public static final long TASK_LOOKUP_FREQUENCY = 60L;
+	public static final int NOTIFICATION_THREADS_AMOUNT = 4;
+	public static final int CLIENT_NOTIFICATION_QUEUE_CAPACITY = 256;
+	public static final int CLIENT_MAX_FAILED_NOTIFICATIONS = 3;
+	public static final long CLIENT_NOTIFICATION_RETRY_MILLIS = 1000L;
+	public static final long CLIENT_NOTIFICATION_MAX_RETRY_MILLIS = 30_000L;
+	public static final long CLIENT_EVICTION_MILLIS = 60_000L;
+	public static final long CLIENT_RESPONSE_TIMEOUT_MILLIS = 5000L;
+	public static final int CLIENT_REMOTE_CALL_THREADS_AMOUNT = 4;
+	public static final int EXECUTION_LAUNCH_THREADS_AMOUNT = 2;
+	public static final int MAX_RUNNING_PROCESSES = 64;
+	public static final int MAX_RUNNING_PROCESSES_PER_OWNER = 16;
+	public static final long EXECUTION_TIMEOUT_MILLIS = 60L * 60 * 1000;
+	public static final long EXECUTION_KILL_GRACE_MILLIS = 5000L;
+	public static final int EXECUTION_HISTORY_CAPACITY = 1000;
+	public static final String EXECUTION_OUTPUT_DIRECTORY = "executions";
+	public static final long EXECUTION_MAX_OUTPUT_BYTES = 64L * 1024 * 1024;
+	public static final long EXECUTION_OUTPUT_CHECK_MILLIS = 1000L;
+	public static final int MAX_OUTPUT_CHUNK_SIZE = 256 * 1024;
+	public static final int MAX_QUERY_PAGE_SIZE = 10000;
+	public static final int WIRE_COMPRESSION_THRESHOLD_BYTES = 64 * 1024;
+	public static final double ADMISSION_OWNER_TASKS_PER_SECOND = 100.0;
+	public static final int ADMISSION_OWNER_TASKS_BURST = 10000;
+	public static final double ADMISSION_HOST_CALLS_PER_SECOND = 50.0;
+	public static final int ADMISSION_HOST_CALLS_BURST = 200;
+	public static final int ADMISSION_MAX_SCHEDULED_TASKS_PER_OWNER = 1000000;
+	public static final int ADMISSION_MAX_TRACKED_BUCKETS = 4096;
 	public static final long DEFAULT_CLIENT_IDENTIFIER = 0L;
 	public static final String SOURCE_MODEL_FILNAME = "tasksmodel.tmdl";
+	public static final String JOURNAL_SEGMENT_FILENAME_PREFIX = "tasksmodel.journal.";
+	public static final String SHARD_DIRECTORY_PREFIX = "shard-";
+	public static final long JOURNAL_COMPACTION_THRESHOLD_BYTES = 4L * 1024 * 1024;
+	public static final long JOURNAL_WRITE_RETRY_MILLIS = 1000L;
+	public static final String JOURNAL_ORPHANED_SEGMENT_PREFIX = "orphaned.";
+	public static final String FENCING_LOCK_FILENAME = "scheduler.lock";
+	public static final int REPLICATION_LOG_CAPACITY = 4096;
+	public static final long REPLICATION_POLL_MILLIS = 200L;
+	public static final long REPLICATION_FOLLOWER_TIMEOUT_MILLIS = 1000L;
 	public static final String REMOTE_LOOKUP_SERVER_TARGET = "TaskSchedulerServer";
 	public static final String REMOTE_LOOKUP_CLIENT_TARGET = "TaskSchedulerClient";
+	public static final String METRICS_OBJECT_NAME = "def.scheduler:type=SchedulerMetrics";
 	public static final String GUI_LOOKANDFEEL_CLASSNAME = "Nimbus";
 	public static final String GUI_CLIENT_FRAME_TITLE = "Scheduler Client";
+	public static final int GUI_TABLE_MAX_ROW_EVENTS = 256;
+	public static final int GUI_VIRTUAL_TABLE_PAGE_SIZE = 200;
+	public static final int GUI_VIRTUAL_TABLE_PREFETCH_PAGES = 1;
+	public static final int GUI_VIRTUAL_TABLE_CACHED_PAGES = 64;
+	public static final long GUI_VIRTUAL_TABLE_RETRY_MILLIS = 5000L;
 }
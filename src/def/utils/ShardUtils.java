@@ -0,0 +1,77 @@
+package def.utils;
+
+import static def.utils.Preferences.REMOTE_LOOKUP_SERVER_TARGET;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import def.taskmodel.Task;
+
+/**
+ * Simple utility class for the tasks partitioning between the scheduler shards.
+ * Task belongs to the shard by the hash of it's key (execution time and target, see {@link Task#equals(Object)}),
+ * so the same task is always routed to the same shard, whichever JVM computes it.
+ * Recurring task is keyed by it's target and recurrence rule instead, as the shard reschedules it's occurrences by itself.
+ * @author ovoievodin
+ */
+public class ShardUtils {
+	
+	private static final Pattern shardNamePattern = Pattern.compile(Pattern.quote(REMOTE_LOOKUP_SERVER_TARGET) + "-(\\d+)-of-(\\d+)");
+	
+	/**
+	 * @param task task to route.
+	 * @param shardsAmount total amount of shards.
+	 * @return index of the shard, owning the task.
+	 * @author ovoievodin
+	 */
+	public static int shardOf(Task task, int shardsAmount) {
+		// both hashes are specified by the JDK, so they are the same in every JVM.
+		int hash = task.getRecurrence() == null
+				? Long.hashCode(task.getExecutionTime()) * 31 + task.getTarget().hashCode()
+				: task.getRecurrence().getSpec().hashCode() * 31 + task.getTarget().hashCode();
+		hash ^= hash >>> 16;
+		return Math.floorMod(hash, shardsAmount);
+	}
+	
+	/**
+	 * @param executionId id of the task execution, allocated by the shard.
+	 * @param shardsAmount total amount of shards.
+	 * @return index of the shard, the task was executed by.
+	 * @author ovoievodin
+	 */
+	public static int shardOfExecution(long executionId, int shardsAmount) {
+		return (int) Math.floorMod(executionId, (long) shardsAmount);
+	}
+	
+	/**
+	 * @param taskId id of the task, allocated by the shard.
+	 * @param shardsAmount total amount of shards.
+	 * @return index of the shard, owning the task.
+	 * @author ovoievodin
+	 */
+	public static int shardOfTask(long taskId, int shardsAmount) {
+		return (int) Math.floorMod(taskId, (long) shardsAmount);
+	}
+	
+	/**
+	 * @return name, the shard server is bound under in the RMI registry.
+	 * @author ovoievodin
+	 */
+	public static String shardLookupName(int shardIndex, int shardsAmount) {
+		return REMOTE_LOOKUP_SERVER_TARGET + "-" + shardIndex + "-of-" + shardsAmount;
+	}
+	
+	/**
+	 * Parse the registry name of the shard server.
+	 * @param lookupName name from the RMI registry.
+	 * @return [shard index, shards amount] or null, if the name is not a shard server one.
+	 * @author ovoievodin
+	 */
+	public static int[] parseShardLookupName(String lookupName) {
+		final Matcher matcher = shardNamePattern.matcher(lookupName);
+		if(!matcher.matches()) {
+			return null;
+		}
+		return new int[] { Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)) };
+	}
+}